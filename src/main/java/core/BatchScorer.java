@@ -0,0 +1,529 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * scores a labelled csv file, "y,x1,x2,...,xn" per line, with a trained model
+ * a reader thread cuts the file into blocks of whole lines, a pool of workers parses,
+ * predicts and encodes each block into a reusable buffer, and the calling thread writes
+ * the blocks in input order; the number of blocks in flight is bounded, so a slow stage
+ * holds the others back instead of filling the heap
+ * each output line is "y,prediction"; error metrics are accumulated along the way
+ */
+public final class BatchScorer {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final int BLOCK_BYTES = 1 << 20;
+
+    /* powers of ten that are exact doubles */
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1.0d;
+        for (int k = 1; k < POW10.length; k++) {
+            POW10[k] = POW10[k - 1] * 10;
+        }
+    }
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final Regressor model;
+    private double[][] scaleParam = null;
+    private double tolerance = 0.3d;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    /* the number of features of the file being scored, -1 before the first line */
+    private final AtomicInteger featureNum = new AtomicInteger(-1);
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param model the model to score with, called from several threads at once
+     */
+    public BatchScorer(Regressor model) {
+        this.model = model;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * regression models are compiled once, into a {@link LinearModel} for the linear kernel
+     * and a {@link KernelModel} otherwise, so rows are predicted straight from their arrays;
+     * other models are predicted with {@link SVMLib#predict(double[], svm_model)}; a
+     * {@link ScreenedModel} compiles the model on its kept columns and projects every row
+     * @param model a libsvm model
+     * @return a scorer for the model
+     */
+    public static BatchScorer of(svm_model model) {
+        if (model instanceof ScreenedModel) {
+            ScreenedModel screened = (ScreenedModel) model;
+            return new BatchScorer(screened.compile(of(screened.getModel()).model));
+        }
+        if ((model.param.svm_type == svm_parameter.EPSILON_SVR || model.param.svm_type == svm_parameter.NU_SVR)
+                && model.param.kernel_type != svm_parameter.PRECOMPUTED) {
+            return new BatchScorer(model.param.kernel_type == svm_parameter.LINEAR ? LinearModel.of(model)
+                    : KernelModel.of(model, LibConfig.Precision.DOUBLE));
+        }
+        return new BatchScorer(sample -> SVMLib.predict(sample, model));
+    }
+
+    /**
+     * score every line of a file, one file at a time
+     * @param inputFile labelled csv file
+     * @param outputFile file to write "y,prediction" lines to, null to only compute the metrics
+     * @return the error metrics of the predictions
+     * @throws IOException if reading or writing fails
+     */
+    public Report score(String inputFile, @Nullable String outputFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        this.featureNum.set(-1);
+        int depth = 2 * this.threads;
+        BlockingQueue<Block> free = new ArrayBlockingQueue<>(depth + 1);
+        for (int b = 0; b <= depth; b++) {
+            free.add(new Block());
+        }
+        // futures of the blocks in input order, the end of input is a null block
+        BlockingQueue<Future<Block>> pending = new ArrayBlockingQueue<>(depth);
+        ExecutorService workers = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread thread = new Thread(r, "batch-scorer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread reader = new Thread(() -> read(inputFile, free, pending, workers), "batch-scorer-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        Report report = new Report(this.tolerance);
+        try (FileChannel channel = outputFile == null ? null : new FileOutputStream(outputFile).getChannel()) {
+            while (true) {
+                Block block = pending.take().get();
+                if (block == null) {
+                    break;
+                }
+                report.add(block.report);
+                if (channel != null) {
+                    ByteBuffer bytes = ByteBuffer.wrap(block.encoder.bytes, 0, block.encoder.size);
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                }
+                free.put(block);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("scoring interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            reader.interrupt();
+            workers.shutdownNow();
+        }
+        if (SVMLib.DEBUG) {
+            System.out.println("Scoring done in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+        }
+        return report;
+    }
+
+    /**
+     * score lines held in memory on the calling thread, through the same parsing and
+     * encoding as {@link #score(String, String)}
+     * @param lines whole csv lines
+     * @param size the number of bytes of lines to score
+     * @return the error metrics of the predictions
+     */
+    Report score(byte[] lines, int size) {
+        this.featureNum.set(-1);
+        Block block = new Block(lines);
+        block.size = size;
+        return score(block).report;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * the reader stage: fill free blocks with whole lines and hand them to the workers
+     */
+    private void read(String inputFile, BlockingQueue<Block> free, BlockingQueue<Future<Block>> pending,
+                      ExecutorService workers) {
+        try (InputStream in = new FileInputStream(inputFile)) {
+            byte[] carry = new byte[0];
+            int carrySize = 0;
+            boolean eof = false;
+            while (!eof) {
+                Block block = free.take();
+                byte[] raw = block.raw;
+                System.arraycopy(carry, 0, raw, 0, carrySize);
+                int size = carrySize, lastLine = -1;
+                while (lastLine < 0 && !eof) {
+                    if (size == raw.length) {
+                        raw = Arrays.copyOf(raw, raw.length * 2);
+                    }
+                    int n = in.read(raw, size, raw.length - size);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    size += n;
+                    if (size == raw.length || n == 0) {
+                        lastLine = lastIndexOf(raw, (byte) '\n', size);
+                    }
+                }
+                // at the end of the file the last line needs no newline
+                int end = eof ? size : lastLine + 1;
+                carrySize = size - end;
+                if (carry.length < carrySize) {
+                    carry = new byte[Math.max(carrySize, BLOCK_BYTES)];
+                }
+                System.arraycopy(raw, end, carry, 0, carrySize);
+                block.raw = raw;
+                block.size = end;
+                pending.put(workers.submit(() -> score(block)));
+            }
+            pending.put(CompletableFuture.completedFuture(null));
+        } catch (IOException e) {
+            CompletableFuture<Block> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            try {
+                pending.put(failed);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * the worker stage: parse, predict and encode the lines of a block
+     */
+    private Block score(Block block) {
+        block.encoder.reset();
+        block.report = new Report(this.tolerance);
+        byte[] raw = block.raw;
+        int pos = 0;
+        while (pos < block.size) {
+            int end = pos;
+            while (end < block.size && raw[end] != '\n') {
+                end++;
+            }
+            int lineEnd = end > pos && raw[end - 1] == '\r' ? end - 1 : end;
+            if (lineEnd > pos) {
+                scoreLine(block, raw, pos, lineEnd);
+            }
+            pos = end + 1;
+        }
+        return block;
+    }
+
+    private void scoreLine(Block block, byte[] raw, int from, int to) {
+        int fields = 1;
+        for (int k = from; k < to; k++) {
+            if (raw[k] == ',') {
+                fields++;
+            }
+        }
+        this.featureNum.compareAndSet(-1, fields - 1);
+        if (this.featureNum.get() != fields - 1) {
+            System.err.println("data format not aligned");
+            throw new RuntimeException("data format error");
+        }
+        if (block.sample == null || block.sample.length != fields - 1) {
+            block.sample = new double[fields - 1];
+        }
+        double label = 0.0d;
+        for (int f = 0, start = from; f < fields; f++) {
+            int end = start;
+            while (end < to && raw[end] != ',') {
+                end++;
+            }
+            double value = parseDouble(raw, start, end);
+            if (f == 0) {
+                label = value;
+            } else {
+                block.sample[f - 1] = value;
+            }
+            start = end + 1;
+        }
+        if (this.scaleParam != null) {
+            scale(block.sample);
+        }
+        double prediction = this.model.predict(block.sample);
+        block.report.add(label, prediction);
+        block.encoder.number(label);
+        block.encoder.put((byte) ',');
+        block.encoder.number(prediction);
+        block.encoder.put((byte) '\n');
+    }
+
+    /**
+     * scale a sample the way {@link Data#scaleTestData(double[][])} does
+     */
+    private void scale(double[] sample) {
+        double upper = this.scaleParam[0][0], lower = this.scaleParam[0][1];
+        for (int j = 0; j < sample.length; j++) {
+            double max = this.scaleParam[j + 1][0], min = this.scaleParam[j + 1][1];
+            if (sample[j] == min || max == min) {
+                sample[j] = lower;
+            } else if (sample[j] == max) {
+                sample[j] = upper;
+            } else {
+                sample[j] = lower + (sample[j] - min) / (max - min) * (upper - lower);
+            }
+        }
+    }
+
+    /**
+     * parse a decimal number without creating a String
+     * with up to 15 significant digits and a power of ten up to 22 both operands are exact,
+     * so one multiplication or division rounds correctly; anything else goes to Double.parseDouble
+     */
+    static double parseDouble(byte[] b, int from, int to) {
+        while (from < to && b[from] == ' ') {
+            from++;
+        }
+        while (to > from && b[to - 1] == ' ') {
+            to--;
+        }
+        int k = from;
+        boolean negative = false;
+        if (k < to && (b[k] == '-' || b[k] == '+')) {
+            negative = b[k] == '-';
+            k++;
+        }
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean any = false, dot = false;
+        for (; k < to; k++) {
+            byte c = b[k];
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (mantissa == 0 && c == '0') {
+                    if (dot) {
+                        scale--;
+                    }
+                    continue;
+                }
+                if (++digits > 15) {
+                    return slowParse(b, from, to);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (dot) {
+                    scale--;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (k < to && (b[k] == 'e' || b[k] == 'E') && any) {
+            k++;
+            boolean negativeExp = false;
+            if (k < to && (b[k] == '-' || b[k] == '+')) {
+                negativeExp = b[k] == '-';
+                k++;
+            }
+            int exp = 0, expStart = k;
+            for (; k < to && b[k] >= '0' && b[k] <= '9' && exp < 10000; k++) {
+                exp = exp * 10 + (b[k] - '0');
+            }
+            if (k == expStart) {
+                return slowParse(b, from, to);
+            }
+            scale += negativeExp ? -exp : exp;
+        }
+        if (!any || k != to) {
+            return slowParse(b, from, to);
+        }
+        double value;
+        if (mantissa == 0) {
+            value = 0.0d;
+        } else if (scale >= 0 && scale < POW10.length) {
+            value = mantissa * POW10[scale];
+        } else if (scale < 0 && -scale < POW10.length) {
+            value = mantissa / POW10[-scale];
+        } else {
+            return slowParse(b, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double slowParse(byte[] b, int from, int to) {
+        try {
+            return Double.parseDouble(new String(b, from, to - from, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            System.err.println("data format not aligned");
+            throw new RuntimeException("data format error", e);
+        }
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte b, int size) {
+        for (int k = size - 1; k >= 0; k--) {
+            if (bytes[k] == b) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    //~ Getter/setter methods --------------------------------------------------
+
+    /**
+     * @return the model the rows are scored with, e.g. the one compiled by {@link #of}
+     */
+    Regressor getModel() {
+        return this.model;
+    }
+
+    /**
+     * @param scaleParam returned by {@link Data#scaleTrainingData()}, to scale the samples like the training data
+     * @return this
+     */
+    public BatchScorer setScaleParam(double[][] scaleParam) {
+        this.scaleParam = scaleParam;
+        return this;
+    }
+
+    /**
+     * @param tolerance a prediction is good if |prediction - y| < tolerance * |y|
+     * @return this
+     */
+    public BatchScorer setTolerance(double tolerance) {
+        Preconditions.checkArgument(tolerance >= 0, "tolerance < 0");
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * @param threads number of worker threads
+     * @return this
+     */
+    public BatchScorer setThreads(int threads) {
+        Preconditions.checkArgument(threads > 0, "threads <= 0");
+        this.threads = threads;
+        return this;
+    }
+
+    //~ Inner classes ----------------------------------------------------------
+
+    /**
+     * a block of input lines and its encoded output, reused across the file
+     */
+    private static final class Block {
+        byte[] raw;
+        int size = 0;
+        final DataExporter.TextEncoder encoder = new DataExporter.TextEncoder(0);
+        double[] sample = null;
+        Report report = null;
+
+        Block() {
+            this(new byte[BLOCK_BYTES]);
+        }
+
+        Block(byte[] raw) {
+            this.raw = raw;
+        }
+    }
+
+    /**
+     * error metrics of a scored file
+     */
+    public static final class Report {
+        private final double tolerance;
+        private long count = 0;
+        private double absoluteError = 0.0d;
+        private double squaredError = 0.0d;
+        /* relative errors are only defined for non-zero labels */
+        private long relativeCount = 0;
+        private double relativeError = 0.0d;
+        private long good = 0;
+
+        Report(double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        void add(double label, double prediction) {
+            double error = Math.abs(prediction - label);
+            this.count++;
+            this.absoluteError += error;
+            this.squaredError += error * error;
+            if (label != 0) {
+                this.relativeCount++;
+                this.relativeError += error / Math.abs(label);
+            }
+            if (error < this.tolerance * Math.abs(label)) {
+                this.good++;
+            }
+        }
+
+        void add(Report other) {
+            this.count += other.count;
+            this.absoluteError += other.absoluteError;
+            this.squaredError += other.squaredError;
+            this.relativeCount += other.relativeCount;
+            this.relativeError += other.relativeError;
+            this.good += other.good;
+        }
+
+        /**
+         * @return the number of scored samples
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return mean absolute error
+         */
+        public double getMAE() {
+            return this.absoluteError / this.count;
+        }
+
+        /**
+         * @return root mean squared error
+         */
+        public double getRMSE() {
+            return Math.sqrt(this.squaredError / this.count);
+        }
+
+        /**
+         * @return mean absolute percentage error, as a fraction, over the samples with a non-zero label
+         */
+        public double getMAPE() {
+            return this.relativeError / this.relativeCount;
+        }
+
+        /**
+         * @return the share of samples predicted within the tolerance
+         */
+        public double getWithinTolerance() {
+            return (double) this.good / this.count;
+        }
+
+        @Override
+        public String toString() {
+            return "samples: " + this.count + "; mae: " + getMAE() + "; rmse: " + getRMSE()
+                    + "; mape: " + getMAPE() + "; within " + this.tolerance + ": " + getWithinTolerance();
+        }
+    }
+}
+
+// End BatchScorer.java
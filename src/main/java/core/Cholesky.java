@@ -0,0 +1,107 @@
+package core;
+
+/**
+ * Cholesky factorization and triangular solves on row-major arrays
+ */
+final class Cholesky {
+    //~ Constructors -----------------------------------------------------------
+
+    private Cholesky() {}
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * factor a symmetric positive semi-definite matrix as L L^T,
+     * adding a growing jitter to the diagonal until it succeeds
+     * @param a row-major n * n matrix, not modified
+     * @param n order of the matrix
+     * @return the lower triangular factor L, row-major
+     */
+    static double[] factor(double[] a, int n) {
+        double trace = 0.0d;
+        for (int i = 0; i < n; i++) {
+            trace += a[i * n + i];
+        }
+        double jitter = 0.0d;
+        double[] l = new double[n * n];
+        while (true) {
+            if (tryFactor(a, n, jitter, l)) {
+                return l;
+            }
+            jitter = jitter == 0 ? 1e-10 * Math.max(trace / n, Double.MIN_NORMAL) : jitter * 10;
+            if (SVMLib.DEBUG) {
+                System.out.println("matrix not positive definite, jitter " + jitter);
+            }
+        }
+    }
+
+    /**
+     * solve L z = b in place
+     * @param l lower triangular factor, row-major n * n
+     * @param n order of the factor
+     * @param b right hand side, n values starting at offset
+     * @param offset start of b
+     */
+    static void forwardSolve(double[] l, int n, double[] b, int offset) {
+        for (int i = 0; i < n; i++) {
+            double sum = b[offset + i];
+            int row = i * n;
+            for (int k = 0; k < i; k++) {
+                sum -= l[row + k] * b[offset + k];
+            }
+            b[offset + i] = sum / l[row + i];
+        }
+    }
+
+    /**
+     * solve L^T z = b in place
+     * @param l lower triangular factor, row-major n * n
+     * @param n order of the factor
+     * @param b right hand side, n values
+     */
+    static void backSolve(double[] l, int n, double[] b) {
+        for (int i = n - 1; i >= 0; i--) {
+            double sum = b[i];
+            for (int k = i + 1; k < n; k++) {
+                sum -= l[k * n + i] * b[k];
+            }
+            b[i] = sum / l[i * n + i];
+        }
+    }
+
+    /**
+     * solve L L^T z = b in place
+     * @param l lower triangular factor, row-major n * n
+     * @param n order of the factor
+     * @param b right hand side, n values
+     */
+    static void solve(double[] l, int n, double[] b) {
+        forwardSolve(l, n, b, 0);
+        backSolve(l, n, b);
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private static boolean tryFactor(double[] a, int n, double jitter, double[] l) {
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = a[i * n + j];
+                for (int k = 0; k < j; k++) {
+                    sum -= l[i * n + k] * l[j * n + k];
+                }
+                if (i == j) {
+                    sum += jitter;
+                    if (sum <= 0) {
+                        return false;
+                    }
+                    l[i * n + i] = Math.sqrt(sum);
+                } else {
+                    l[i * n + j] = sum / l[j * n + j];
+                }
+            }
+        }
+        return true;
+    }
+}
+
+// End Cholesky.java
@@ -0,0 +1,234 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_node;
+
+import java.util.*;
+
+/**
+ * a smaller weighted stand-in for a training set
+ * rows falling into the same grid cell are collapsed into their mean, labelled with the
+ * mean of their labels and weighted by their count, which becomes a per-instance
+ * multiplier of C; with a cell size of 0 only exact duplicates are collapsed, rows sharing
+ * both their features and their label, so that the collapse loses nothing
+ */
+final class Coreset {
+    //~ Instance fields --------------------------------------------------------
+
+    /* the collapsed rows */
+    final SampleMatrix x;
+    final double[] y;
+    /* the number of original rows behind each collapsed row */
+    final double[] weights;
+    /* the largest distance between an original row and the row it was collapsed into */
+    final double radius;
+    /* the grid cell size used */
+    final double resolution;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private Coreset(SampleMatrix x, double[] y, double[] weights, double radius, double resolution) {
+        this.x = x;
+        this.y = y;
+        this.weights = weights;
+        this.radius = radius;
+        this.resolution = resolution;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * collapse the rows that share a grid cell
+     * @param x samples
+     * @param y labels of the samples
+     * @param resolution grid cell size, 0 to collapse exact duplicates of features and label only
+     * @return the collapsed samples
+     */
+    static Coreset collapse(SampleMatrix x, double[] y, double resolution) {
+        Preconditions.checkArgument(resolution >= 0, "resolution < 0");
+        return collapse(x, y, resolution, new double[x.cols()]);
+    }
+
+    /**
+     * collapse the rows onto the finest grid with at most size cells, found by doubling
+     * the cell size from 1/1024 of the widest feature range
+     * @param x samples
+     * @param y labels of the samples
+     * @param size the largest number of rows to keep
+     * @return the collapsed samples, see {@link #radius} for how far they moved
+     */
+    static Coreset of(SampleMatrix x, double[] y, int size) {
+        Preconditions.checkArgument(size > 0, "size <= 0");
+        int d = x.cols();
+        int[] group = new int[x.rows()];
+        double[] min = new double[d];
+        if (assign(x, y, 0, min, group) <= size) {
+            return collapse(x, y, 0, min);
+        }
+        double[] max = new double[d], row = new double[d];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, row);
+            for (int k = 0; k < d; k++) {
+                min[k] = Math.min(min[k], row[k]);
+                max[k] = Math.max(max[k], row[k]);
+            }
+        }
+        double range = 0.0d;
+        for (int k = 0; k < d; k++) {
+            range = Math.max(range, max[k] - min[k]);
+        }
+        // the grid starts at the column minima, so a cell wider than the range holds every row
+        double resolution = range / 1024;
+        while (assign(x, y, resolution, min, group) > size) {
+            resolution *= 2;
+        }
+        return collapse(x, y, resolution, min);
+    }
+
+    /**
+     * bound on how much the collapse moves any RBF kernel value, |K(x, z) - K(x', z)|
+     * for an original row x, its collapsed row x' and any z; the kernel is
+     * sqrt(2 * gamma / e)-Lipschitz in each argument
+     * @param gamma RBF kernel parameter
+     * @return the bound
+     */
+    double rbfError(double gamma) {
+        return Math.min(1.0d, Math.sqrt(2 * gamma / Math.E) * this.radius);
+    }
+
+    /**
+     * @return the number of collapsed rows
+     */
+    int size() {
+        return this.y.length;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * @param origin corner of the grid
+     */
+    private static Coreset collapse(SampleMatrix x, double[] y, double resolution, double[] origin) {
+        Preconditions.checkArgument(x.rows() == y.length);
+        int n = x.rows(), d = x.cols();
+        int[] group = new int[n];
+        int groups = assign(x, y, resolution, origin, group);
+
+        double[][] sums = new double[groups][d];
+        double[] labels = new double[groups];
+        double[] weights = new double[groups];
+        double[] row = new double[d];
+        for (int i = 0; i < n; i++) {
+            x.copyRow(i, row);
+            // exact duplicates keep their values rather than a rounded mean
+            if (resolution > 0 || weights[group[i]] == 0) {
+                double[] sum = sums[group[i]];
+                for (int k = 0; k < d; k++) {
+                    sum[k] += row[k];
+                }
+            }
+            labels[group[i]] += y[i];
+            weights[group[i]]++;
+        }
+        for (int g = 0; g < groups; g++) {
+            for (int k = 0; resolution > 0 && k < d; k++) {
+                sums[g][k] /= weights[g];
+            }
+            labels[g] /= weights[g];
+        }
+
+        double radius2 = 0.0d;
+        for (int i = 0; i < n; i++) {
+            x.copyRow(i, row);
+            double[] center = sums[group[i]];
+            double dist2 = 0.0d;
+            for (int k = 0; k < d; k++) {
+                dist2 += (row[k] - center[k]) * (row[k] - center[k]);
+            }
+            radius2 = Math.max(radius2, dist2);
+        }
+
+        List<svm_node[]> nodes = new ArrayList<>(groups);
+        for (double[] center : sums) {
+            nodes.add(toNodes(center));
+        }
+        SampleMatrix matrix = x instanceof SparseMatrix ? SparseMatrix.of(nodes, d) : DenseMatrix.of(nodes, d);
+        return new Coreset(matrix, labels, weights, Math.sqrt(radius2), resolution);
+    }
+
+    /**
+     * hash every row onto its grid cell
+     * @param resolution cell size, 0 to hash the exact values and the label
+     * @param origin corner of the grid
+     * @param group receives the cell number of each row
+     * @return the number of distinct cells
+     */
+    private static int assign(SampleMatrix x, double[] y, double resolution, double[] origin, int[] group) {
+        Map<Cell, Integer> cells = new HashMap<>();
+        double[] row = new double[x.cols()];
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, row);
+            // rows with different labels are no duplicates: their mean moves the epsilon-insensitive optimum
+            long[] key = new long[resolution == 0 ? row.length + 1 : row.length];
+            for (int k = 0; k < row.length; k++) {
+                // + 0.0 folds -0.0 into 0.0
+                key[k] = resolution == 0 ? Double.doubleToLongBits(row[k] + 0.0d)
+                        : (long) Math.floor((row[k] - origin[k]) / resolution);
+            }
+            if (resolution == 0) {
+                key[row.length] = Double.doubleToLongBits(y[i] + 0.0d);
+            }
+            Integer g = cells.putIfAbsent(new Cell(key), cells.size());
+            group[i] = g == null ? cells.size() - 1 : g;
+        }
+        return cells.size();
+    }
+
+    private static svm_node[] toNodes(double[] row) {
+        int nonZeros = 0;
+        for (double value : row) {
+            if (value != 0) {
+                nonZeros++;
+            }
+        }
+        svm_node[] nodes = new svm_node[nonZeros];
+        for (int k = 0, j = 0; k < row.length; k++) {
+            if (row[k] != 0) {
+                nodes[j] = new svm_node();
+                nodes[j].index = k + 1;
+                nodes[j].value = row[k];
+                j++;
+            }
+        }
+        return nodes;
+    }
+
+    //~ Inner classes ----------------------------------------------------------
+
+    /**
+     * a grid cell, hashed once
+     */
+    private static final class Cell {
+        private final long[] key;
+        private final int hash;
+
+        Cell(long[] key) {
+            this.key = key;
+            this.hash = Arrays.hashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Cell && Arrays.equals(this.key, ((Cell) o).key);
+        }
+    }
+}
+
+// End Coreset.java
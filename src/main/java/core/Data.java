@@ -1,6 +1,8 @@
 package core;
 
+import com.google.common.base.Preconditions;
 import libsvm.*;
+import org.jetbrains.annotations.Nullable;
 import util.JDBCUtil;
 
 import java.io.*;
@@ -8,6 +10,8 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
 
@@ -27,6 +31,18 @@ class Data {
     private Vector<svm_node[]> originalSamples = new Vector<>();
     private Vector<svm_node[]> scaledSamples = null;
 
+    private SampleMatrix originalMatrix = null;
+    private SampleMatrix scaledMatrix = null;
+
+    /* samples are kept as a SparseMatrix and their svm_nodes only hold non-zeros */
+    private boolean sparse = false;
+
+    /* dense matrices are FloatMatrix in single precision */
+    private LibConfig.Precision precision = LibConfig.Precision.DOUBLE;
+
+    /* labels of every target when read with several label columns, labels is the first one */
+    private List<Vector<Double>> targets = null;
+
     //~ Constructors -----------------------------------------------------------
 
     Data() {}
@@ -41,7 +57,33 @@ class Data {
         this.sampleNum = samples.size();
         this.originalSamples = new Vector<>(samples);
         this.labels = new Vector<>(labels);
-        this.featureNum = this.originalSamples.get(0).length;
+        long nonZeros = 0;
+        for (svm_node[] sample : samples) {
+            nonZeros += sample.length;
+            for (svm_node node : sample) {
+                this.featureNum = Math.max(this.featureNum, node.index);
+            }
+        }
+        this.sparse = nonZeros < (long) this.sampleNum * this.featureNum / 2;
+    }
+
+    /**
+     * the same samples labelled with another target, see {@link #forTarget(int)}
+     * @param data data with several targets
+     * @param target index of the target
+     */
+    private Data(Data data, int target) {
+        this.sampleNum = data.sampleNum;
+        this.featureNum = data.featureNum;
+        this.scaleUpperBound = data.scaleUpperBound;
+        this.scaleLowerBound = data.scaleLowerBound;
+        this.labels = data.targets.get(target);
+        this.originalSamples = data.originalSamples;
+        this.scaledSamples = data.scaledSamples;
+        this.originalMatrix = data.originalMatrix;
+        this.scaledMatrix = data.scaledMatrix;
+        this.sparse = data.sparse;
+        this.precision = data.precision;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -52,30 +94,36 @@ class Data {
      * @return this
      */
 	public Data readDataFromCSVFile(String file) {
+        return readDataFromCSVFile(file, 1);
+    }
+
+    /**
+     * init the dataset from a csv file with several label columns in front,
+     * "y1,...,yk,x1,...,xn" per line, so the features are read and scaled only once
+     * for all targets
+     * @param file csv file name
+     * @param targetNum the number k of label columns
+     * @return this
+     */
+    public Data readDataFromCSVFile(String file, int targetNum) {
+        Preconditions.checkArgument(targetNum > 0, "targetNum <= 0");
         long startTime = System.currentTimeMillis();
         try (FileReader fr = new FileReader(file);
              BufferedReader br = new BufferedReader(fr)) {
             String line = br.readLine();
             String[] contents = line.split(",");
-            this.featureNum = contents.length - 1;
+            this.featureNum = contents.length - targetNum;
+            this.targets = new ArrayList<>(targetNum);
+            for (int t = 0; t < targetNum; t++) {
+                this.targets.add(t == 0 ? this.labels : new Vector<>());
+            }
 
+            double[] labels = new double[targetNum];
             while (line != null) {
-                contents = line.split(",");
-                // check data format
-                int lenth = contents.length - 1;
-                if (lenth != this.featureNum) {
-                    System.err.println("data format not aligned");
-                    throw new RuntimeException("data format error");
-                }
-                // y, x1, x2,...,xn
-                svm_node[] sample = new svm_node[this.featureNum];
-                for (int i = 0; i < this.featureNum; i++) {
-                    sample[i] = new svm_node();
-                    sample[i].index = i + 1;
-                    sample[i].value = Double.valueOf(contents[i + 1]);
+                this.originalSamples.add(parseCSVLine(line, this.featureNum, labels));
+                for (int t = 0; t < targetNum; t++) {
+                    this.targets.get(t).add(labels[t]);
                 }
-                this.originalSamples.add(sample);
-                this.labels.add(Double.valueOf(contents[0]));
                 line = br.readLine();
             }
             this.sampleNum = this.originalSamples.size();
@@ -90,6 +138,109 @@ class Data {
         return this;
 	}
 
+    /**
+     * parse one "y1,...,yk,x1,...,xn" line of a csv file
+     * @param featureNum the number n of features every line must have
+     * @param labels receives the k labels
+     * @return the features of the line
+     */
+    static svm_node[] parseCSVLine(String line, int featureNum, double[] labels) {
+        String[] contents = line.split(",");
+        int targetNum = labels.length;
+        // check data format
+        int lenth = contents.length - targetNum;
+        if (lenth != featureNum) {
+            System.err.println("data format not aligned");
+            throw new RuntimeException("data format error");
+        }
+        // y1,...,yk, x1, x2,...,xn
+        svm_node[] sample = new svm_node[featureNum];
+        for (int i = 0; i < featureNum; i++) {
+            sample[i] = new svm_node();
+            sample[i].index = i + 1;
+            sample[i].value = Double.parseDouble(contents[i + targetNum]);
+        }
+        for (int t = 0; t < targetNum; t++) {
+            labels[t] = Double.parseDouble(contents[t]);
+        }
+        return sample;
+    }
+
+    /**
+     * init the dataset from a file in LIBSVM format, one "label index:value ..." line per sample,
+     * the format written by {@link #recordData(String, String)}
+     * samples are streamed into a sparse matrix holding only the non-zero values
+     * @param file LIBSVM format file name
+     * @return this
+     */
+    public Data readDataFromLibsvmFile(String file) {
+        long startTime = System.currentTimeMillis();
+        int[] rowPtr = new int[1024];
+        int[] colIdx = new int[1024];
+        double[] values = new double[1024];
+        int rows = 0, nnz = 0;
+        try (FileReader fr = new FileReader(file);
+             BufferedReader br = new BufferedReader(fr, 1 << 16)) {
+            String line = br.readLine();
+            while (line != null) {
+                int pos = skipSpaces(line, 0);
+                if (pos == line.length()) {
+                    line = br.readLine();
+                    continue;
+                }
+                int end = nextSpace(line, pos);
+                this.labels.add(Double.parseDouble(line.substring(pos, end)));
+                int lastIndex = 0;
+                for (pos = skipSpaces(line, end); pos < line.length(); pos = skipSpaces(line, end)) {
+                    end = nextSpace(line, pos);
+                    int colon = line.indexOf(':', pos);
+                    if (colon < 0 || colon >= end) {
+                        System.err.println("data format not aligned");
+                        throw new RuntimeException("data format error");
+                    }
+                    int index = Integer.parseInt(line.substring(pos, colon));
+                    double value = Double.parseDouble(line.substring(colon + 1, end));
+                    if (index <= lastIndex) {
+                        System.err.println("feature indices should be ascending");
+                        throw new RuntimeException("data format error");
+                    }
+                    lastIndex = index;
+                    if (value == 0) {
+                        continue;
+                    }
+                    if (nnz == colIdx.length) {
+                        colIdx = Arrays.copyOf(colIdx, nnz * 2);
+                        values = Arrays.copyOf(values, nnz * 2);
+                    }
+                    colIdx[nnz] = index - 1;
+                    values[nnz] = value;
+                    nnz++;
+                    this.featureNum = Math.max(this.featureNum, index);
+                }
+                rows++;
+                if (rows == rowPtr.length) {
+                    rowPtr = Arrays.copyOf(rowPtr, rows * 2);
+                }
+                rowPtr[rows] = nnz;
+                line = br.readLine();
+            }
+            this.sampleNum = rows;
+            this.sparse = true;
+            this.originalSamples = new Vector<>();
+            this.scaledSamples = null;
+            this.originalMatrix = new SparseMatrix(rows, this.featureNum, Arrays.copyOf(rowPtr, rows + 1),
+                    Arrays.copyOf(colIdx, nnz), Arrays.copyOf(values, nnz));
+            this.scaledMatrix = null;
+            System.out.println("Data preparation done in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+            System.out.println("Read " + this.getSampleNum() + " samples in total, "
+                    + nnz + " non-zeros of " + (long) rows * this.featureNum);
+        } catch (IOException e) {
+            System.out.println("Data preparation failed!");
+            e.printStackTrace();
+        }
+        return this;
+    }
+
     /**
      * init the dataset from a DBMS
      * @param url the url of the DBMS
@@ -109,15 +260,18 @@ class Data {
             this.featureNum = columnCount - 1;
 
             while (rs.next()) {
-                this.labels.add(rs.getDouble(0));
+                // jdbc columns start from 1
+                this.labels.add(rs.getDouble(1));
                 svm_node[] sample = new svm_node[this.featureNum];
                 for (int i = 0; i < this.featureNum; i++) {
                     sample[i] = new svm_node();
                     sample[i].index = i + 1;
-                    sample[i].value = rs.getDouble(i + 1);
+                    sample[i].value = rs.getDouble(i + 2);
                 }
                 this.originalSamples.add(sample);
             }
+            this.sampleNum = this.originalSamples.size();
+            this.scaledSamples = this.originalSamples;
             System.out.println("Data preparation done in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
             System.out.println("Read " + this.getSampleNum() + " samples in total");
         } catch (SQLException se) {
@@ -127,6 +281,38 @@ class Data {
         return this;
     }
 
+    /**
+     * init the dataset from sources joined on a key, see {@link FeatureJoin}
+     * the joined rows are kept in a dense matrix, without going through svm_nodes or a file
+     * @param join the sources to join
+     * @return this
+     */
+    public Data readJoinedData(FeatureJoin join) {
+        long startTime = System.currentTimeMillis();
+        try {
+            FeatureJoin.Result result = join.run();
+            this.sampleNum = result.rows;
+            this.featureNum = result.cols;
+            this.sparse = false;
+            this.labels = new Vector<>(this.sampleNum);
+            this.targets = null;
+            for (int i = 0; i < this.sampleNum; i++) {
+                this.labels.add(result.labels[i]);
+            }
+            this.originalSamples = new Vector<>();
+            this.scaledSamples = null;
+            this.originalMatrix = new DenseMatrix(result.rows, result.cols,
+                    Arrays.copyOf(result.values, DenseMatrix.size(result.rows, result.cols)));
+            this.scaledMatrix = null;
+            System.out.println("Data preparation done in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+            System.out.println("Read " + this.getSampleNum() + " samples in total");
+        } catch (IOException e) {
+            System.out.println("Data preparation failed!");
+            e.printStackTrace();
+        }
+        return this;
+    }
+
     /**
      * record data to file
      * for debug usage, when you want to use standalone libsvm to validate the result
@@ -135,51 +321,83 @@ class Data {
      */
     @SuppressWarnings("unused")
     public void recordData(String fileName, String type) {
-        long startTime = System.currentTimeMillis();
         String _fileName;
-        Vector<svm_node[]> _set;
 		/* set file name for record */
         switch (type.toLowerCase()) {
             case "original":
                 _fileName = fileName + ".original.txt";
-                _set = this.originalSamples;
                 break;
             case "scaled":
                 _fileName = fileName + ".scaled.txt";
-                _set = this.scaledSamples;
                 break;
             default:
                 System.out.println("wrong data type, recording original set");
+                type = "original";
                 _fileName = fileName + ".original.txt";
-                _set = this.originalSamples;
         }
-        try (FileWriter fw = new FileWriter(_fileName);
-             BufferedWriter bw = new BufferedWriter(fw)) {
+        export(_fileName, type, LibConfig.Format.LIBSVM, false);
+    }
 
-            for (int i = 0; i < this.sampleNum; i++) {
-                bw.write(this.labels.get(i) + " ");
-                svm_node[] sample = _set.get(i);
-                for (int j = 0; j < this.featureNum; j++) {
-                    bw.write(sample[j].index + ":" + sample[j].value + " ");
-                }
-                bw.write("\n");
-                bw.flush();
-            }
+    /**
+     * bulk export the data to a file, see {@link DataExporter}
+     * @param fileName file name to store data
+     * @param type type of data to be exported, original or scaled
+     * @param format LIBSVM text, csv or binary snapshot
+     * @param gzip whether to gzip the file
+     */
+    public void export(String fileName, String type, LibConfig.Format format, boolean gzip) {
+        long startTime = System.currentTimeMillis();
+        try {
+            new DataExporter(getMatrix(type), getLabelArray()).write(fileName, format, gzip);
             System.out.println("Data record done in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
-            System.out.println("see " + _fileName);
+            System.out.println("see " + fileName);
         } catch (IOException e) {
             System.out.println("Data record failed!");
             e.printStackTrace();
         }
     }
 
+    /**
+     * init the dataset from a binary snapshot written by {@link #export}
+     * @param file snapshot file, optionally gzipped
+     * @return this
+     */
+    public Data readDataFromBinaryFile(String file) {
+        long startTime = System.currentTimeMillis();
+        try {
+            DataSnapshot snapshot = DataSnapshot.read(file);
+            this.sampleNum = snapshot.matrix.rows();
+            this.featureNum = snapshot.matrix.cols();
+            this.sparse = snapshot.matrix instanceof SparseMatrix;
+            this.labels = new Vector<>(this.sampleNum);
+            this.targets = null;
+            for (double label : snapshot.labels) {
+                this.labels.add(label);
+            }
+            this.originalSamples = new Vector<>();
+            this.scaledSamples = null;
+            this.originalMatrix = snapshot.matrix;
+            this.scaledMatrix = null;
+            System.out.println("Data preparation done in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+            System.out.println("Read " + this.getSampleNum() + " samples in total");
+        } catch (IOException e) {
+            System.out.println("Data preparation failed!");
+            e.printStackTrace();
+        }
+        return this;
+    }
+
     /**
      * automatically scale the data according to the min/max value of each column
      * @return a scale_param in double[][] form that contains the min/max value of each column
      */
     @SuppressWarnings("unused")
     public double[][] scaleTrainingData() {
+        if (this.sparse) {
+            return scaleSparseTrainingData();
+        }
         this.scaledSamples = new Vector<>();
+        this.scaledMatrix = null;
 		/* step 0: initiate scale param */
         double[][] scale_param = new double[this.featureNum + 1][2];
         scale_param[0][0] = this.scaleUpperBound;
@@ -192,28 +410,30 @@ class Data {
             feature_min[i] = Double.MAX_VALUE;
         }
 		/* step 2: find out min/max value */
+        double[] row = new double[this.featureNum];
         for (int i = 0; i < this.sampleNum; i++) {
+            copyOriginalRow(i, row);
             for (int j = 0; j < this.featureNum; j++) {
-                feature_max[j] = Math.max(feature_max[j], this.originalSamples.get(i)[j].value);
-                feature_min[j] = Math.min(feature_min[j], this.originalSamples.get(i)[j].value);
+                feature_max[j] = Math.max(feature_max[j], row[j]);
+                feature_min[j] = Math.min(feature_min[j], row[j]);
                 scale_param[j + 1][0] = feature_max[j];
                 scale_param[j + 1][1] = feature_min[j];
             }
         }
 		/* step 3: scale */
         for (int i = 0; i < this.sampleNum; i++) {
-            svm_node[] originalSample = this.originalSamples.get(i);
+            copyOriginalRow(i, row);
             svm_node[] scaledSample = new svm_node[this.featureNum];
             for (int j = 0; j < this.featureNum; j++) {
                 scaledSample[j] = new svm_node();
-                scaledSample[j].index = originalSample[j].index;
-                if (originalSample[j].value == feature_min[j]) {
+                scaledSample[j].index = j + 1;
+                if (row[j] == feature_min[j]) {
                     scaledSample[j].value = this.scaleLowerBound;
-                } else if (originalSample[j].value == feature_max[j]) {
+                } else if (row[j] == feature_max[j]) {
                     scaledSample[j].value = this.scaleUpperBound;
                 } else {
                     scaledSample[j].value = this.scaleLowerBound
-                            + ((originalSample[j].value - feature_min[j])
+                            + ((row[j] - feature_min[j])
                             / (feature_max[j] - feature_min[j])
                             * (this.scaleUpperBound - this.scaleLowerBound));
                 }
@@ -229,7 +449,11 @@ class Data {
      */
     @SuppressWarnings("unused")
     public void scaleTestData(double[][] scaleParam) {
+        if (this.sparse && scaleSparseTestData(scaleParam)) {
+            return;
+        }
         this.scaledSamples = new Vector<>();
+        this.scaledMatrix = null;
 		/* step 1: initiate feature bound */
         this.scaleUpperBound = scaleParam[0][0];
         this.scaleLowerBound = scaleParam[0][1];
@@ -241,19 +465,21 @@ class Data {
             feature_min[i] = scaleParam[i + 1][1];
         }
 		/* step 3: scale */
+        double[] row = new double[this.featureNum];
         for (int i = 0; i < this.sampleNum; i++) {
-            svm_node[] sample = this.originalSamples.get(i);
+            copyOriginalRow(i, row);
             svm_node[] scaled_sample = new svm_node[this.featureNum];
             for (int j = 0; j < this.featureNum; j++) {
                 scaled_sample[j] = new svm_node();
-                scaled_sample[j].index = sample[j].index;
-                if (sample[j].value == feature_min[j]) {
+                scaled_sample[j].index = j + 1;
+                // a column constant in the training data has no range to scale by
+                if (row[j] == feature_min[j] || feature_max[j] == feature_min[j]) {
                     scaled_sample[j].value = this.scaleLowerBound;
-                } else if (sample[j].value == feature_max[j]) {
+                } else if (row[j] == feature_max[j]) {
                     scaled_sample[j].value = this.scaleUpperBound;
                 } else {
                     scaled_sample[j].value = this.scaleLowerBound
-                            + ((sample[j].value - feature_min[j])
+                            + ((row[j] - feature_min[j])
                             / (feature_max[j] - feature_min[j])
                             * (this.scaleUpperBound - this.scaleLowerBound));
                 }
@@ -262,6 +488,218 @@ class Data {
         }
     }
 
+    /**
+     * scale sparse data by the largest absolute value of each column into [-1, 1],
+     * so that zeros stay zero and the non-zero structure is shared with the original matrix
+     * the scale bounds are not used; the returned scale_param maps [-max, max] to [-1, 1]
+     * @return a scale_param in the form returned by {@link #scaleTrainingData()}
+     */
+    private double[][] scaleSparseTrainingData() {
+        SparseMatrix x = (SparseMatrix) getMatrix("original");
+        double[] maxAbs = new double[this.featureNum];
+        for (int k = 0; k < x.nonZeros(); k++) {
+            maxAbs[x.colIdx[k]] = Math.max(maxAbs[x.colIdx[k]], Math.abs(x.values[k]));
+        }
+        double[] scaled = new double[x.nonZeros()];
+        for (int k = 0; k < scaled.length; k++) {
+            scaled[k] = x.values[k] / maxAbs[x.colIdx[k]];
+        }
+        this.scaledSamples = null;
+        this.scaledMatrix = new SparseMatrix(this.sampleNum, this.featureNum, x.rowPtr, x.colIdx, scaled);
+
+        double[][] scale_param = new double[this.featureNum + 1][2];
+        scale_param[0][0] = 1.0d;
+        scale_param[0][1] = -1.0d;
+        for (int j = 0; j < this.featureNum; j++) {
+            scale_param[j + 1][0] = maxAbs[j];
+            scale_param[j + 1][1] = -maxAbs[j];
+        }
+        return scale_param;
+    }
+
+    /**
+     * scale sparse test data without filling in zeros
+     * only possible when the scale param maps 0 to 0 for every column,
+     * otherwise the data is made dense
+     * @param scaleParam returned by {@link #scaleTrainingData()}
+     * @return false if the data has been made dense and still needs scaling
+     */
+    private boolean scaleSparseTestData(double[][] scaleParam) {
+        double upper = scaleParam[0][0], lower = scaleParam[0][1];
+        double[] factor = new double[this.featureNum];
+        for (int j = 0; j < this.featureNum; j++) {
+            double max = scaleParam[j + 1][0], min = scaleParam[j + 1][1];
+            if (max == 0 && min == 0) {
+                // never non-zero in the training data
+                continue;
+            }
+            factor[j] = max == min ? 0 : (upper - lower) / (max - min);
+            if (max == min || Math.abs(lower - min * factor[j]) > 1e-12) {
+                System.out.println("scale param does not keep zeros, scaling the data densely");
+                densify();
+                return false;
+            }
+        }
+        this.scaleUpperBound = upper;
+        this.scaleLowerBound = lower;
+        SparseMatrix x = (SparseMatrix) getMatrix("original");
+        double[] scaled = new double[x.nonZeros()];
+        for (int k = 0; k < scaled.length; k++) {
+            scaled[k] = x.values[k] * factor[x.colIdx[k]];
+        }
+        this.scaledSamples = null;
+        this.scaledMatrix = new SparseMatrix(this.sampleNum, this.featureNum, x.rowPtr, x.colIdx, scaled);
+        return true;
+    }
+
+    /**
+     * copy an original dense sample into row, from its svm_nodes or, for datasets read
+     * into a matrix only, e.g. joined or from a binary snapshot, from the matrix
+     */
+    private void copyOriginalRow(int i, double[] row) {
+        if (this.originalSamples.isEmpty()) {
+            this.originalMatrix.copyRow(i, row);
+            return;
+        }
+        svm_node[] sample = this.originalSamples.get(i);
+        for (int j = 0; j < this.featureNum; j++) {
+            row[j] = sample[j].value;
+        }
+    }
+
+    /**
+     * switch a sparse dataset to dense storage
+     */
+    private void densify() {
+        SampleMatrix x = getMatrix("original");
+        double[] row = new double[this.featureNum];
+        Vector<svm_node[]> samples = new Vector<>(this.sampleNum);
+        for (int i = 0; i < this.sampleNum; i++) {
+            x.copyRow(i, row);
+            svm_node[] sample = new svm_node[this.featureNum];
+            for (int j = 0; j < this.featureNum; j++) {
+                sample[j] = new svm_node();
+                sample[j].index = j + 1;
+                sample[j].value = row[j];
+            }
+            samples.add(sample);
+        }
+        this.sparse = false;
+        this.originalSamples = samples;
+        this.scaledSamples = null;
+        this.originalMatrix = null;
+        this.scaledMatrix = null;
+    }
+
+    private SampleMatrix toMatrix(List<svm_node[]> samples) {
+        if (this.sparse) {
+            return SparseMatrix.of(samples, this.featureNum);
+        }
+        return this.precision == LibConfig.Precision.SINGLE
+                ? FloatMatrix.of(samples, this.featureNum) : DenseMatrix.of(samples, this.featureNum);
+    }
+
+    /**
+     * store a dense matrix in the current precision
+     * @param x a matrix built before the precision changed, or null
+     * @param rebuild whether x can be built again from svm_nodes, then it is just dropped
+     */
+    @Nullable
+    private SampleMatrix convert(@Nullable SampleMatrix x, boolean rebuild) {
+        if (x == null || x instanceof SparseMatrix) {
+            return x;
+        }
+        boolean single = this.precision == LibConfig.Precision.SINGLE;
+        if (single == x instanceof FloatMatrix) {
+            return x;
+        }
+        if (rebuild) {
+            return null;
+        }
+        return single ? FloatMatrix.of(x) : toDouble(x);
+    }
+
+    private static DenseMatrix toDouble(SampleMatrix x) {
+        double[] values = new double[DenseMatrix.size(x.rows(), x.cols())];
+        double[] row = new double[x.cols()];
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, row);
+            System.arraycopy(row, 0, values, i * x.cols(), x.cols());
+        }
+        return new DenseMatrix(x.rows(), x.cols(), values);
+    }
+
+    private static Vector<svm_node[]> toNodes(SampleMatrix x) {
+        Vector<svm_node[]> samples = new Vector<>(x.rows());
+        for (int i = 0; i < x.rows(); i++) {
+            samples.add(x.toNodes(i));
+        }
+        return samples;
+    }
+
+    private static int skipSpaces(String line, int pos) {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int nextSpace(String line, int pos) {
+        while (pos < line.length() && !Character.isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * the dataset with only some of its columns, renumbered from 1, see {@link FeatureScreen}
+     * @param columns the columns to keep in ascending order, starting from 0
+     * @return a dataset sharing the labels of this one
+     */
+    Data select(int[] columns) {
+        int[] position = new int[this.featureNum];
+        Arrays.fill(position, -1);
+        for (int k = 0; k < columns.length; k++) {
+            position[columns[k]] = k;
+        }
+        Data data = new Data();
+        data.sampleNum = this.sampleNum;
+        data.featureNum = columns.length;
+        data.scaleUpperBound = this.scaleUpperBound;
+        data.scaleLowerBound = this.scaleLowerBound;
+        data.labels = this.labels;
+        data.targets = this.targets;
+        data.sparse = this.sparse;
+        data.precision = this.precision;
+        boolean scaled = isScaled();
+        data.originalSamples = select(getDataSet("original"), position);
+        data.scaledSamples = scaled ? select(getDataSet("scaled"), position) : data.originalSamples;
+        return data;
+    }
+
+    private static Vector<svm_node[]> select(Vector<svm_node[]> samples, int[] position) {
+        Vector<svm_node[]> selected = new Vector<>(samples.size());
+        for (svm_node[] sample : samples) {
+            int length = 0;
+            for (svm_node node : sample) {
+                if (position[node.index - 1] >= 0) {
+                    length++;
+                }
+            }
+            svm_node[] nodes = new svm_node[length];
+            for (int i = 0, k = 0; i < sample.length; i++) {
+                if (position[sample[i].index - 1] >= 0) {
+                    nodes[k] = new svm_node();
+                    nodes[k].index = position[sample[i].index - 1] + 1;
+                    nodes[k].value = sample[i].value;
+                    k++;
+                }
+            }
+            selected.add(nodes);
+        }
+        return selected;
+    }
+
     /**
      * make the labels 1 or -1
      * for classification
@@ -274,10 +712,17 @@ class Data {
     //~ Getter/setter methods --------------------------------------------------
 
     public Vector<svm_node[]> getDataSet(String type) {
+        // datasets read into a matrix only build their svm_nodes when asked for them
+        if (this.originalSamples.isEmpty() && this.originalMatrix != null) {
+            this.originalSamples = toNodes(this.originalMatrix);
+        }
         switch (type.toLowerCase()) {
             case "original":
                 return this.originalSamples;
             case "scaled":
+                if (this.scaledSamples == null && this.scaledMatrix != null) {
+                    this.scaledSamples = toNodes(this.scaledMatrix);
+                }
                 if (this.scaledSamples != null) {
                     return this.scaledSamples;
                 } else {
@@ -293,9 +738,105 @@ class Data {
                 return this.originalSamples;
         }
     }
+    /**
+     * get the dataset as a primitive matrix, built on first use
+     * @param type original or scaled, see {@link #getDataSet(String)}
+     * @return the samples in a sparse matrix for sparse data, a dense one otherwise
+     */
+    SampleMatrix getMatrix(String type) {
+        if ("scaled".equals(type.toLowerCase()) && isScaled()) {
+            if (this.scaledMatrix == null) {
+                this.scaledMatrix = toMatrix(this.scaledSamples);
+            }
+            return this.scaledMatrix;
+        }
+        if (this.originalMatrix == null) {
+            this.originalMatrix = toMatrix(this.originalSamples);
+        }
+        return this.originalMatrix;
+    }
+    /**
+     * get the dataset as a matrix in a precision other than its own, for one job, e.g. one
+     * that fits its memory plan in single precision; the dataset keeps its own matrices
+     * @param type original or scaled, see {@link #getDataSet(String)}
+     * @param precision precision of the job
+     * @return the matrix of the dataset if it is in that precision or sparse, a copy otherwise
+     */
+    SampleMatrix getMatrix(String type, LibConfig.Precision precision) {
+        if (precision == this.precision || this.sparse) {
+            return getMatrix(type);
+        }
+        boolean single = precision == LibConfig.Precision.SINGLE;
+        Vector<svm_node[]> samples = "scaled".equals(type.toLowerCase()) && isScaled()
+                ? this.scaledSamples : this.originalSamples;
+        // the copy is built from the svm_nodes where there are any, so no rounding carries over
+        if (samples != null && !samples.isEmpty()) {
+            return single ? FloatMatrix.of(samples, this.featureNum) : DenseMatrix.of(samples, this.featureNum);
+        }
+        SampleMatrix x = getMatrix(type);
+        return single ? FloatMatrix.of(x) : toDouble(x);
+    }
+    /**
+     * keep dense samples in single or double precision, see {@link LibConfig.Precision}
+     * a dataset held only as a matrix, e.g. read from a binary snapshot, is rounded for good
+     * by switching to single precision
+     * @param precision precision of the dense matrices
+     */
+    void setPrecision(LibConfig.Precision precision) {
+        this.precision = precision;
+        this.originalMatrix = convert(this.originalMatrix, !this.originalSamples.isEmpty());
+        this.scaledMatrix = convert(this.scaledMatrix, this.scaledSamples != null);
+    }
+    public boolean isSparse() {
+        return this.sparse;
+    }
+    /**
+     * @return whether scaled samples are kept apart from the original ones
+     */
+    boolean isScaled() {
+        return this.scaledMatrix != null
+                || (this.scaledSamples != null && this.scaledSamples != this.originalSamples);
+    }
+    /**
+     * @return the number of stored feature values, every value of dense samples
+     */
+    long getNonZeroNum() {
+        if (!this.originalSamples.isEmpty()) {
+            long nonZeros = 0;
+            for (svm_node[] sample : this.originalSamples) {
+                nonZeros += sample.length;
+            }
+            return nonZeros;
+        }
+        if (this.originalMatrix instanceof SparseMatrix) {
+            return ((SparseMatrix) this.originalMatrix).values.length;
+        }
+        return (long) this.sampleNum * this.featureNum;
+    }
+    public double[] getLabelArray() {
+        double[] y = new double[this.sampleNum];
+        for (int i = 0; i < this.sampleNum; i++) {
+            y[i] = this.labels.get(i);
+        }
+        return y;
+    }
     public Vector<Double> getLabels() {
         return this.labels;
     }
+
+    /**
+     * the dataset labelled with one of its targets, sharing the samples, scaled samples
+     * and matrices built so far; scale before splitting the targets
+     * @param target index of the label column
+     * @return data whose labels are those of the target
+     */
+    Data forTarget(int target) {
+        Preconditions.checkElementIndex(target, getTargetNum());
+        return this.targets == null ? this : new Data(this, target);
+    }
+    public int getTargetNum() {
+        return this.targets == null ? 1 : this.targets.size();
+    }
     public int getSampleNum() {
         return this.sampleNum;
     }
@@ -0,0 +1,202 @@
+package core;
+
+import com.google.common.base.Preconditions;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * bulk export of a dataset to LIBSVM text, csv or the binary {@link DataSnapshot} format
+ * text rows are encoded in blocks straight into reusable byte buffers,
+ * optionally in parallel, and written in row order with large writes
+ */
+final class DataExporter {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final int BLOCK_ROWS = 4096;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final SampleMatrix x;
+    private final double[] labels;
+    private boolean parallel = true;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param x samples to export
+     * @param labels labels of the samples
+     */
+    DataExporter(SampleMatrix x, double[] labels) {
+        Preconditions.checkArgument(x.rows() == labels.length);
+        this.x = x;
+        this.labels = labels;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @param parallel whether row blocks are encoded on several threads
+     * @return this
+     */
+    DataExporter setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    /**
+     * write the dataset to a file
+     * @param fileName file to write
+     * @param format the output format
+     * @param gzip whether to gzip the output
+     * @throws IOException if writing fails
+     */
+    void write(String fileName, LibConfig.Format format, boolean gzip) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(fileName);
+             OutputStream out = gzip ? new GZIPOutputStream(fos, BUFFER_SIZE) : fos;
+             WritableByteChannel channel = gzip ? Channels.newChannel(out) : fos.getChannel()) {
+            if (format == LibConfig.Format.BINARY) {
+                DataSnapshot.write(this.x, this.labels, channel);
+            } else {
+                writeText(format, channel);
+            }
+        }
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private void writeText(LibConfig.Format format, WritableByteChannel channel) throws IOException {
+        int blocks = (this.x.rows() + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        int window = this.parallel ? 2 * Runtime.getRuntime().availableProcessors() : 1;
+        // one encoder per block of a window, reused from window to window
+        TextEncoder[] encoders = new TextEncoder[window];
+        for (int w = 0; w < window; w++) {
+            encoders[w] = new TextEncoder(this.x.cols());
+        }
+        for (int start = 0; start < blocks; start += window) {
+            int first = start, count = Math.min(window, blocks - start);
+            IntStream range = IntStream.range(0, count);
+            (this.parallel ? range.parallel() : range).forEach(w -> {
+                int from = (first + w) * BLOCK_ROWS, to = Math.min(this.x.rows(), from + BLOCK_ROWS);
+                encoders[w].reset();
+                for (int i = from; i < to; i++) {
+                    encoders[w].row(this.x, this.labels[i], i, format);
+                }
+            });
+            for (int w = 0; w < count; w++) {
+                ByteBuffer bytes = ByteBuffer.wrap(encoders[w].bytes, 0, encoders[w].size);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+        }
+    }
+
+    //~ Inner classes ----------------------------------------------------------
+
+    /**
+     * encodes rows as ASCII into a growing byte array
+     * doubles go through a reusable StringBuilder, whose append(double) does not allocate,
+     * integral values are written digit by digit
+     */
+    static final class TextEncoder {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        int size = 0;
+        private final StringBuilder digits = new StringBuilder(32);
+        private final double[] row;
+
+        TextEncoder(int cols) {
+            this.row = new double[cols];
+        }
+
+        void reset() {
+            this.size = 0;
+        }
+
+        void row(SampleMatrix x, double label, int i, LibConfig.Format format) {
+            number(label);
+            if (format == LibConfig.Format.CSV) {
+                x.copyRow(i, this.row);
+                for (double value : this.row) {
+                    put((byte) ',');
+                    number(value);
+                }
+            } else if (x instanceof SparseMatrix) {
+                SparseMatrix s = (SparseMatrix) x;
+                for (int k = s.rowPtr[i]; k < s.rowPtr[i + 1]; k++) {
+                    put((byte) ' ');
+                    integer(s.colIdx[k] + 1);
+                    put((byte) ':');
+                    number(s.values[k]);
+                }
+            } else {
+                x.copyRow(i, this.row);
+                for (int k = 0; k < this.row.length; k++) {
+                    put((byte) ' ');
+                    integer(k + 1);
+                    put((byte) ':');
+                    number(this.row[k]);
+                }
+            }
+            put((byte) '\n');
+        }
+
+        /**
+         * write a double the way Double.toString does
+         */
+        void number(double value) {
+            if (value == (long) value && Math.abs(value) < 1e7 && !(value == 0 && 1 / value < 0)) {
+                integer((long) value);
+                put((byte) '.');
+                put((byte) '0');
+                return;
+            }
+            this.digits.setLength(0);
+            this.digits.append(value);
+            ensure(this.digits.length());
+            for (int k = 0; k < this.digits.length(); k++) {
+                this.bytes[this.size++] = (byte) this.digits.charAt(k);
+            }
+        }
+
+        private void integer(long value) {
+            ensure(20);
+            if (value < 0) {
+                this.bytes[this.size++] = '-';
+                value = -value;
+            }
+            int start = this.size;
+            do {
+                this.bytes[this.size++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            for (int a = start, b = this.size - 1; a < b; a++, b--) {
+                byte tmp = this.bytes[a];
+                this.bytes[a] = this.bytes[b];
+                this.bytes[b] = tmp;
+            }
+        }
+
+        void put(byte b) {
+            ensure(1);
+            this.bytes[this.size++] = b;
+        }
+
+        private void ensure(int n) {
+            if (this.size + n > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.size + n));
+            }
+        }
+    }
+}
+
+// End DataExporter.java
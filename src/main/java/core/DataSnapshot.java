@@ -0,0 +1,250 @@
+package core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * binary snapshot of a dataset, little-endian:
+ * <pre>
+ * int magic, int version, int flags (1 = sparse), int rows, int cols, int reserved, long nnz
+ * double[rows] labels
+ * dense:  double[rows * cols] row-major values
+ * sparse: int[rows + 1] row pointers, int[nnz] 0-based columns, double[nnz] values
+ * </pre>
+ */
+final class DataSnapshot {
+    //~ Static fields and initializer ------------------------------------------
+
+    static final int MAGIC = 0x53565244;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+
+    private static final int FLAG_SPARSE = 1;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    //~ Instance fields --------------------------------------------------------
+
+    final SampleMatrix matrix;
+    final double[] labels;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private DataSnapshot(SampleMatrix matrix, double[] labels) {
+        this.matrix = matrix;
+        this.labels = labels;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * write a dataset in snapshot format
+     * @param x samples, a {@link DenseMatrix} or a {@link SparseMatrix}
+     * @param labels labels of the samples
+     * @param channel destination
+     * @throws IOException if writing fails
+     */
+    static void write(SampleMatrix x, double[] labels, WritableByteChannel channel) throws IOException {
+        boolean sparse = x instanceof SparseMatrix;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(sparse ? FLAG_SPARSE : 0)
+                .putInt(x.rows()).putInt(x.cols()).putInt(0)
+                .putLong(sparse ? ((SparseMatrix) x).nonZeros() : (long) x.rows() * x.cols());
+        putDoubles(labels, 0, labels.length, buffer, channel);
+        if (sparse) {
+            SparseMatrix s = (SparseMatrix) x;
+            putInts(s.rowPtr, buffer, channel);
+            putInts(s.colIdx, buffer, channel);
+            putDoubles(s.values, 0, s.nonZeros(), buffer, channel);
+        } else if (x instanceof DenseMatrix) {
+            double[] values = ((DenseMatrix) x).values;
+            putDoubles(values, 0, values.length, buffer, channel);
+        } else {
+            double[] row = new double[x.cols()];
+            for (int i = 0; i < x.rows(); i++) {
+                x.copyRow(i, row);
+                putDoubles(row, 0, row.length, buffer, channel);
+            }
+        }
+        drain(buffer, channel);
+    }
+
+    /**
+     * read a snapshot, gzip-compressed or not
+     * @param file snapshot file
+     * @return the samples and labels
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    static DataSnapshot read(String file) throws IOException {
+        try (InputStream in = open(file);
+             ReadableByteChannel channel = Channels.newChannel(in)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(0);
+            require(buffer, channel, HEADER_SIZE);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a data snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported snapshot version " + version);
+            }
+            boolean sparse = (buffer.getInt() & FLAG_SPARSE) != 0;
+            int rows = buffer.getInt(), cols = buffer.getInt();
+            buffer.getInt();
+            long nnz = buffer.getLong();
+            if (!sparse && nnz != (long) rows * cols) {
+                throw new IOException(file + " has " + nnz + " values for " + rows + " by " + cols + " samples");
+            }
+            if (nnz > Integer.MAX_VALUE) {
+                throw new IOException(nnz + " values of " + file + " do not fit in one array");
+            }
+
+            double[] labels = getDoubles(new double[rows], buffer, channel);
+            SampleMatrix matrix;
+            if (sparse) {
+                int[] rowPtr = getInts(new int[rows + 1], buffer, channel);
+                int[] colIdx = getInts(new int[(int) nnz], buffer, channel);
+                double[] values = getDoubles(new double[(int) nnz], buffer, channel);
+                matrix = new SparseMatrix(rows, cols, rowPtr, colIdx, values);
+            } else {
+                matrix = new DenseMatrix(rows, cols, getDoubles(new double[(int) nnz], buffer, channel));
+            }
+            return new DataSnapshot(matrix, labels);
+        }
+    }
+
+    /**
+     * map an uncompressed dense snapshot into memory instead of reading it onto the heap,
+     * only the labels are copied; gzipped or sparse snapshots are read with {@link #read}
+     * @param file snapshot file
+     * @return the samples, as a {@link MappedMatrix} if possible, and labels
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    static DataSnapshot map(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    break;
+                }
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                return read(file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported snapshot version " + version);
+            }
+            if ((header.getInt() & FLAG_SPARSE) != 0) {
+                return read(file);
+            }
+            int rows = header.getInt(), cols = header.getInt();
+            double[] labels = new double[rows];
+            channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 8L * rows)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(labels);
+            return new DataSnapshot(new MappedMatrix(channel, HEADER_SIZE + 8L * rows, rows, cols), labels);
+        }
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private static InputStream open(String file) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        in.mark(2);
+        int b0 = in.read(), b1 = in.read();
+        in.reset();
+        if (b0 == 0x1f && b1 == 0x8b) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return in;
+    }
+
+    private static void putDoubles(double[] values, int from, int to, ByteBuffer buffer,
+                                   WritableByteChannel channel) throws IOException {
+        int i = from;
+        while (i < to) {
+            if (buffer.remaining() < 8) {
+                drain(buffer, channel);
+            }
+            int n = Math.min(to - i, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().put(values, i, n);
+            buffer.position(buffer.position() + n * 8);
+            i += n;
+        }
+    }
+
+    private static void putInts(int[] values, ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        int i = 0;
+        while (i < values.length) {
+            if (buffer.remaining() < 4) {
+                drain(buffer, channel);
+            }
+            int n = Math.min(values.length - i, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(values, i, n);
+            buffer.position(buffer.position() + n * 4);
+            i += n;
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * make sure at least n bytes are readable from the buffer
+     */
+    private static void require(ByteBuffer buffer, ReadableByteChannel channel, int n) throws IOException {
+        if (buffer.remaining() >= n) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("truncated snapshot");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static double[] getDoubles(double[] values, ByteBuffer buffer, ReadableByteChannel channel)
+            throws IOException {
+        int i = 0;
+        while (i < values.length) {
+            require(buffer, channel, 8);
+            int n = Math.min(values.length - i, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().get(values, i, n);
+            buffer.position(buffer.position() + n * 8);
+            i += n;
+        }
+        return values;
+    }
+
+    private static int[] getInts(int[] values, ByteBuffer buffer, ReadableByteChannel channel) throws IOException {
+        int i = 0;
+        while (i < values.length) {
+            require(buffer, channel, 4);
+            int n = Math.min(values.length - i, buffer.remaining() / 4);
+            buffer.asIntBuffer().get(values, i, n);
+            buffer.position(buffer.position() + n * 4);
+            i += n;
+        }
+        return values;
+    }
+}
+
+// End DataSnapshot.java
@@ -0,0 +1,137 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_node;
+
+import java.util.List;
+
+/**
+ * dense row-major sample storage in one flat double array
+ */
+final class DenseMatrix implements SampleMatrix {
+    //~ Instance fields --------------------------------------------------------
+
+    private final int rows;
+    private final int cols;
+    final double[] values;
+    private final double[] squaredNorms;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param rows number of samples
+     * @param cols number of features
+     * @param values row-major values, rows * cols long
+     */
+    DenseMatrix(int rows, int cols, double[] values) {
+        assert values.length == (long) rows * cols;
+        this.rows = rows;
+        this.cols = cols;
+        this.values = values;
+        this.squaredNorms = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            double sum = 0.0d;
+            for (int k = i * cols, end = k + cols; k < end; k++) {
+                sum += values[k] * values[k];
+            }
+            this.squaredNorms[i] = sum;
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * the length of the flat array of a rows by cols matrix, which must fit in an int;
+     * offsets i * cols of its rows are then in range too
+     * @param rows number of samples
+     * @param cols number of features
+     * @return rows * cols
+     */
+    static int size(int rows, int cols) {
+        long size = (long) rows * cols;
+        Preconditions.checkArgument(size <= Integer.MAX_VALUE,
+                "%s rows by %s columns do not fit in one array", rows, cols);
+        return (int) size;
+    }
+
+    /**
+     * copy a list of svm_node samples into a dense matrix
+     * @param samples samples with 1-based feature indices
+     * @param cols number of features
+     * @return a dense matrix holding the same values
+     */
+    static DenseMatrix of(List<svm_node[]> samples, int cols) {
+        int rows = samples.size();
+        double[] values = new double[size(rows, cols)];
+        for (int i = 0; i < rows; i++) {
+            int offset = i * cols;
+            for (svm_node node : samples.get(i)) {
+                if (node.index > 0) {
+                    values[offset + node.index - 1] = node.value;
+                }
+            }
+        }
+        return new DenseMatrix(rows, cols, values);
+    }
+
+    @Override
+    public int rows() {
+        return this.rows;
+    }
+
+    @Override
+    public int cols() {
+        return this.cols;
+    }
+
+    @Override
+    public double dot(int i, int j) {
+        double sum = 0.0d;
+        int a = i * this.cols, b = j * this.cols;
+        for (int k = 0; k < this.cols; k++) {
+            sum += this.values[a + k] * this.values[b + k];
+        }
+        return sum;
+    }
+
+    @Override
+    public double dot(int i, double[] x) {
+        double sum = 0.0d;
+        int a = i * this.cols;
+        for (int k = 0; k < this.cols; k++) {
+            sum += this.values[a + k] * x[k];
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredNorm(int i) {
+        return this.squaredNorms[i];
+    }
+
+    @Override
+    public void axpy(int i, double a, double[] w) {
+        int offset = i * this.cols;
+        for (int k = 0; k < this.cols; k++) {
+            w[k] += a * this.values[offset + k];
+        }
+    }
+
+    @Override
+    public void copyRow(int i, double[] out) {
+        System.arraycopy(this.values, i * this.cols, out, 0, this.cols);
+    }
+
+    @Override
+    public svm_node[] toNodes(int i) {
+        svm_node[] nodes = new svm_node[this.cols];
+        for (int k = 0; k < this.cols; k++) {
+            nodes[k] = new svm_node();
+            nodes[k].index = k + 1;
+            nodes[k].value = this.values[i * this.cols + k];
+        }
+        return nodes;
+    }
+}
+
+// End DenseMatrix.java
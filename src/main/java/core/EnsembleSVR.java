@@ -0,0 +1,285 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_parameter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * a divide-and-conquer epsilon-SVR: the training data is split into k subsets, one
+ * model is trained on each in parallel and their predictions are combined, see
+ * {@link LibConfig.Partition}
+ * k subsets of n / k rows cost about 1 / k of the kernel evaluations of one model on n rows
+ */
+public final class EnsembleSVR implements Regressor {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long serialVersionUID = -1422854781438032935L;
+
+    private static final int MAX_LLOYD_ITERATIONS = 20;
+
+    private static final int BLOCK_SIZE = 256;
+
+    //~ Instance fields --------------------------------------------------------
+
+    final KernelModel[] members;
+    /* the centroid of each member's cluster, null when the members are averaged */
+    private final double[][] centroids;
+    /* all members folded into one model, null when they are gated */
+    private final KernelModel average;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private EnsembleSVR(KernelModel[] members, double[][] centroids) {
+        this.members = members;
+        this.centroids = centroids;
+        this.average = centroids == null ? KernelModel.average(Arrays.asList(members)) : null;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * partition the samples and train one model per subset in parallel
+     * @param x training samples
+     * @param y labels of the samples
+     * @param param svm parameter, svm_type must be EPSILON_SVR; a cache_size of 0 shares
+     *              the adaptive cache size among the members trained at once
+     * @param k number of subsets
+     * @param partition how to split the samples
+     * @param precision precision of the kernel cache and the members
+     * @param seed random seed of the partition
+     * @return the trained ensemble
+     */
+    static EnsembleSVR train(SampleMatrix x, double[] y, svm_parameter param, int k,
+                             LibConfig.Partition partition, LibConfig.Precision precision, long seed) {
+        Preconditions.checkArgument(x.rows() == y.length);
+        Preconditions.checkArgument(k > 0 && k <= x.rows(), "k should be in [1, " + x.rows() + "]");
+        Preconditions.checkArgument(param.svm_type == svm_parameter.EPSILON_SVR, "EnsembleSVR needs epsilon-SVR");
+        long startTime = System.currentTimeMillis();
+        int[][] parts;
+        double[][] centroids = null;
+        if (partition == LibConfig.Partition.CLUSTERED) {
+            int[] cluster = new int[x.rows()];
+            centroids = kMeans(x, k, cluster, param, seed);
+            parts = group(cluster, centroids.length);
+            // clusters left empty by Lloyd's iterations get no member
+            List<double[]> kept = new ArrayList<>();
+            List<int[]> keptParts = new ArrayList<>();
+            for (int c = 0; c < parts.length; c++) {
+                if (parts[c].length > 0) {
+                    kept.add(centroids[c]);
+                    keptParts.add(parts[c]);
+                }
+            }
+            centroids = kept.toArray(new double[0][]);
+            parts = keptParts.toArray(new int[0][]);
+        } else {
+            parts = shuffle(x.rows(), k, new Random(seed));
+        }
+
+        int threads = Math.min(parts.length, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<KernelModel>> futures = new ArrayList<>(parts.length);
+            for (int[] part : parts) {
+                futures.add(pool.submit(() -> {
+                    RowView rows = new RowView(x, part);
+                    double[] labels = new double[part.length];
+                    for (int i = 0; i < part.length; i++) {
+                        labels[i] = y[part[i]];
+                    }
+                    svm_parameter memberParam = (svm_parameter) param.clone();
+                    if (memberParam.cache_size <= 0) {
+                        memberParam.cache_size = LibConfig.getInstance().adaptiveCacheSize(part.length, precision)
+                                / threads;
+                    }
+                    SMOSolver solver = new SMOSolver(new KernelMatrix(rows, memberParam, precision),
+                            labels, memberParam);
+                    return KernelModel.of(solver.solve(rows), precision);
+                }));
+            }
+            KernelModel[] members = new KernelModel[parts.length];
+            for (int m = 0; m < parts.length; m++) {
+                members[m] = futures.get(m).get();
+            }
+            if (SVMLib.DEBUG) {
+                System.out.println("Ensemble of " + members.length + " models trained in "
+                        + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+            }
+            return new EnsembleSVR(members, centroids);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Override
+    public double predict(double[] sample) {
+        if (this.average != null) {
+            return this.average.predict(sample);
+        }
+        return this.members[nearest(sample)].predict(sample);
+    }
+
+    /**
+     * predict every row of a matrix, blocks of rows in parallel
+     * @param x samples
+     * @return the predicted label of each row
+     */
+    double[] predict(SampleMatrix x) {
+        double[] predictions = new double[x.rows()];
+        int blocks = (x.rows() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            double[] sample = new double[x.cols()];
+            int end = Math.min(x.rows(), (b + 1) * BLOCK_SIZE);
+            for (int i = b * BLOCK_SIZE; i < end; i++) {
+                x.copyRow(i, sample);
+                predictions[i] = predict(sample);
+            }
+        });
+        return predictions;
+    }
+
+    /**
+     * @return the number of member models
+     */
+    public int getMemberNum() {
+        return this.members.length;
+    }
+
+    /**
+     * @return the number of support vectors of all members
+     */
+    public int getSupportVectorNum() {
+        int l = 0;
+        for (KernelModel member : this.members) {
+            l += member.getSupportVectorNum();
+        }
+        return l;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private int nearest(double[] sample) {
+        int best = 0;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < this.centroids.length; c++) {
+            double[] centroid = this.centroids[c];
+            double distance = 0.0d;
+            for (int k = 0; k < centroid.length; k++) {
+                double diff = (k < sample.length ? sample[k] : 0) - centroid[k];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * split 0..n-1 into k random subsets of n / k rows, each in ascending order
+     */
+    private static int[][] shuffle(int n, int k, Random random) {
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = rows[i];
+            rows[i] = rows[j];
+            rows[j] = tmp;
+        }
+        int[][] parts = new int[k][];
+        for (int p = 0; p < k; p++) {
+            parts[p] = Arrays.copyOfRange(rows, (int) ((long) p * n / k), (int) ((long) (p + 1) * n / k));
+            Arrays.sort(parts[p]);
+        }
+        return parts;
+    }
+
+    /**
+     * Lloyd's k-means from k-means++ seeds
+     * @param cluster receives the cluster of each row
+     * @return the centroids
+     */
+    private static double[][] kMeans(SampleMatrix x, int k, int[] cluster, svm_parameter param, long seed) {
+        int n = x.rows(), d = x.cols();
+        int[] seeds = NystromFeatures.selectLandmarks(x, k, LibConfig.Landmarks.KMEANS_PP, param, seed);
+        double[][] centroids = new double[k][d];
+        for (int c = 0; c < k; c++) {
+            x.copyRow(seeds[c], centroids[c]);
+        }
+        Arrays.fill(cluster, -1);
+        for (int iter = 0; ; iter++) {
+            double[] norms = new double[k];
+            for (int c = 0; c < k; c++) {
+                norms[c] = NystromFeatures.dot(centroids[c], centroids[c]);
+            }
+            // ||x - c||^2 without the ||x||^2 every centroid shares
+            boolean changed = IntStream.range(0, n).parallel().map(i -> {
+                int best = 0;
+                double bestDistance = Double.POSITIVE_INFINITY;
+                for (int c = 0; c < k; c++) {
+                    double distance = norms[c] - 2 * x.dot(i, centroids[c]);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = c;
+                    }
+                }
+                int old = cluster[i];
+                cluster[i] = best;
+                return old == best ? 0 : 1;
+            }).sum() > 0;
+            // the clusters are left as assigned to the final centroids, which gate the members
+            if (!changed || iter == MAX_LLOYD_ITERATIONS - 1) {
+                break;
+            }
+            double[][] sums = new double[k][d];
+            int[] counts = new int[k];
+            for (int i = 0; i < n; i++) {
+                x.axpy(i, 1.0d, sums[cluster[i]]);
+                counts[cluster[i]]++;
+            }
+            for (int c = 0; c < k; c++) {
+                // an empty cluster keeps its centroid
+                for (int j = 0; counts[c] > 0 && j < d; j++) {
+                    centroids[c][j] = sums[c][j] / counts[c];
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static int[][] group(int[] cluster, int k) {
+        int[] counts = new int[k];
+        for (int c : cluster) {
+            counts[c]++;
+        }
+        int[][] parts = new int[k][];
+        for (int c = 0; c < k; c++) {
+            parts[c] = new int[counts[c]];
+        }
+        int[] filled = new int[k];
+        for (int i = 0; i < cluster.length; i++) {
+            parts[cluster[i]][filled[cluster[i]]++] = i;
+        }
+        return parts;
+    }
+}
+
+// End EnsembleSVR.java
@@ -0,0 +1,425 @@
+package core;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * assembles training data from several sources joined on a key, e.g. a day
+ * the probe source holds the label and is streamed row by row; every other source is
+ * first loaded into a hash table keyed by a primitive long, and each probe row found in
+ * all of them becomes one sample: the probe's features followed by those of every joined
+ * source in join order. joined rows go straight into a dense matrix, see
+ * {@link SVMLib#initDataFromJoin(FeatureJoin)}
+ */
+public final class FeatureJoin {
+    //~ Instance fields --------------------------------------------------------
+
+    private final Source probe;
+    private final List<Source> builds = new ArrayList<>();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param probe the source streamed against the others, its first column is the label
+     */
+    public FeatureJoin(Source probe) {
+        this.probe = probe;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * inner join another source on the key
+     * a key repeated in the source keeps its last row
+     * @param build source whose columns are all features
+     * @return this
+     */
+    public FeatureJoin join(Source build) {
+        this.builds.add(build);
+        return this;
+    }
+
+    /**
+     * load the joined sources and stream the probe source through them, then close all sources
+     * @return the joined rows
+     * @throws IOException if a source cannot be read
+     */
+    Result run() throws IOException {
+        long startTime = System.currentTimeMillis();
+        try {
+            Table[] tables = new Table[this.builds.size()];
+            int cols = this.probe.width - 1;
+            for (int b = 0; b < tables.length; b++) {
+                tables[b] = Table.of(this.builds.get(b));
+                cols += tables[b].width;
+            }
+            Preconditions.checkArgument(this.probe.width > 0, "the probe source has no label column");
+
+            Result result = new Result(cols);
+            int[] rows = new int[tables.length];
+            long probed = 0;
+            while (this.probe.next()) {
+                probed++;
+                long key = this.probe.key();
+                boolean found = true;
+                for (int b = 0; b < tables.length && found; b++) {
+                    rows[b] = tables[b].find(key);
+                    found = rows[b] >= 0;
+                }
+                if (!found) {
+                    continue;
+                }
+                double[] row = result.append(this.probe.value(0));
+                int offset = 0;
+                for (int k = 1; k < this.probe.width; k++) {
+                    row[offset++] = this.probe.value(k);
+                }
+                for (int b = 0; b < tables.length; b++) {
+                    System.arraycopy(tables[b].values, rows[b] * tables[b].width, row, offset, tables[b].width);
+                    offset += tables[b].width;
+                }
+                result.commit();
+            }
+            if (SVMLib.DEBUG) {
+                System.out.println("Joined " + result.rows + " of " + probed + " rows in "
+                        + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+            }
+            return result;
+        } finally {
+            close(this.probe);
+            for (Source build : this.builds) {
+                close(build);
+            }
+        }
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private static void close(Source source) {
+        try {
+            source.close();
+        } catch (IOException e) {
+            System.out.println("Source close failed!");
+            e.printStackTrace();
+        }
+    }
+
+    //~ Inner classes ----------------------------------------------------------
+
+    /**
+     * the key of a csv line
+     */
+    public interface Key {
+        long of(String[] contents);
+
+        /**
+         * @param column an integer column
+         * @return the column's value as the key
+         */
+        static Key column(int column) {
+            return contents -> Long.parseLong(contents[column].trim());
+        }
+
+        /**
+         * @param column a yyyy-MM-dd column
+         * @return the day as the key
+         */
+        static Key date(int column) {
+            return contents -> LocalDate.parse(contents[column].trim()).toEpochDay();
+        }
+
+        /**
+         * @return the day of a date split into year, month and day columns as the key
+         */
+        static Key date(int year, int month, int day) {
+            return contents -> LocalDate.of(Integer.parseInt(contents[year].trim()),
+                    Integer.parseInt(contents[month].trim()), Integer.parseInt(contents[day].trim())).toEpochDay();
+        }
+    }
+
+    /**
+     * a stream of keyed rows of a fixed number of numeric columns
+     */
+    public abstract static class Source implements Closeable {
+        final int width;
+
+        Source(int width) {
+            this.width = width;
+        }
+
+        /**
+         * @param file csv file name
+         * @param header whether the first line is a header to skip
+         * @param key the key of a line
+         * @param columns the columns to take from each line, in order
+         * @return a source streaming the file
+         * @throws IOException if the file cannot be opened
+         */
+        public static Source csv(String file, boolean header, Key key, int... columns) throws IOException {
+            return new CsvSource(file, header, key, columns);
+        }
+
+        /**
+         * a date or timestamp key column is keyed by its day, any other by its integer value
+         * @param con an open connection, left open
+         * @param query the query to stream
+         * @param keyColumn the key column, starting from 1
+         * @param columns the numeric columns to take from each row, starting from 1
+         * @return a source streaming the result of the query
+         * @throws IOException if the query fails
+         */
+        public static Source jdbc(Connection con, String query, int keyColumn, int... columns) throws IOException {
+            return new JdbcSource(con, query, keyColumn, columns);
+        }
+
+        /**
+         * move to the next row
+         * @return false at the end of the source
+         */
+        abstract boolean next() throws IOException;
+
+        abstract long key();
+
+        abstract double value(int k);
+    }
+
+    private static final class CsvSource extends Source {
+        private final BufferedReader reader;
+        private final Key key;
+        private final int[] columns;
+        private String[] contents = null;
+
+        CsvSource(String file, boolean header, Key key, int[] columns) throws IOException {
+            super(columns.length);
+            this.reader = new BufferedReader(new FileReader(file), 1 << 16);
+            this.key = key;
+            this.columns = columns;
+            if (header) {
+                this.reader.readLine();
+            }
+        }
+
+        @Override
+        boolean next() throws IOException {
+            String line = this.reader.readLine();
+            while (line != null && line.trim().isEmpty()) {
+                line = this.reader.readLine();
+            }
+            this.contents = line == null ? null : line.split(",");
+            return line != null;
+        }
+
+        @Override
+        long key() {
+            return this.key.of(this.contents);
+        }
+
+        @Override
+        double value(int k) {
+            if (this.columns[k] >= this.contents.length) {
+                System.err.println("data format not aligned");
+                throw new RuntimeException("data format error");
+            }
+            return Double.parseDouble(this.contents[this.columns[k]]);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.reader.close();
+        }
+    }
+
+    private static final class JdbcSource extends Source {
+        private final Statement stmt;
+        private final ResultSet rs;
+        private final int keyColumn;
+        private final boolean dateKey;
+        private final int[] columns;
+
+        JdbcSource(Connection con, String query, int keyColumn, int[] columns) throws IOException {
+            super(columns.length);
+            this.keyColumn = keyColumn;
+            this.columns = columns;
+            try {
+                this.stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                this.stmt.setFetchSize(1024);
+                this.rs = this.stmt.executeQuery(query);
+                int type = this.rs.getMetaData().getColumnType(keyColumn);
+                this.dateKey = type == Types.DATE || type == Types.TIMESTAMP;
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        boolean next() throws IOException {
+            try {
+                return this.rs.next();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        long key() {
+            try {
+                return this.dateKey ? this.rs.getDate(this.keyColumn).toLocalDate().toEpochDay()
+                        : this.rs.getLong(this.keyColumn);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        double value(int k) {
+            try {
+                return this.rs.getDouble(this.columns[k]);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.stmt.close();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * the rows of a joined source in one flat array, found by an open-addressing table of keys
+     */
+    private static final class Table {
+        final int width;
+        double[] values;
+        private long[] keys = new long[16];
+        /* row of each slot plus one, 0 for an empty slot */
+        private int[] slots = new int[16];
+        private int size = 0;
+
+        private Table(int width) {
+            this.width = width;
+            this.values = new double[16 * width];
+        }
+
+        static Table of(Source source) throws IOException {
+            Table table = new Table(source.width);
+            while (source.next()) {
+                long key = source.key();
+                int row = table.find(key);
+                if (row < 0) {
+                    row = table.insert(key);
+                }
+                for (int k = 0; k < source.width; k++) {
+                    table.values[row * source.width + k] = source.value(k);
+                }
+            }
+            return table;
+        }
+
+        /**
+         * @return the row of a key, -1 if it is missing
+         */
+        int find(long key) {
+            int mask = this.keys.length - 1;
+            for (int s = slot(key, mask); this.slots[s] != 0; s = (s + 1) & mask) {
+                if (this.keys[s] == key) {
+                    return this.slots[s] - 1;
+                }
+            }
+            return -1;
+        }
+
+        private int insert(long key) {
+            // keep the load factor under 1 / 2
+            if (2 * (this.size + 1) > this.keys.length) {
+                long[] oldKeys = this.keys;
+                int[] oldSlots = this.slots;
+                this.keys = new long[oldKeys.length * 2];
+                this.slots = new int[oldKeys.length * 2];
+                for (int s = 0; s < oldKeys.length; s++) {
+                    if (oldSlots[s] != 0) {
+                        put(oldKeys[s], oldSlots[s]);
+                    }
+                }
+            }
+            int row = this.size++;
+            put(key, row + 1);
+            if (this.values.length < this.size * this.width) {
+                this.values = Arrays.copyOf(this.values, 2 * this.values.length);
+            }
+            return row;
+        }
+
+        private void put(long key, int slot) {
+            int mask = this.keys.length - 1;
+            int s = slot(key, mask);
+            while (this.slots[s] != 0) {
+                s = (s + 1) & mask;
+            }
+            this.keys[s] = key;
+            this.slots[s] = slot;
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+
+    /**
+     * joined labels and features, grown by doubling
+     */
+    static final class Result {
+        final int cols;
+        int rows = 0;
+        double[] labels = new double[1024];
+        double[] values;
+        private final double[] row;
+
+        private Result(int cols) {
+            this.cols = cols;
+            this.values = new double[DenseMatrix.size(1024, cols)];
+            this.row = new double[cols];
+        }
+
+        /**
+         * start a row
+         * @return the buffer to fill with the row's features
+         */
+        private double[] append(double label) {
+            if (this.rows == this.labels.length) {
+                // double the rows, but no further than one array of values holds
+                int capacity = (int) Math.min(2L * this.rows, Integer.MAX_VALUE / Math.max(1, this.cols));
+                capacity = Math.max(capacity, this.rows + 1);
+                this.values = Arrays.copyOf(this.values, DenseMatrix.size(capacity, this.cols));
+                this.labels = Arrays.copyOf(this.labels, capacity);
+            }
+            this.labels[this.rows] = label;
+            return this.row;
+        }
+
+        private void commit() {
+            System.arraycopy(this.row, 0, this.values, this.rows * this.cols, this.cols);
+            this.rows++;
+        }
+    }
+}
+
+// End FeatureJoin.java
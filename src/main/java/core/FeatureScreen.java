@@ -0,0 +1,386 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * screens the columns of a dataset before kernel training, whose cost grows with the
+ * number of columns
+ * every column's variance, correlation with the label and mutual information with the
+ * label are computed in parallel; constant columns are dropped, and of every group of
+ * highly collinear columns only the one most informative about the label is kept. an
+ * optional wrapper then drops the least informative columns one at a time while SVR fits
+ * on a small subsample do not get worse
+ */
+public final class FeatureScreen {
+    //~ Static fields and initializer ------------------------------------------
+
+    /* rows the statistics are computed on, a random subsample of larger datasets */
+    private static final int SCREEN_ROWS = 100000;
+
+    /* rows of the subsample the wrapper fits on, a quarter of them held out */
+    private static final int WRAPPER_ROWS = 2000;
+
+    /* bins of each variable in the mutual information */
+    private static final int BINS = 16;
+
+    /* variance below which a column is constant, relative to its mean square */
+    private static final double CONSTANT = 1e-12;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private double collinearity = 0.98d;
+    private int wrapper = 0;
+    private double tolerance = 0.01d;
+    private long seed = 0L;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * screen the columns of a matrix
+     * @param x samples
+     * @param y labels of the samples
+     * @param param epsilon-SVR parameter of the wrapper fits, null to skip the wrapper
+     * @return the statistics of every column and the columns kept
+     */
+    Report screen(SampleMatrix x, double[] y, @Nullable svm_parameter param) {
+        Preconditions.checkArgument(x.rows() == y.length);
+        long startTime = System.currentTimeMillis();
+        int d = x.cols();
+        int[] rows = subsample(x.rows(), SCREEN_ROWS, new Random(this.seed));
+        int n = rows.length;
+        double[] labels = new double[n];
+        for (int r = 0; r < n; r++) {
+            labels[r] = y[rows[r]];
+        }
+        double[][] columns = columns(x, rows);
+
+        Report report = new Report(d);
+        double[] centeredY = center(labels.clone());
+        double yNorm = Math.sqrt(dot(centeredY, centeredY));
+        int[] yBins = quantileBins(labels);
+        // the standardized columns are kept for the collinearity check
+        double[][] standardized = new double[d][];
+        IntStream.range(0, d).parallel().forEach(j -> {
+            double[] column = columns[j];
+            double mean = Arrays.stream(column).sum() / n;
+            double meanSquare = dot(column, column) / n;
+            report.variance[j] = Math.max(0.0d, meanSquare - mean * mean);
+            if (report.variance[j] <= CONSTANT * Math.max(meanSquare, Double.MIN_NORMAL)) {
+                report.dropped[j] = "constant";
+                return;
+            }
+            double[] centered = center(column.clone());
+            double norm = Math.sqrt(dot(centered, centered));
+            for (int r = 0; r < n; r++) {
+                centered[r] /= norm;
+            }
+            standardized[j] = centered;
+            report.correlation[j] = yNorm == 0 ? 0.0d : dot(centered, centeredY) / yNorm;
+            report.information[j] = information(widthBins(column), yBins);
+        });
+
+        // the most informative columns first, each kept unless collinear with one kept before it
+        Integer[] order = IntStream.range(0, d).filter(j -> report.dropped[j] == null).boxed()
+                .sorted(Comparator.comparingDouble((Integer j) -> -report.information[j])
+                        .thenComparingDouble(j -> -Math.abs(report.correlation[j])))
+                .toArray(Integer[]::new);
+        double[][] corr = new double[d][];
+        IntStream.range(0, order.length).parallel().forEach(a -> {
+            int j = order[a];
+            corr[j] = new double[d];
+            for (int b = 0; b < a; b++) {
+                corr[j][order[b]] = dot(standardized[j], standardized[order[b]]);
+            }
+        });
+        List<Integer> kept = new ArrayList<>();
+        for (int j : order) {
+            for (int k : kept) {
+                if (Math.abs(corr[j][k]) >= this.collinearity) {
+                    report.dropped[j] = "collinear with column " + k;
+                    break;
+                }
+            }
+            if (report.dropped[j] == null) {
+                kept.add(j);
+            }
+        }
+
+        if (param != null && this.wrapper > 0 && kept.size() > 1) {
+            wrap(columns, labels, kept, param, report);
+        }
+        report.kept = kept.stream().mapToInt(Integer::intValue).sorted().toArray();
+        if (SVMLib.DEBUG) {
+            System.out.println("Feature screening done in " + (System.currentTimeMillis() - startTime) / 1000.0
+                    + " seconds");
+        }
+        return report;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * backward elimination among the least informative kept columns: each step fits one
+     * SVR without each candidate in parallel and drops the best candidate if the holdout
+     * error stays within the tolerance of the error before the step
+     * @param kept columns kept so far, most informative first, updated in place
+     */
+    private void wrap(double[][] columns, double[] labels, List<Integer> kept, svm_parameter param, Report report) {
+        Preconditions.checkArgument(param.svm_type == svm_parameter.EPSILON_SVR, "the wrapper needs epsilon-SVR");
+        int[] rows = subsample(labels.length, WRAPPER_ROWS, new Random(this.seed + 1));
+        int trainNum = rows.length - rows.length / 4;
+        svm_parameter fitParam = (svm_parameter) param.clone();
+        // the whole kernel matrix of the subsample
+        fitParam.cache_size = 8.0d * trainNum * trainNum / (1 << 20) + 1;
+
+        List<Integer> candidates = new ArrayList<>(kept.subList(Math.max(1, kept.size() - this.wrapper), kept.size()));
+        double error = fit(columns, labels, rows, trainNum, kept, fitParam);
+        while (!candidates.isEmpty() && kept.size() > 1) {
+            double[] errors = candidates.parallelStream().mapToDouble(c -> {
+                List<Integer> without = new ArrayList<>(kept);
+                without.remove(c);
+                return fit(columns, labels, rows, trainNum, without, fitParam);
+            }).toArray();
+            int best = 0;
+            for (int k = 1; k < errors.length; k++) {
+                if (errors[k] < errors[best]) {
+                    best = k;
+                }
+            }
+            if (errors[best] > error * (1 + this.tolerance)) {
+                break;
+            }
+            int column = candidates.remove(best);
+            kept.remove(Integer.valueOf(column));
+            report.dropped[column] = "wrapper, holdout rmse " + errors[best] + " without it, " + error + " with it";
+            error = errors[best];
+        }
+    }
+
+    /**
+     * @return the holdout rmse of an SVR fit on the first trainNum subsample rows of some columns
+     */
+    private static double fit(double[][] columns, double[] labels, int[] rows, int trainNum, List<Integer> kept,
+                              svm_parameter param) {
+        int d = kept.size();
+        double[] values = new double[rows.length * d];
+        double[] y = new double[trainNum];
+        for (int r = 0; r < rows.length; r++) {
+            for (int k = 0; k < d; k++) {
+                values[r * d + k] = columns[kept.get(k)][rows[r]];
+            }
+            if (r < trainNum) {
+                y[r] = labels[rows[r]];
+            }
+        }
+        DenseMatrix train = new DenseMatrix(trainNum, d, Arrays.copyOf(values, trainNum * d));
+        svm_model model = new SMOSolver(new KernelMatrix(train, param), y, param).solve(train);
+        KernelModel compiled = KernelModel.of(model, LibConfig.Precision.DOUBLE);
+        double[] predictions = new double[rows.length - trainNum], truth = new double[predictions.length];
+        for (int r = trainNum; r < rows.length; r++) {
+            predictions[r - trainNum] = compiled.predict(Arrays.copyOfRange(values, r * d, (r + 1) * d));
+            truth[r - trainNum] = labels[rows[r]];
+        }
+        return SVMLib.rmse(predictions, truth);
+    }
+
+    /**
+     * @return at most m of 0..n-1 in ascending order, all of them if n <= m
+     */
+    private static int[] subsample(int n, int m, Random random) {
+        if (n <= m) {
+            return IntStream.range(0, n).toArray();
+        }
+        // Floyd's sampling of m distinct rows
+        Set<Integer> chosen = new HashSet<>(2 * m);
+        for (int i = n - m; i < n; i++) {
+            int r = random.nextInt(i + 1);
+            chosen.add(chosen.contains(r) ? i : r);
+        }
+        return chosen.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * the rows of a matrix as columns, blocks of rows in parallel
+     */
+    private static double[][] columns(SampleMatrix x, int[] rows) {
+        int d = x.cols();
+        double[][] columns = new double[d][rows.length];
+        int block = 1024;
+        IntStream.range(0, (rows.length + block - 1) / block).parallel().forEach(b -> {
+            double[] row = new double[d];
+            for (int r = b * block; r < Math.min(rows.length, (b + 1) * block); r++) {
+                x.copyRow(rows[r], row);
+                for (int j = 0; j < d; j++) {
+                    columns[j][r] = row[j];
+                }
+            }
+        });
+        return columns;
+    }
+
+    /**
+     * bins of equal width over the range of the values
+     */
+    private static int[] widthBins(double[] values) {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        int[] bins = new int[values.length];
+        for (int r = 0; r < values.length; r++) {
+            bins[r] = max == min ? 0 : Math.min(BINS - 1, (int) ((values[r] - min) / (max - min) * BINS));
+        }
+        return bins;
+    }
+
+    /**
+     * bins of about equal counts, so a skewed label still spreads over all of them
+     */
+    private static int[] quantileBins(double[] values) {
+        Integer[] order = IntStream.range(0, values.length).boxed()
+                .sorted(Comparator.comparingDouble(r -> values[r])).toArray(Integer[]::new);
+        int[] bins = new int[values.length];
+        for (int k = 0; k < order.length; k++) {
+            // equal values share a bin
+            bins[order[k]] = k > 0 && values[order[k]] == values[order[k - 1]] ? bins[order[k - 1]]
+                    : (int) ((long) k * BINS / order.length);
+        }
+        return bins;
+    }
+
+    /**
+     * @return the mutual information in nats of two binned variables
+     */
+    private static double information(int[] a, int[] b) {
+        double[][] joint = new double[BINS][BINS];
+        double[] pa = new double[BINS], pb = new double[BINS];
+        double share = 1.0d / a.length;
+        for (int r = 0; r < a.length; r++) {
+            joint[a[r]][b[r]] += share;
+            pa[a[r]] += share;
+            pb[b[r]] += share;
+        }
+        double information = 0.0d;
+        for (int i = 0; i < BINS; i++) {
+            for (int j = 0; j < BINS; j++) {
+                if (joint[i][j] > 0) {
+                    information += joint[i][j] * Math.log(joint[i][j] / (pa[i] * pb[j]));
+                }
+            }
+        }
+        return information;
+    }
+
+    private static double[] center(double[] values) {
+        double mean = Arrays.stream(values).sum() / values.length;
+        for (int r = 0; r < values.length; r++) {
+            values[r] -= mean;
+        }
+        return values;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0.0d;
+        for (int r = 0; r < a.length; r++) {
+            sum += a[r] * b[r];
+        }
+        return sum;
+    }
+
+    //~ Getter/setter methods --------------------------------------------------
+
+    /**
+     * @param collinearity columns whose |correlation| reaches this are collinear
+     * @return this
+     */
+    public FeatureScreen setCollinearity(double collinearity) {
+        Preconditions.checkArgument(collinearity > 0 && collinearity <= 1, "collinearity should be in (0, 1]");
+        this.collinearity = collinearity;
+        return this;
+    }
+
+    /**
+     * @param wrapper the number of least informative columns the wrapper may drop, 0 to skip it
+     * @return this
+     */
+    public FeatureScreen setWrapper(int wrapper) {
+        Preconditions.checkArgument(wrapper >= 0, "wrapper < 0");
+        this.wrapper = wrapper;
+        return this;
+    }
+
+    /**
+     * @param tolerance the wrapper drops a column if the holdout rmse grows by less than this ratio
+     * @return this
+     */
+    public FeatureScreen setTolerance(double tolerance) {
+        Preconditions.checkArgument(tolerance >= 0, "tolerance < 0");
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * @param seed random seed of the subsamples
+     * @return this
+     */
+    public FeatureScreen setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    //~ Inner classes ----------------------------------------------------------
+
+    /**
+     * the statistics of every column and the columns kept
+     */
+    public static final class Report {
+        final double[] variance;
+        final double[] correlation;
+        final double[] information;
+        /* why each column was dropped, null for kept columns */
+        final String[] dropped;
+        int[] kept;
+
+        private Report(int d) {
+            this.variance = new double[d];
+            this.correlation = new double[d];
+            this.information = new double[d];
+            this.dropped = new String[d];
+        }
+
+        /**
+         * @return the kept columns in ascending order, starting from 0
+         */
+        public int[] getKept() {
+            return this.kept.clone();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder("kept " + this.kept.length + " of " + this.dropped.length
+                    + " columns");
+            for (int j = 0; j < this.dropped.length; j++) {
+                report.append("\ncolumn ").append(j).append(": variance ").append(this.variance[j])
+                        .append("; correlation ").append(this.correlation[j])
+                        .append("; information ").append(this.information[j])
+                        .append(this.dropped[j] == null ? "" : "; dropped, " + this.dropped[j]);
+            }
+            return report.toString();
+        }
+    }
+}
+
+// End FeatureScreen.java
@@ -0,0 +1,145 @@
+package core;
+
+import libsvm.svm_node;
+
+import java.util.List;
+
+/**
+ * dense row-major sample storage in one flat float array, half the size of a {@link DenseMatrix}
+ * values are rounded to single precision once when stored, inner products are
+ * accumulated in double
+ */
+final class FloatMatrix implements SampleMatrix {
+    //~ Instance fields --------------------------------------------------------
+
+    private final int rows;
+    private final int cols;
+    final float[] values;
+    private final double[] squaredNorms;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param rows number of samples
+     * @param cols number of features
+     * @param values row-major values, rows * cols long
+     */
+    FloatMatrix(int rows, int cols, float[] values) {
+        assert values.length == (long) rows * cols;
+        this.rows = rows;
+        this.cols = cols;
+        this.values = values;
+        this.squaredNorms = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            double sum = 0.0d;
+            for (int k = i * cols, end = k + cols; k < end; k++) {
+                sum += (double) values[k] * values[k];
+            }
+            this.squaredNorms[i] = sum;
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * copy a list of svm_node samples into a float matrix
+     * @param samples samples with 1-based feature indices
+     * @param cols number of features
+     * @return a float matrix holding the rounded values
+     */
+    static FloatMatrix of(List<svm_node[]> samples, int cols) {
+        int rows = samples.size();
+        float[] values = new float[DenseMatrix.size(rows, cols)];
+        for (int i = 0; i < rows; i++) {
+            int offset = i * cols;
+            for (svm_node node : samples.get(i)) {
+                if (node.index > 0) {
+                    values[offset + node.index - 1] = (float) node.value;
+                }
+            }
+        }
+        return new FloatMatrix(rows, cols, values);
+    }
+
+    /**
+     * round any sample matrix to single precision
+     * @param x samples
+     * @return a float matrix holding the rounded values
+     */
+    static FloatMatrix of(SampleMatrix x) {
+        int rows = x.rows(), cols = x.cols();
+        float[] values = new float[DenseMatrix.size(rows, cols)];
+        double[] row = new double[cols];
+        for (int i = 0; i < rows; i++) {
+            x.copyRow(i, row);
+            for (int k = 0; k < cols; k++) {
+                values[i * cols + k] = (float) row[k];
+            }
+        }
+        return new FloatMatrix(rows, cols, values);
+    }
+
+    @Override
+    public int rows() {
+        return this.rows;
+    }
+
+    @Override
+    public int cols() {
+        return this.cols;
+    }
+
+    @Override
+    public double dot(int i, int j) {
+        double sum = 0.0d;
+        int a = i * this.cols, b = j * this.cols;
+        for (int k = 0; k < this.cols; k++) {
+            sum += (double) this.values[a + k] * this.values[b + k];
+        }
+        return sum;
+    }
+
+    @Override
+    public double dot(int i, double[] x) {
+        double sum = 0.0d;
+        int a = i * this.cols;
+        for (int k = 0; k < this.cols; k++) {
+            sum += this.values[a + k] * x[k];
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredNorm(int i) {
+        return this.squaredNorms[i];
+    }
+
+    @Override
+    public void axpy(int i, double a, double[] w) {
+        int offset = i * this.cols;
+        for (int k = 0; k < this.cols; k++) {
+            w[k] += a * this.values[offset + k];
+        }
+    }
+
+    @Override
+    public void copyRow(int i, double[] out) {
+        int offset = i * this.cols;
+        for (int k = 0; k < this.cols; k++) {
+            out[k] = this.values[offset + k];
+        }
+    }
+
+    @Override
+    public svm_node[] toNodes(int i) {
+        svm_node[] nodes = new svm_node[this.cols];
+        for (int k = 0; k < this.cols; k++) {
+            nodes[k] = new svm_node();
+            nodes[k].index = k + 1;
+            nodes[k].value = this.values[i * this.cols + k];
+        }
+        return nodes;
+    }
+}
+
+// End FloatMatrix.java
@@ -0,0 +1,186 @@
+package core;
+
+import libsvm.svm_node;
+
+import java.io.Serializable;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * random Fourier features (Rahimi and Recht, 2007) approximating
+ * the RBF kernel exp(-gamma * |x - y|^2) by z(x) . z(y)
+ * z_k(x) = sqrt(2 / D) * cos(w_k . x + b_k), w_k ~ N(0, 2 * gamma * I), b_k ~ U(0, 2 * pi)
+ */
+final class FourierFeatures implements Serializable {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long serialVersionUID = -8371838389851568093L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    final int inputDim;
+    final int dimension;
+    /* D rows of inputDim frequencies */
+    final double[][] omega;
+    final double[] phase;
+    final double scale;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param inputDim number of input features
+     * @param dimension number of random features D
+     * @param gamma gamma of the approximated RBF kernel
+     * @param seed random seed
+     */
+    FourierFeatures(int inputDim, int dimension, double gamma, long seed) {
+        this.inputDim = inputDim;
+        this.dimension = dimension;
+        this.omega = new double[dimension][inputDim];
+        this.phase = new double[dimension];
+        this.scale = Math.sqrt(2.0d / dimension);
+        Random random = new Random(seed);
+        double sigma = Math.sqrt(2.0d * gamma);
+        for (int k = 0; k < dimension; k++) {
+            for (int j = 0; j < inputDim; j++) {
+                this.omega[k][j] = random.nextGaussian() * sigma;
+            }
+            this.phase[k] = random.nextDouble() * 2 * Math.PI;
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @param x a dense sample of inputDim values
+     * @param z receives the D random features of x
+     */
+    void transform(double[] x, double[] z) {
+        for (int k = 0; k < this.dimension; k++) {
+            double[] w = this.omega[k];
+            double sum = this.phase[k];
+            for (int j = 0; j < this.inputDim; j++) {
+                sum += w[j] * x[j];
+            }
+            z[k] = this.scale * Math.cos(sum);
+        }
+    }
+
+    /**
+     * map every row of a matrix to its random features
+     * the features are materialized when they fit in a quarter of the free heap and in one
+     * array, otherwise they are recomputed from x whenever a row is read
+     * @param x samples
+     * @return an x.rows() by D matrix
+     */
+    SampleMatrix transform(SampleMatrix x) {
+        int n = x.rows();
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long size = (long) n * this.dimension;
+        if (8 * size > free / 4 || size > Integer.MAX_VALUE) {
+            return new LazyFeatures(x);
+        }
+        double[] values = new double[(int) size];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int offset = i * this.dimension;
+            for (int k = 0; k < this.dimension; k++) {
+                values[offset + k] = feature(x, i, k);
+            }
+        });
+        return new DenseMatrix(n, this.dimension, values);
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private double feature(SampleMatrix x, int i, int k) {
+        return this.scale * Math.cos(x.dot(i, this.omega[k]) + this.phase[k]);
+    }
+
+    //~ Inner classes ----------------------------------------------------------
+
+    /**
+     * random features computed on demand, keeping only the last row read
+     * not thread-safe
+     */
+    private final class LazyFeatures implements SampleMatrix {
+        private final SampleMatrix x;
+        private final double[] row = new double[dimension];
+        private final double[] other = new double[dimension];
+        private int current = -1;
+
+        LazyFeatures(SampleMatrix x) {
+            this.x = x;
+        }
+
+        private double[] load(int i) {
+            if (this.current != i) {
+                for (int k = 0; k < dimension; k++) {
+                    this.row[k] = feature(this.x, i, k);
+                }
+                this.current = i;
+            }
+            return this.row;
+        }
+
+        @Override
+        public int rows() {
+            return this.x.rows();
+        }
+
+        @Override
+        public int cols() {
+            return dimension;
+        }
+
+        @Override
+        public double dot(int i, int j) {
+            for (int k = 0; k < dimension; k++) {
+                this.other[k] = feature(this.x, j, k);
+            }
+            return dot(i, this.other);
+        }
+
+        @Override
+        public double dot(int i, double[] w) {
+            double[] z = load(i);
+            double sum = 0.0d;
+            for (int k = 0; k < dimension; k++) {
+                sum += z[k] * w[k];
+            }
+            return sum;
+        }
+
+        @Override
+        public double squaredNorm(int i) {
+            return dot(i, load(i));
+        }
+
+        @Override
+        public void axpy(int i, double a, double[] w) {
+            double[] z = load(i);
+            for (int k = 0; k < dimension; k++) {
+                w[k] += a * z[k];
+            }
+        }
+
+        @Override
+        public void copyRow(int i, double[] out) {
+            System.arraycopy(load(i), 0, out, 0, dimension);
+        }
+
+        @Override
+        public svm_node[] toNodes(int i) {
+            double[] z = load(i);
+            svm_node[] nodes = new svm_node[dimension];
+            for (int k = 0; k < dimension; k++) {
+                nodes[k] = new svm_node();
+                nodes[k].index = k + 1;
+                nodes[k].value = z[k];
+            }
+            return nodes;
+        }
+    }
+}
+
+// End FourierFeatures.java
@@ -0,0 +1,61 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * an RBF regression model approximated by random Fourier features,
+ * predicting in O(D * d) regardless of the number of training samples
+ */
+public final class FourierModel implements Regressor {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long serialVersionUID = -4474311259067964363L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final FourierFeatures features;
+    private final double[] weights;
+    private final double bias;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * the scale of the feature map is folded into the weights
+     * @param features the random feature map
+     * @param solution weights of the D features followed by the bias
+     */
+    FourierModel(FourierFeatures features, double[] solution) {
+        assert solution.length == features.dimension + 1;
+        this.features = features;
+        this.weights = Arrays.copyOf(solution, features.dimension);
+        for (int k = 0; k < this.weights.length; k++) {
+            this.weights[k] *= features.scale;
+        }
+        this.bias = solution[features.dimension];
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    @Override
+    public double predict(double[] sample) {
+        double sum = this.bias;
+        for (int k = 0; k < this.features.dimension; k++) {
+            double[] w = this.features.omega[k];
+            double arg = this.features.phase[k];
+            for (int j = 0; j < this.features.inputDim; j++) {
+                arg += w[j] * sample[j];
+            }
+            sum += this.weights[k] * Math.cos(arg);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of random features D
+     */
+    public int getDimension() {
+        return this.features.dimension;
+    }
+}
+
+// End FourierModel.java
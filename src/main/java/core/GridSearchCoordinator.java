@@ -0,0 +1,378 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_parameter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * hands cross validation tasks of a grid search out to {@link GridSearchWorker}s
+ * running in other JVMs, so libsvm's static state and the heap of one JVM do not
+ * limit the search
+ * workers connect to the coordinator's socket and are sent one task at a time;
+ * a task whose worker fails or disconnects is queued again for another worker,
+ * up to {@link #setMaxAttempts} times
+ */
+final class GridSearchCoordinator implements Closeable {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long POLL_MILLIS = 100L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final ServerSocket server;
+    private final List<Process> processes = new ArrayList<>();
+    private final BlockingQueue<Job> pending = new LinkedBlockingQueue<>();
+    /* number of connected workers */
+    private final AtomicInteger active = new AtomicInteger(0);
+    private volatile boolean closed = false;
+    private Thread acceptor = null;
+    private int maxAttempts = 3;
+    private int taskTimeout = 0;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * listen on an ephemeral port of the loopback interface
+     * @throws IOException if the socket cannot be opened
+     */
+    GridSearchCoordinator() throws IOException {
+        this(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()));
+    }
+
+    /**
+     * @param server socket the workers connect to, e.g. bound to a public interface
+     *               for workers on other nodes
+     */
+    GridSearchCoordinator(ServerSocket server) {
+        this.server = server;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * start worker JVMs on this machine with the classpath of this one
+     * @param workers number of worker processes
+     * @param jvmArgs extra JVM arguments, e.g. -Xmx
+     * @throws IOException if a process cannot be started
+     */
+    void launch(int workers, String... jvmArgs) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for (int w = 0; w < workers; w++) {
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.addAll(Arrays.asList(jvmArgs));
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(GridSearchWorker.class.getName());
+            command.add(this.server.getInetAddress().getHostAddress());
+            command.add(String.valueOf(this.server.getLocalPort()));
+            this.processes.add(new ProcessBuilder(command).inheritIO().start());
+        }
+    }
+
+    /**
+     * run tasks on whichever workers are connected or connect while running
+     * workers stay connected between runs until the coordinator is closed
+     * @param tasks tasks to run, their ids must be 0, 1, ... in order
+     * @return the squared validation error of each task, NaN for tasks that failed every attempt
+     */
+    double[] run(List<Task> tasks) {
+        return run(tasks, null);
+    }
+
+    /**
+     * @param tasks tasks to run, their ids must be 0, 1, ... in order
+     * @param listener told of each successful task as soon as its result arrives, from the
+     *                 thread serving its worker, e.g. to checkpoint it
+     * @return the squared validation error of each task, NaN for tasks that failed every attempt
+     */
+    double[] run(List<Task> tasks, @Nullable ObjDoubleConsumer<Task> listener) {
+        for (int t = 0; t < tasks.size(); t++) {
+            Preconditions.checkArgument(tasks.get(t).id == t, "task ids must follow their order");
+        }
+        long startTime = System.currentTimeMillis();
+        startAcceptor();
+        Batch batch = new Batch(tasks.size(), listener);
+        for (Task task : tasks) {
+            this.pending.add(new Job(task, batch));
+        }
+        try {
+            synchronized (batch) {
+                while (batch.remaining > 0) {
+                    batch.wait(POLL_MILLIS);
+                    if (batch.remaining > 0 && !this.processes.isEmpty() && this.active.get() == 0
+                            && this.processes.stream().noneMatch(Process::isAlive)) {
+                        System.out.println("Grid search failed! all workers are gone");
+                        this.pending.clear();
+                        for (int t = 0; t < tasks.size(); t++) {
+                            if (!batch.finished[t]) {
+                                batch.losses[t] = Double.NaN;
+                            }
+                        }
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (SVMLib.DEBUG) {
+            System.out.println("Grid search tasks done in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+        }
+        return batch.losses;
+    }
+
+    /**
+     * shut the workers down and stop listening
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.server.close();
+        for (Process process : this.processes) {
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private synchronized void startAcceptor() {
+        if (this.acceptor != null) {
+            return;
+        }
+        this.acceptor = new Thread(() -> {
+            while (!this.closed) {
+                Socket socket;
+                try {
+                    socket = this.server.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                this.active.incrementAndGet();
+                Thread handler = new Thread(() -> {
+                    try {
+                        serve(socket);
+                    } finally {
+                        this.active.decrementAndGet();
+                    }
+                }, "grid-search-" + socket.getPort());
+                handler.setDaemon(true);
+                handler.start();
+            }
+        }, "grid-search-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * send tasks to one worker until the coordinator is closed or the worker fails
+     */
+    private void serve(Socket socket) {
+        Job job = null;
+        try {
+            socket.setSoTimeout(this.taskTimeout);
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            while (!this.closed) {
+                job = this.pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (job == null) {
+                    continue;
+                }
+                out.writeObject(job.task);
+                out.flush();
+                out.reset();
+                Result result = (Result) in.readObject();
+                if (result.error == null) {
+                    if (job.batch.listener != null) {
+                        job.batch.listener.accept(job.task, result.loss);
+                    }
+                    job.batch.finish(job.task.id, result.loss);
+                } else {
+                    System.out.println("task " + job.task.id + " failed! " + result.error);
+                    requeue(job);
+                }
+                job = null;
+            }
+            // a null task tells the worker to exit
+            out.writeObject(null);
+            out.flush();
+        } catch (IOException | ClassNotFoundException e) {
+            if (job != null) {
+                if (!(e instanceof SocketException || e instanceof EOFException)) {
+                    e.printStackTrace();
+                }
+                System.out.println("worker " + socket.getRemoteSocketAddress() + " failed on task " + job.task.id);
+                requeue(job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+
+    private void requeue(Job job) {
+        if (job.batch.fail(job.task.id, this.maxAttempts)) {
+            this.pending.add(job);
+        } else {
+            System.out.println("task " + job.task.id + " given up after " + this.maxAttempts + " attempts");
+        }
+    }
+
+    //~ Getter/setter methods --------------------------------------------------
+
+    /**
+     * @return the port the workers connect to
+     */
+    int getPort() {
+        return this.server.getLocalPort();
+    }
+
+    /**
+     * @param maxAttempts how often a task is tried before it counts as failed
+     * @return this
+     */
+    GridSearchCoordinator setMaxAttempts(int maxAttempts) {
+        Preconditions.checkArgument(maxAttempts > 0, "maxAttempts <= 0");
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * @param taskTimeout milliseconds to wait for a result before the worker counts as failed, 0 for no limit
+     * @return this
+     */
+    GridSearchCoordinator setTaskTimeout(int taskTimeout) {
+        Preconditions.checkArgument(taskTimeout >= 0, "taskTimeout < 0");
+        this.taskTimeout = taskTimeout;
+        return this;
+    }
+
+    //~ Inner classes ----------------------------------------------------------
+
+    /**
+     * cross validate one (C, gamma) pair on one fold
+     */
+    static final class Task implements Serializable {
+        private static final long serialVersionUID = -5586451353018636238L;
+
+        final int id;
+        final String snapshot;
+        final svm_parameter param;
+        final int fold;
+        final int folds;
+
+        /**
+         * @param id position of the task in the list passed to {@link #run}
+         * @param snapshot uncompressed dense snapshot file of the training data, readable by the workers
+         * @param param parameter to train with
+         * @param fold the fold to validate on
+         * @param folds number of contiguous folds
+         */
+        Task(int id, String snapshot, svm_parameter param, int fold, int folds) {
+            this.id = id;
+            this.snapshot = snapshot;
+            this.param = param;
+            this.fold = fold;
+            this.folds = folds;
+        }
+    }
+
+    /**
+     * the results of one {@link #run}
+     */
+    private static final class Batch {
+        final double[] losses;
+        final boolean[] finished;
+        final int[] attempts;
+        final ObjDoubleConsumer<Task> listener;
+        int remaining;
+
+        Batch(int size, @Nullable ObjDoubleConsumer<Task> listener) {
+            this.listener = listener;
+            this.losses = new double[size];
+            this.finished = new boolean[size];
+            this.attempts = new int[size];
+            this.remaining = size;
+        }
+
+        synchronized void finish(int id, double loss) {
+            this.losses[id] = loss;
+            this.finished[id] = true;
+            if (--this.remaining == 0) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * @return whether the task should be tried again
+         */
+        synchronized boolean fail(int id, int maxAttempts) {
+            if (++this.attempts[id] < maxAttempts) {
+                return true;
+            }
+            finish(id, Double.NaN);
+            return false;
+        }
+    }
+
+    /**
+     * a queued task with the run it belongs to
+     */
+    private static final class Job {
+        final Task task;
+        final Batch batch;
+
+        Job(Task task, Batch batch) {
+            this.task = task;
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * the outcome of a task
+     */
+    static final class Result implements Serializable {
+        private static final long serialVersionUID = -3264957086951337655L;
+
+        final int id;
+        /* sum of squared errors on the validation fold */
+        final double loss;
+        /* null if the task succeeded */
+        final String error;
+
+        Result(int id, double loss, String error) {
+            this.id = id;
+            this.loss = loss;
+            this.error = error;
+        }
+    }
+}
+
+// End GridSearchCoordinator.java
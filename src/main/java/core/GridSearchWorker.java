@@ -0,0 +1,116 @@
+package core;
+
+import libsvm.*;
+
+import java.io.*;
+import java.net.Socket;
+
+/**
+ * runs the cross validation tasks of a {@link GridSearchCoordinator} in its own JVM
+ * the training data is memory-mapped from the snapshot named by the tasks, so
+ * workers on one machine share a single copy of it
+ * usage: java core.GridSearchWorker host port
+ */
+public final class GridSearchWorker {
+    //~ Instance fields --------------------------------------------------------
+
+    private String snapshotFile = null;
+    private DataSnapshot snapshot = null;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private GridSearchWorker() {}
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("usage: java core.GridSearchWorker host port");
+            System.exit(1);
+        }
+        svm.svm_set_print_string_function(LibConfig.getInstance().svm_print_null);
+        run(args[0], Integer.parseInt(args[1]));
+    }
+
+    /**
+     * connect to a coordinator and run its tasks until told to stop
+     * @param host coordinator host
+     * @param port coordinator port
+     */
+    static void run(String host, int port) {
+        GridSearchWorker worker = new GridSearchWorker();
+        try (Socket socket = new Socket(host, port)) {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            GridSearchCoordinator.Task task;
+            while ((task = (GridSearchCoordinator.Task) in.readObject()) != null) {
+                GridSearchCoordinator.Result result;
+                try {
+                    result = new GridSearchCoordinator.Result(task.id, worker.evaluate(task), null);
+                } catch (IOException | RuntimeException e) {
+                    result = new GridSearchCoordinator.Result(task.id, Double.NaN, e.toString());
+                }
+                out.writeObject(result);
+                out.flush();
+                out.reset();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            System.out.println("Grid search worker failed!");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * train on every fold but one and validate on that one, like
+     * SVMLib's cross validation does
+     * epsilon-SVR is trained by {@link SMOSolver} straight on the mapped samples,
+     * other types by libsvm
+     * @param task the task to run
+     * @return the sum of squared errors on the validation fold
+     * @throws IOException if the snapshot cannot be read
+     */
+    double evaluate(GridSearchCoordinator.Task task) throws IOException {
+        if (!task.snapshot.equals(this.snapshotFile)) {
+            this.snapshot = DataSnapshot.map(task.snapshot);
+            this.snapshotFile = task.snapshot;
+        }
+        SampleMatrix x = this.snapshot.matrix;
+        double[] y = this.snapshot.labels;
+        int vsLen = x.rows() / task.folds;
+        int vsStart = task.fold * vsLen;
+        int vsEnd = (task.fold + 1) * vsLen;
+        RowView train = RowView.without(x, vsStart, vsEnd);
+        double[] trainLabels = new double[train.rows()];
+        for (int i = 0; i < train.rows(); i++) {
+            trainLabels[i] = y[train.baseRow(i)];
+        }
+
+        svm_parameter param = (svm_parameter) task.param.clone();
+        if (param.cache_size <= 0) {
+            param.cache_size = LibConfig.getInstance().adaptiveCacheSize(train.rows());
+        }
+        svm_model model;
+        if (param.svm_type == svm_parameter.EPSILON_SVR) {
+            model = new SMOSolver(new KernelMatrix(train, param), trainLabels, param).solve(train);
+        } else {
+            svm_problem problem = new svm_problem();
+            problem.l = train.rows();
+            problem.x = new svm_node[problem.l][];
+            for (int i = 0; i < problem.l; i++) {
+                problem.x[i] = train.toNodes(i);
+            }
+            problem.y = trainLabels;
+            model = svm.svm_train(problem, param);
+        }
+
+        double diff = 0.0d;
+        for (int j = vsStart; j < vsEnd; j++) {
+            double predictLabel = svm.svm_predict(model, x.toNodes(j));
+            diff += (predictLabel - y[j]) * (predictLabel - y[j]);
+        }
+        return diff;
+    }
+}
+
+// End GridSearchWorker.java
@@ -0,0 +1,311 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_parameter;
+
+import java.util.stream.IntStream;
+
+/**
+ * kernel values between the rows of a {@link SampleMatrix}
+ * rows of the kernel matrix are computed in parallel and kept in an LRU cache,
+ * as floats in single precision, which fits twice as many rows into the cache
+ * a shared matrix can be read by several solvers at once, e.g. one per target
+ * trained on the same samples, see {@link #share()}, and the cache of a sliding window
+ * of samples can be carried over to the next window, see {@link #slide}
+ */
+final class KernelMatrix {
+    //~ Static fields and initializer ------------------------------------------
+
+    /**
+     * rows with fewer multiply-adds than this are computed on the calling thread
+     */
+    private static final long PARALLEL_THRESHOLD = 1L << 15;
+
+    private static final int BLOCK_SIZE = 1024;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final SampleMatrix x;
+    private final svm_parameter param;
+    private final int l;
+
+    /* cached rows, indexed by sample; null when not cached; only one of the two is used */
+    private final double[][] rows;
+    private final float[][] floatRows;
+    /* the columns of each cached row computed so far, rows carried over by slide miss the new ones */
+    private final int[] filled;
+    /* LRU list over the cached rows, slot l is the sentinel */
+    private final int[] prev;
+    private final int[] next;
+    private final int capacity;
+    private int size = 0;
+    /* evicted rows may still be read by another solver, so their arrays are not reused */
+    private boolean shared = false;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param x training samples
+     * @param param kernel parameters, cache_size (in MB) bounds the cache
+     */
+    KernelMatrix(SampleMatrix x, svm_parameter param) {
+        this(x, param, LibConfig.Precision.DOUBLE);
+    }
+
+    /**
+     * @param x training samples
+     * @param param kernel parameters, cache_size (in MB) bounds the cache
+     * @param precision precision of the cached rows, read them with {@link #row} for DOUBLE
+     *                  and {@link #floatRow} for SINGLE
+     */
+    KernelMatrix(SampleMatrix x, svm_parameter param, LibConfig.Precision precision) {
+        Preconditions.checkArgument(param.kernel_type != svm_parameter.PRECOMPUTED,
+                "precomputed kernel is not supported");
+        this.x = x;
+        this.param = (svm_parameter) param.clone();
+        this.l = x.rows();
+
+        long bytes = (long) (param.cache_size * (1 << 20));
+        boolean single = precision == LibConfig.Precision.SINGLE;
+        long rowCapacity = bytes / ((single ? 4L : 8L) * Math.max(this.l, 1));
+        // the solver holds two rows at a time
+        this.capacity = (int) Math.max(2, Math.min(this.l, rowCapacity));
+        this.rows = single ? null : new double[this.l][];
+        this.floatRows = single ? new float[this.l][] : null;
+        this.filled = new int[this.l];
+        this.prev = new int[this.l + 1];
+        this.next = new int[this.l + 1];
+        this.prev[this.l] = this.l;
+        this.next[this.l] = this.l;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @param i row index
+     * @param j column index
+     * @return K(x_i, x_j)
+     */
+    double eval(int i, int j) {
+        return eval(this.param, this.x.dot(i, j), this.x.squaredNorm(i), this.x.squaredNorm(j));
+    }
+
+    /**
+     * evaluate a kernel from the inner product of its arguments
+     * @param param kernel parameters
+     * @param dot x . y
+     * @param xx x . x, only read by the RBF kernel
+     * @param yy y . y, only read by the RBF kernel
+     * @return K(x, y)
+     */
+    static double eval(svm_parameter param, double dot, double xx, double yy) {
+        switch (param.kernel_type) {
+            case svm_parameter.LINEAR:
+                return dot;
+            case svm_parameter.POLY:
+                return powi(param.gamma * dot + param.coef0, param.degree);
+            case svm_parameter.RBF:
+                return Math.exp(-param.gamma * (xx + yy - 2 * dot));
+            case svm_parameter.SIGMOID:
+                return Math.tanh(param.gamma * dot + param.coef0);
+            default:
+                throw new IllegalStateException("unknown kernel type " + param.kernel_type);
+        }
+    }
+
+    /**
+     * get a full row of the kernel matrix
+     * the returned array is owned by the cache, do not modify it
+     * @param i row index
+     * @return K(x_i, x_j) for every j
+     */
+    synchronized double[] row(int i) {
+        Preconditions.checkState(this.rows != null, "kernel rows are cached in single precision");
+        double[] row = this.rows[i];
+        if (row != null) {
+            unlink(i);
+            linkFirst(i);
+            if (this.filled[i] < this.l) {
+                double[] out = row;
+                fill(i, this.filled[i], (j, value) -> out[j] = value);
+                this.filled[i] = this.l;
+            }
+            return row;
+        }
+        int lru = evict();
+        row = lru < 0 || this.shared ? new double[this.l] : this.rows[lru];
+        if (lru >= 0) {
+            this.rows[lru] = null;
+        }
+        double[] out = row;
+        fill(i, 0, (j, value) -> out[j] = value);
+        this.filled[i] = this.l;
+        this.rows[i] = row;
+        linkFirst(i);
+        this.size++;
+        return row;
+    }
+
+    /**
+     * get a full row of a kernel matrix cached in single precision
+     * the returned array is owned by the cache, do not modify it
+     * @param i row index
+     * @return K(x_i, x_j) for every j, rounded to float
+     */
+    synchronized float[] floatRow(int i) {
+        Preconditions.checkState(this.floatRows != null, "kernel rows are cached in double precision");
+        float[] row = this.floatRows[i];
+        if (row != null) {
+            unlink(i);
+            linkFirst(i);
+            if (this.filled[i] < this.l) {
+                float[] out = row;
+                fill(i, this.filled[i], (j, value) -> out[j] = (float) value);
+                this.filled[i] = this.l;
+            }
+            return row;
+        }
+        int lru = evict();
+        row = lru < 0 || this.shared ? new float[this.l] : this.floatRows[lru];
+        if (lru >= 0) {
+            this.floatRows[lru] = null;
+        }
+        float[] out = row;
+        fill(i, 0, (j, value) -> out[j] = (float) value);
+        this.filled[i] = this.l;
+        this.floatRows[i] = row;
+        linkFirst(i);
+        this.size++;
+        return row;
+    }
+
+    /**
+     * let several threads read rows at once, rows handed out stay valid after eviction
+     * @return this
+     */
+    synchronized KernelMatrix share() {
+        this.shared = true;
+        return this;
+    }
+
+    /**
+     * the kernel matrix of a window of samples moved forward, whose samples are the ones of
+     * this matrix from the expired-th on followed by new samples
+     * the most recently used rows of the remaining samples are carried over, and only their
+     * columns of the new samples are computed when they are read
+     * @param x the remaining samples of this matrix in the same order, then the new samples
+     * @param expired the number of leading samples of this matrix left out of x
+     * @return the kernel matrix of x
+     */
+    synchronized KernelMatrix slide(SampleMatrix x, int expired) {
+        Preconditions.checkArgument(expired >= 0 && expired <= this.l && x.rows() >= this.l - expired);
+        KernelMatrix next = new KernelMatrix(x, this.param,
+                isSingle() ? LibConfig.Precision.SINGLE : LibConfig.Precision.DOUBLE);
+        int[] carried = new int[next.capacity];
+        int count = 0;
+        for (int i = this.next[this.l]; i != this.l && count < carried.length; i = this.next[i]) {
+            if (i >= expired && this.filled[i] > expired) {
+                carried[count++] = i;
+            }
+        }
+        // least recently used first, so that the list keeps its order
+        for (int c = count - 1; c >= 0; c--) {
+            int i = carried[c], k = i - expired, length = this.filled[i] - expired;
+            if (isSingle()) {
+                next.floatRows[k] = new float[next.l];
+                System.arraycopy(this.floatRows[i], expired, next.floatRows[k], 0, length);
+            } else {
+                next.rows[k] = new double[next.l];
+                System.arraycopy(this.rows[i], expired, next.rows[k], 0, length);
+            }
+            next.filled[k] = length;
+            next.linkFirst(k);
+            next.size++;
+        }
+        return next;
+    }
+
+    /**
+     * @return whether the rows are cached as floats
+     */
+    boolean isSingle() {
+        return this.floatRows != null;
+    }
+
+    /**
+     * @return the number of samples
+     */
+    int size() {
+        return this.l;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * make room for one more row
+     * @return the evicted row, whose array can be reused, or -1 if the cache was not full
+     */
+    private int evict() {
+        if (this.size < this.capacity) {
+            return -1;
+        }
+        int lru = this.prev[this.l];
+        unlink(lru);
+        this.size--;
+        return lru;
+    }
+
+    /**
+     * compute the columns of row i from the given one on
+     */
+    private void fill(int i, int from, RowSink row) {
+        if ((long) (this.l - from) * this.x.cols() < PARALLEL_THRESHOLD) {
+            for (int j = from; j < this.l; j++) {
+                row.set(j, eval(i, j));
+            }
+            return;
+        }
+        int blocks = (this.l - from + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int end = Math.min(this.l, from + (b + 1) * BLOCK_SIZE);
+            for (int j = from + b * BLOCK_SIZE; j < end; j++) {
+                row.set(j, eval(i, j));
+            }
+        });
+    }
+
+    private void unlink(int i) {
+        this.next[this.prev[i]] = this.next[i];
+        this.prev[this.next[i]] = this.prev[i];
+    }
+
+    private void linkFirst(int i) {
+        this.next[i] = this.next[this.l];
+        this.prev[i] = this.l;
+        this.prev[this.next[this.l]] = i;
+        this.next[this.l] = i;
+    }
+
+    private static double powi(double base, int times) {
+        double tmp = base, ret = 1.0d;
+        for (int t = times; t > 0; t /= 2) {
+            if (t % 2 == 1) {
+                ret *= tmp;
+            }
+            tmp = tmp * tmp;
+        }
+        return ret;
+    }
+
+    //~ Inner classes ----------------------------------------------------------
+
+    /**
+     * receives the values of a row being filled
+     */
+    @FunctionalInterface
+    private interface RowSink {
+        void set(int j, double value);
+    }
+}
+
+// End KernelMatrix.java
@@ -0,0 +1,173 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+import java.util.List;
+
+/**
+ * a regression svm_model compiled for prediction: the support vectors are copied into
+ * one flat row-major array with their squared norms, instead of libsvm's svm_node objects
+ * in single precision the support vectors are stored as floats, halving the memory read
+ * per prediction, while the inner products and the kernel sum are accumulated in double
+ */
+public final class KernelModel implements Regressor {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long serialVersionUID = 7173350845218360642L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final svm_parameter param;
+    private final int l;
+    private final int d;
+    /* support vectors, only one of the two is used */
+    private final double[] values;
+    private final float[] floatValues;
+    private final double[] norms;
+    private final double[] coef;
+    private final double bias;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private KernelModel(svm_parameter param, int d, double[] values, float[] floatValues,
+                        double[] norms, double[] coef, double bias) {
+        this.param = param;
+        this.l = coef.length;
+        this.d = d;
+        this.values = values;
+        this.floatValues = floatValues;
+        this.norms = norms;
+        this.coef = coef;
+        this.bias = bias;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @param model an epsilon-SVR or nu-SVR model
+     * @param precision precision to store the support vectors in
+     * @return the compiled model
+     */
+    public static KernelModel of(svm_model model, LibConfig.Precision precision) {
+        Preconditions.checkArgument(model.param.svm_type == svm_parameter.EPSILON_SVR
+                || model.param.svm_type == svm_parameter.NU_SVR, "not a regression model");
+        Preconditions.checkArgument(model.param.kernel_type != svm_parameter.PRECOMPUTED,
+                "precomputed kernel is not supported");
+        int d = 0;
+        for (int i = 0; i < model.l; i++) {
+            for (svm_node node : model.SV[i]) {
+                d = Math.max(d, node.index);
+            }
+        }
+        boolean single = precision == LibConfig.Precision.SINGLE;
+        double[] values = single ? null : new double[model.l * d];
+        float[] floatValues = single ? new float[model.l * d] : null;
+        double[] norms = new double[model.l];
+        for (int i = 0; i < model.l; i++) {
+            double norm = 0.0d;
+            for (svm_node node : model.SV[i]) {
+                if (node.index <= 0) {
+                    continue;
+                }
+                int k = i * d + node.index - 1;
+                double value;
+                if (single) {
+                    floatValues[k] = (float) node.value;
+                    value = floatValues[k];
+                } else {
+                    values[k] = node.value;
+                    value = node.value;
+                }
+                norm += value * value;
+            }
+            norms[i] = norm;
+        }
+        double[] coef = new double[model.l];
+        System.arraycopy(model.sv_coef[0], 0, coef, 0, model.l);
+        return new KernelModel((svm_parameter) model.param.clone(), d, values, floatValues,
+                norms, coef, -model.rho[0]);
+    }
+
+    /**
+     * fold models with the same kernel into one whose prediction is the mean of theirs,
+     * so they are evaluated in a single pass over all support vectors
+     * @param models models compiled in the same precision
+     * @return the averaged model
+     */
+    static KernelModel average(List<KernelModel> models) {
+        Preconditions.checkArgument(!models.isEmpty(), "no models to average");
+        KernelModel first = models.get(0);
+        boolean single = first.floatValues != null;
+        int l = 0, d = 0;
+        double bias = 0.0d;
+        for (KernelModel model : models) {
+            Preconditions.checkArgument(model.param.kernel_type == first.param.kernel_type
+                    && model.param.gamma == first.param.gamma && model.param.degree == first.param.degree
+                    && model.param.coef0 == first.param.coef0, "kernels differ");
+            Preconditions.checkArgument((model.floatValues != null) == single, "precisions differ");
+            l += model.l;
+            d = Math.max(d, model.d);
+            bias += model.bias / models.size();
+        }
+        double[] values = single ? null : new double[l * d];
+        float[] floatValues = single ? new float[l * d] : null;
+        double[] norms = new double[l];
+        double[] coef = new double[l];
+        int i = 0;
+        for (KernelModel model : models) {
+            for (int j = 0; j < model.l; j++, i++) {
+                if (single) {
+                    System.arraycopy(model.floatValues, j * model.d, floatValues, i * d, model.d);
+                } else {
+                    System.arraycopy(model.values, j * model.d, values, i * d, model.d);
+                }
+                norms[i] = model.norms[j];
+                coef[i] = model.coef[j] / models.size();
+            }
+        }
+        return new KernelModel(first.param, d, values, floatValues, norms, coef, bias);
+    }
+
+    @Override
+    public double predict(double[] sample) {
+        int d = Math.min(this.d, sample.length);
+        double xx = 0.0d;
+        for (double value : sample) {
+            xx += value * value;
+        }
+        double sum = this.bias;
+        for (int i = 0, offset = 0; i < this.l; i++, offset += this.d) {
+            double dot = 0.0d;
+            if (this.floatValues != null) {
+                for (int k = 0; k < d; k++) {
+                    dot += this.floatValues[offset + k] * sample[k];
+                }
+            } else {
+                for (int k = 0; k < d; k++) {
+                    dot += this.values[offset + k] * sample[k];
+                }
+            }
+            sum += this.coef[i] * KernelMatrix.eval(this.param, dot, xx, this.norms[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of support vectors
+     */
+    public int getSupportVectorNum() {
+        return this.l;
+    }
+
+    /**
+     * @return the bytes taken by the support vectors
+     */
+    public long getSupportVectorBytes() {
+        return this.floatValues != null ? 4L * this.floatValues.length : 8L * this.values.length;
+    }
+}
+
+// End KernelModel.java
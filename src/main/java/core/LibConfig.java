@@ -15,6 +15,36 @@ public class LibConfig {
 
     public enum Type { CLASSIFICATION, REGRESSION }
 
+    /**
+     * LIBSVM trains with libsvm's svm_train,
+     * SMO trains epsilon-SVR with the in-project {@link SMOSolver},
+     * LINEAR trains linear-kernel epsilon-SVR with the dual coordinate descent {@link LinearSVR}
+     */
+    public enum Solver { LIBSVM, SMO, LINEAR }
+
+    /**
+     * how the Nystrom landmarks are sampled from the training data
+     */
+    public enum Landmarks { UNIFORM, KMEANS_PP, LEVERAGE }
+
+    /**
+     * file formats for exporting datasets, see {@link DataExporter}
+     */
+    public enum Format { LIBSVM, CSV, BINARY }
+
+    /**
+     * how dense samples, cached kernel rows and compiled support vectors are stored,
+     * SINGLE halves their memory; sums are accumulated in double either way
+     */
+    public enum Precision { DOUBLE, SINGLE }
+
+    /**
+     * how {@link EnsembleSVR} splits the training data, RANDOM subsets are averaged,
+     * CLUSTERED subsets are k-means clusters and each sample is predicted by the model
+     * of its nearest cluster
+     */
+    public enum Partition { RANDOM, CLUSTERED }
+
     //~ Static fields and initializer ------------------------------------------
 
     private static LibConfig instance = null;
@@ -72,6 +102,7 @@ public class LibConfig {
         setProperty("modelFile", "./results/model");
         setProperty("trainData", "./datasets/train.csv");
         setProperty("testData", "./datasets/test.csv");
+        setProperty("kernelType", "rbf");
     }
 
     /**
@@ -88,14 +119,53 @@ public class LibConfig {
             default:
                 param.svm_type = svm_parameter.C_SVC;
         }
-        param.kernel_type = svm_parameter.RBF;
+        switch (this.properties.getProperty("kernelType", "rbf").toLowerCase()) {
+            case "linear":
+                param.kernel_type = svm_parameter.LINEAR;
+                break;
+            case "poly":
+                param.kernel_type = svm_parameter.POLY;
+                param.degree = 3;
+                break;
+            case "sigmoid":
+                param.kernel_type = svm_parameter.SIGMOID;
+                break;
+            case "rbf":
+            default:
+                param.kernel_type = svm_parameter.RBF;
+        }
         param.C = 1;
         param.eps = 0.001;
         param.p = 0.1;
-        param.cache_size = 100;
+        // chosen per problem by adaptiveCacheSize unless set explicitly
+        param.cache_size = 0;
         return param;
     }
 
+    /**
+     * choose a kernel cache size from the free heap and the problem size,
+     * large enough to hold the whole kernel matrix if the heap allows it
+     * the share of the free heap is read from the cacheHeapRatio property
+     * @param l number of training samples
+     * @return cache size in MB
+     */
+    double adaptiveCacheSize(int l) {
+        return adaptiveCacheSize(l, Precision.DOUBLE);
+    }
+
+    /**
+     * @param l number of training samples
+     * @param precision precision of the cached kernel rows
+     * @return cache size in MB
+     */
+    double adaptiveCacheSize(int l, Precision precision) {
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        double ratio = Double.parseDouble(this.properties.getProperty("cacheHeapRatio", "0.25"));
+        double fullMatrix = (precision == Precision.SINGLE ? 4.0d : 8.0d) * l * l / (1 << 20);
+        return Math.max(1.0d, Math.min(fullMatrix, free * ratio / (1 << 20)));
+    }
+
     /**
      * set a property to the property file
      * @param key property key
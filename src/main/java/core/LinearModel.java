@@ -0,0 +1,111 @@
+package core;
+
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+import java.util.Arrays;
+
+/**
+ * a linear regression model f(x) = w . x + b
+ * linear-kernel svm_models collapse into one, so prediction is a single dot product
+ */
+public final class LinearModel implements Regressor {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long serialVersionUID = -4628272216890264486L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final double[] weights;
+    private final double bias;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param weights one weight per feature
+     * @param bias the bias b
+     */
+    LinearModel(double[] weights, double bias) {
+        this.weights = weights;
+        this.bias = bias;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * fold the support vectors of a linear-kernel regression model into
+     * w = sum(coef_i * sv_i) and b = -rho
+     * @param model a linear-kernel epsilon-SVR or nu-SVR model
+     * @return the equivalent linear model
+     */
+    public static LinearModel of(svm_model model) {
+        if (model.param.kernel_type != svm_parameter.LINEAR) {
+            throw new IllegalArgumentException("not a linear-kernel model");
+        }
+        int d = 0;
+        for (int i = 0; i < model.l; i++) {
+            for (svm_node node : model.SV[i]) {
+                d = Math.max(d, node.index);
+            }
+        }
+        double[] weights = new double[d];
+        for (int i = 0; i < model.l; i++) {
+            double coef = model.sv_coef[0][i];
+            for (svm_node node : model.SV[i]) {
+                if (node.index > 0) {
+                    weights[node.index - 1] += coef * node.value;
+                }
+            }
+        }
+        return new LinearModel(weights, -model.rho[0]);
+    }
+
+    @Override
+    public double predict(double[] sample) {
+        double sum = this.bias;
+        int d = Math.min(this.weights.length, sample.length);
+        for (int k = 0; k < d; k++) {
+            sum += this.weights[k] * sample[k];
+        }
+        return sum;
+    }
+
+    /**
+     * express this model as a libsvm model whose only support vector is w
+     * @param param parameter to record in the model, kernel_type is set to LINEAR
+     * @return an equivalent svm_model
+     */
+    public svm_model toSvmModel(svm_parameter param) {
+        svm_model model = new svm_model();
+        model.param = (svm_parameter) param.clone();
+        model.param.kernel_type = svm_parameter.LINEAR;
+        model.nr_class = 2;
+        model.l = 1;
+        model.SV = new svm_node[1][this.weights.length];
+        for (int k = 0; k < this.weights.length; k++) {
+            model.SV[0][k] = new svm_node();
+            model.SV[0][k].index = k + 1;
+            model.SV[0][k].value = this.weights[k];
+        }
+        model.sv_coef = new double[][]{{1.0d}};
+        model.rho = new double[]{-this.bias};
+        return model;
+    }
+
+    /**
+     * @return a copy of the weight vector w
+     */
+    public double[] getWeights() {
+        return Arrays.copyOf(this.weights, this.weights.length);
+    }
+
+    /**
+     * @return the bias b
+     */
+    public double getBias() {
+        return this.bias;
+    }
+}
+
+// End LinearModel.java
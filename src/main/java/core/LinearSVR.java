@@ -0,0 +1,161 @@
+package core;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Random;
+
+/**
+ * linear epsilon-SVR solved by dual coordinate descent,
+ * the L1-loss solver of liblinear (Ho and Lin, 2012)
+ * the bias is learned as the weight of an extra constant feature
+ */
+final class LinearSVR {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final double BIAS = 1.0d;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final double C;
+    private final double p;
+    private double eps = 0.01d;
+    private int maxIter = 1000;
+    /* per-instance multipliers of C, null for all ones */
+    private double[] weights = null;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param C cost of a sample outside the epsilon tube
+     * @param p width of the epsilon tube
+     */
+    LinearSVR(double C, double p) {
+        Preconditions.checkArgument(C > 0, "C <= 0");
+        Preconditions.checkArgument(p >= 0, "p < 0");
+        this.C = C;
+        this.p = p;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * solve the dual problem
+     * @param x training samples
+     * @param y labels of the training samples
+     * @return the weights, with the bias as the last element
+     */
+    double[] solve(SampleMatrix x, double[] y) {
+        long startTime = System.currentTimeMillis();
+        int l = x.rows(), d = x.cols();
+        double[] w = new double[d + 1];
+        double[] beta = new double[l];
+        double[] qd = new double[l];
+        int[] order = new int[l];
+        for (int i = 0; i < l; i++) {
+            qd[i] = x.squaredNorm(i) + BIAS * BIAS;
+            order[i] = i;
+        }
+
+        Random random = new Random(0);
+        double violationInit = -1.0d;
+        int iter = 0;
+        for (; iter < this.maxIter; iter++) {
+            for (int i = l - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+            double violationSum = 0.0d;
+            for (int s = 0; s < l; s++) {
+                int i = order[s];
+                double c = this.weights == null ? this.C : this.C * this.weights[i];
+                double g = x.dot(i, w) + w[d] * BIAS - y[i];
+                double gp = g + this.p, gn = g - this.p;
+                violationSum += violation(beta[i], c, gp, gn);
+
+                double h = qd[i];
+                double delta;
+                if (gp < h * beta[i]) {
+                    delta = -gp / h;
+                } else if (gn > h * beta[i]) {
+                    delta = -gn / h;
+                } else {
+                    delta = -beta[i];
+                }
+                if (Math.abs(delta) < 1.0e-12) {
+                    continue;
+                }
+                double old = beta[i];
+                beta[i] = Math.min(Math.max(beta[i] + delta, -c), c);
+                delta = beta[i] - old;
+                if (delta != 0) {
+                    x.axpy(i, delta, w);
+                    w[d] += delta * BIAS;
+                }
+            }
+            if (violationInit < 0) {
+                violationInit = violationSum;
+            }
+            if (violationSum <= this.eps * violationInit) {
+                break;
+            }
+        }
+        if (iter == this.maxIter) {
+            System.err.println("WARNING: reaching max number of iterations");
+        }
+        if (SVMLib.DEBUG) {
+            System.out.println("Linear SVR finished in " + (System.currentTimeMillis() - startTime) / 1000.0
+                    + " seconds, #iter = " + iter);
+        }
+        return w;
+    }
+
+    /**
+     * @param eps stop when the total violation drops below eps times the first epoch's
+     * @return this
+     */
+    LinearSVR setEps(double eps) {
+        this.eps = eps;
+        return this;
+    }
+
+    /**
+     * @param weights per-instance multipliers of C, e.g. the number of samples a row stands for
+     * @return this
+     */
+    LinearSVR setWeights(double[] weights) {
+        this.weights = weights;
+        return this;
+    }
+
+    /**
+     * @param maxIter maximum number of passes over the samples
+     * @return this
+     */
+    LinearSVR setMaxIter(int maxIter) {
+        this.maxIter = maxIter;
+        return this;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * violation of the optimality condition of one variable
+     */
+    private static double violation(double beta, double c, double gp, double gn) {
+        if (beta == 0) {
+            return gp < 0 ? -gp : (gn > 0 ? gn : 0);
+        } else if (beta >= c) {
+            return Math.max(gp, 0);
+        } else if (beta <= -c) {
+            return Math.max(-gn, 0);
+        } else if (beta > 0) {
+            return Math.abs(gp);
+        } else {
+            return Math.abs(gn);
+        }
+    }
+}
+
+// End LinearSVR.java
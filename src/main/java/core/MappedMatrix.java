@@ -0,0 +1,140 @@
+package core;
+
+import libsvm.svm_node;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * dense row-major samples read straight from a memory-mapped snapshot file,
+ * so processes mapping the same file share one copy in the page cache
+ * the file is mapped in chunks of whole rows, each below 2GB
+ */
+final class MappedMatrix implements SampleMatrix {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long CHUNK_BYTES = 1L << 30;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int rows;
+    private final int cols;
+    private final int chunkRows;
+    private final DoubleBuffer[] chunks;
+    private final double[] squaredNorms;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param channel open snapshot file, may be closed once the matrix is built
+     * @param offset position of the first value in the file
+     * @param rows number of samples
+     * @param cols number of features
+     * @throws IOException if mapping fails
+     */
+    MappedMatrix(FileChannel channel, long offset, int rows, int cols) throws IOException {
+        this.rows = rows;
+        this.cols = cols;
+        this.chunkRows = (int) Math.max(1, CHUNK_BYTES / (8L * Math.max(cols, 1)));
+        this.chunks = new DoubleBuffer[(rows + this.chunkRows - 1) / this.chunkRows];
+        for (int c = 0; c < this.chunks.length; c++) {
+            int n = Math.min(this.chunkRows, rows - c * this.chunkRows);
+            this.chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    offset + 8L * c * this.chunkRows * cols, 8L * n * cols)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        }
+        this.squaredNorms = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            DoubleBuffer chunk = chunk(i);
+            double sum = 0.0d;
+            for (int k = start(i), end = k + cols; k < end; k++) {
+                sum += chunk.get(k) * chunk.get(k);
+            }
+            this.squaredNorms[i] = sum;
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    @Override
+    public int rows() {
+        return this.rows;
+    }
+
+    @Override
+    public int cols() {
+        return this.cols;
+    }
+
+    @Override
+    public double dot(int i, int j) {
+        DoubleBuffer a = chunk(i), b = chunk(j);
+        int p = start(i), q = start(j);
+        double sum = 0.0d;
+        for (int k = 0; k < this.cols; k++) {
+            sum += a.get(p + k) * b.get(q + k);
+        }
+        return sum;
+    }
+
+    @Override
+    public double dot(int i, double[] x) {
+        DoubleBuffer a = chunk(i);
+        int p = start(i);
+        double sum = 0.0d;
+        for (int k = 0; k < this.cols; k++) {
+            sum += a.get(p + k) * x[k];
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredNorm(int i) {
+        return this.squaredNorms[i];
+    }
+
+    @Override
+    public void axpy(int i, double a, double[] w) {
+        DoubleBuffer chunk = chunk(i);
+        int p = start(i);
+        for (int k = 0; k < this.cols; k++) {
+            w[k] += a * chunk.get(p + k);
+        }
+    }
+
+    @Override
+    public void copyRow(int i, double[] out) {
+        DoubleBuffer chunk = chunk(i);
+        int p = start(i);
+        for (int k = 0; k < this.cols; k++) {
+            out[k] = chunk.get(p + k);
+        }
+    }
+
+    @Override
+    public svm_node[] toNodes(int i) {
+        DoubleBuffer chunk = chunk(i);
+        int p = start(i);
+        svm_node[] nodes = new svm_node[this.cols];
+        for (int k = 0; k < this.cols; k++) {
+            nodes[k] = new svm_node();
+            nodes[k].index = k + 1;
+            nodes[k].value = chunk.get(p + k);
+        }
+        return nodes;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private DoubleBuffer chunk(int i) {
+        return this.chunks[i / this.chunkRows];
+    }
+
+    private int start(int i) {
+        return (i % this.chunkRows) * this.cols;
+    }
+}
+
+// End MappedMatrix.java
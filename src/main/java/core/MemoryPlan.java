@@ -0,0 +1,293 @@
+package core;
+
+import com.google.common.base.Preconditions;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * an estimate of the peak heap of a training or tuning job, and the knobs that bound it
+ * the estimate counts the dataset, every training run at once with its kernel cache and
+ * solver arrays, and for tuning the fold copies, the candidate models kept per fold and the
+ * validation kernel block. {@link #admit(long)} lowers the parallelism, then the kernel cache,
+ * then switches the SMO solver to single precision until the estimate fits a budget
+ * the byte counts assume a 64-bit JVM with compressed references
+ */
+final class MemoryPlan {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long MB = 1 << 20;
+
+    /* an svm_node object and its reference */
+    private static final long NODE_BYTES = 28;
+
+    /* an svm_node[] header and its reference in a Vector, or a boxed label */
+    private static final long ROW_BYTES = 20;
+
+    /* solver arrays per training row: alphas, gradients, kernel diagonals and row buffers */
+    private static final long SOLVER_BYTES = 160;
+
+    /* coefficient, support vector reference and index per support vector */
+    private static final long MODEL_BYTES = 16;
+
+    /* validation rows per kernel block, see ValidationKernel */
+    private static final long BLOCK_ROWS = 256;
+
+    /* the smallest kernel cache worth lowering to, in MB */
+    private static final double MIN_CACHE = 1.0d;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int sampleNum;
+    private final int featureNum;
+    private final long nonZeros;
+    private final boolean sparse;
+    private final boolean scaled;
+    private final LibConfig.Solver solver;
+    /* rows of each training run */
+    private final int trainRows;
+    /* models of one fold kept for validation, 0 when nothing is validated */
+    private final int candidates;
+    /* kernel caches alive at once when they are shared, 0 for one per training run */
+    private final int sharedCaches;
+
+    private int threads;
+    private double cacheSize;
+    private LibConfig.Precision precision;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private MemoryPlan(Data data, LibConfig.Solver solver, int trainRows, int candidates, int sharedCaches,
+                       int threads, double cacheSize, LibConfig.Precision precision) {
+        Preconditions.checkArgument(threads > 0, "threads <= 0");
+        this.sampleNum = data.getSampleNum();
+        this.featureNum = data.getFeatureNum();
+        this.nonZeros = data.isSparse() ? data.getNonZeroNum() : (long) this.sampleNum * this.featureNum;
+        this.sparse = data.isSparse();
+        this.scaled = data.isScaled();
+        this.solver = solver;
+        this.trainRows = trainRows;
+        this.candidates = candidates;
+        this.sharedCaches = sharedCaches;
+        this.threads = threads;
+        this.cacheSize = cacheSize;
+        this.precision = precision;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @param cacheSize kernel cache of the training run in MB
+     * @return the plan of one training run on all of data
+     */
+    static MemoryPlan train(Data data, double cacheSize, LibConfig.Solver solver, LibConfig.Precision precision) {
+        return new MemoryPlan(data, solver, data.getSampleNum(), 0, 0, 1, cacheSize, precision);
+    }
+
+    /**
+     * @param candidates C values trained and validated together on each fold
+     * @param folds number of cross validation folds
+     * @param threads grid searches run at once
+     * @return the plan of grid searches by cross validation on data
+     */
+    static MemoryPlan tune(Data data, double cacheSize, LibConfig.Solver solver, LibConfig.Precision precision,
+                           int candidates, int folds, int threads) {
+        return new MemoryPlan(data, solver, data.getSampleNum() - data.getSampleNum() / folds, candidates, 0,
+                threads, cacheSize, precision);
+    }
+
+    /**
+     * @param models C values times targets, trained on one shared kernel and validated
+     *               together on each fold
+     * @param folds number of cross validation folds
+     * @param threads models trained at once
+     * @return the plan of grid searches of several targets with the SMO solver
+     */
+    static MemoryPlan tuneTargets(Data data, double cacheSize, LibConfig.Precision precision,
+                                  int models, int folds, int threads) {
+        return new MemoryPlan(data, LibConfig.Solver.SMO, data.getSampleNum() - data.getSampleNum() / folds,
+                models, 1, threads, cacheSize, precision);
+    }
+
+    /**
+     * @param kernels distinct kernels, each with a cache shared by its targets
+     * @param threads targets trained at once
+     * @return the plan of training several targets with the SMO solver
+     */
+    static MemoryPlan targets(Data data, double cacheSize, LibConfig.Precision precision, int kernels, int threads) {
+        return new MemoryPlan(data, LibConfig.Solver.SMO, data.getSampleNum(), 0, kernels, threads,
+                cacheSize, precision);
+    }
+
+    /**
+     * @return the estimated peak heap of the job in bytes
+     */
+    long estimate() {
+        return dataBytes() + this.threads * runBytes() + folds() * foldBytes() + caches() * cacheBytes(this.cacheSize);
+    }
+
+    /**
+     * fit the plan into a budget, lowering the parallelism first, then the kernel cache
+     * and then, for the SMO solver, the precision
+     * @param budget heap the job may use, in bytes
+     * @return whether the plan fits, the knobs are left at their last try if not
+     */
+    boolean admit(long budget) {
+        while (this.threads > 1 && estimate() > budget) {
+            this.threads--;
+        }
+        if (fitCache(budget)) {
+            return true;
+        }
+        if (this.solver != LibConfig.Solver.LIBSVM && this.precision == LibConfig.Precision.DOUBLE) {
+            this.precision = LibConfig.Precision.SINGLE;
+            return fitCache(budget);
+        }
+        return false;
+    }
+
+    /**
+     * reset the peak usage of the heap pools, before a job
+     */
+    static void resetPeak() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * @return the sum of the heap pools' peak usage since {@link #resetPeak()}, in bytes
+     */
+    static long peakUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                used += pool.getPeakUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @return the default budget: the memoryBudget property in MB, or 90% of the largest heap
+     */
+    static long budget(LibConfig config) {
+        String budget = config.properties.getProperty("memoryBudget");
+        return budget == null ? (long) (0.9d * Runtime.getRuntime().maxMemory())
+                : (long) (Double.parseDouble(budget) * MB);
+    }
+
+    @Override
+    public String toString() {
+        return "estimated peak " + estimate() / MB + " MB with " + this.threads + " threads, "
+                + this.cacheSize + " MB kernel cache, " + this.precision.toString().toLowerCase() + " precision";
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * lower the kernel cache until the plan fits
+     */
+    private boolean fitCache(long budget) {
+        if (estimate() <= budget) {
+            return true;
+        }
+        double rest = (budget - (estimate() - caches() * cacheBytes(this.cacheSize))) / (double) caches() / MB;
+        if (rest < MIN_CACHE) {
+            return false;
+        }
+        this.cacheSize = Math.min(this.cacheSize, Math.floor(rest));
+        return estimate() <= budget;
+    }
+
+    /**
+     * the samples as svm_nodes, scaled apart from the original ones if they were scaled,
+     * the labels and the matrix of the scaled samples used by everything but libsvm training
+     */
+    private long dataBytes() {
+        long nodes = (long) this.sampleNum * ROW_BYTES + this.nonZeros * NODE_BYTES;
+        long bytes = (this.scaled ? 2 : 1) * nodes + (long) this.sampleNum * ROW_BYTES;
+        if (this.solver != LibConfig.Solver.LIBSVM || this.candidates > 0 || this.sharedCaches > 0) {
+            bytes += matrixBytes(this.sampleNum, this.nonZeros);
+        }
+        return bytes;
+    }
+
+    /**
+     * one training run without its cache
+     */
+    private long runBytes() {
+        return this.trainRows * SOLVER_BYTES;
+    }
+
+    /**
+     * for tuning, the fold a run trains on, the candidate models of the fold and the
+     * validation kernel block
+     */
+    private long foldBytes() {
+        long bytes = 0;
+        if (this.candidates > 0) {
+            // references in the fold's sample and label vectors, copied again into its Data
+            bytes += 2 * 2 * 4L * this.trainRows;
+            if (this.solver != LibConfig.Solver.LIBSVM) {
+                bytes += matrixBytes(this.trainRows, this.nonZeros * this.trainRows / Math.max(1, this.sampleNum));
+            }
+            bytes += (long) this.candidates * this.trainRows * MODEL_BYTES;
+            bytes += BLOCK_ROWS * this.trainRows * 8;
+        }
+        return bytes;
+    }
+
+    private long matrixBytes(long rows, long values) {
+        if (this.sparse) {
+            return values * 12 + rows * 4;
+        }
+        return rows * this.featureNum * valueBytes();
+    }
+
+    /**
+     * a cache of cacheSize MB, no larger than the whole kernel matrix
+     */
+    private long cacheBytes(double cacheSize) {
+        // libsvm caches floats whatever the precision
+        long element = this.solver == LibConfig.Solver.LIBSVM && this.sharedCaches == 0 ? 4 : valueBytes();
+        return Math.min((long) (cacheSize * MB), (long) this.trainRows * this.trainRows * element);
+    }
+
+    /**
+     * folds alive at once, one when the runs share a kernel and so train on the same fold
+     */
+    private int folds() {
+        return this.sharedCaches > 0 ? 1 : this.threads;
+    }
+
+    private int caches() {
+        return this.sharedCaches > 0 ? this.sharedCaches : this.threads;
+    }
+
+    private long valueBytes() {
+        return this.precision == LibConfig.Precision.SINGLE ? 4 : 8;
+    }
+
+    //~ Getter/setter methods --------------------------------------------------
+
+    int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * @return kernel cache per training run or shared kernel, in MB
+     */
+    double getCacheSize() {
+        return this.cacheSize;
+    }
+
+    LibConfig.Precision getPrecision() {
+        return this.precision;
+    }
+}
+
+// End MemoryPlan.java
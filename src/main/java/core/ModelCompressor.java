@@ -0,0 +1,210 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * support vector reduction for trained regression models
+ * every stage returns a new svm_model and leaves its input untouched
+ */
+final class ModelCompressor {
+    //~ Constructors -----------------------------------------------------------
+
+    private ModelCompressor() {}
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * remove support vectors with negligible coefficients
+     * @param model a regression model
+     * @param tolerance support vectors with |coef| <= tolerance * max|coef| are removed
+     * @return the pruned model
+     */
+    static svm_model prune(svm_model model, double tolerance) {
+        double max = 0.0d;
+        for (int i = 0; i < model.l; i++) {
+            max = Math.max(max, Math.abs(model.sv_coef[0][i]));
+        }
+        List<svm_node[]> svs = new ArrayList<>();
+        List<Double> coefs = new ArrayList<>();
+        for (int i = 0; i < model.l; i++) {
+            if (Math.abs(model.sv_coef[0][i]) > tolerance * max) {
+                svs.add(model.SV[i]);
+                coefs.add(model.sv_coef[0][i]);
+            }
+        }
+        return rebuild(model, svs, coefs);
+    }
+
+    /**
+     * merge support vectors of the same sign that lie within radius of each other
+     * into their coefficient-weighted mean, carrying the summed coefficient
+     * candidates are found by hashing the support vectors onto a grid of cell size radius
+     * @param model a regression model
+     * @param radius largest distance between merged support vectors
+     * @return the merged model
+     */
+    static svm_model merge(svm_model model, double radius) {
+        Preconditions.checkArgument(radius > 0, "radius <= 0");
+        DenseMatrix x = supportVectors(model);
+        int d = x.cols();
+        double radius2 = radius * radius;
+        Map<List<Long>, List<Integer>> cells = new HashMap<>();
+        List<double[]> centers = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        List<Double> coefs = new ArrayList<>();
+        double[] row = new double[d];
+        for (int i = 0; i < model.l; i++) {
+            x.copyRow(i, row);
+            double coef = model.sv_coef[0][i];
+            Long[] cell = new Long[d];
+            for (int k = 0; k < d; k++) {
+                cell[k] = (long) Math.floor(row[k] / radius);
+            }
+            List<Integer> members = cells.computeIfAbsent(Arrays.asList(cell), c -> new ArrayList<>());
+            int target = -1;
+            for (int c : members) {
+                if (Math.signum(coefs.get(c)) == Math.signum(coef)
+                        && squaredDistance(centers.get(c), row) <= radius2) {
+                    target = c;
+                    break;
+                }
+            }
+            if (target == -1) {
+                members.add(centers.size());
+                centers.add(row.clone());
+                weights.add(Math.abs(coef));
+                coefs.add(coef);
+            } else {
+                double[] center = centers.get(target);
+                double w = weights.get(target), total = w + Math.abs(coef);
+                for (int k = 0; k < d; k++) {
+                    center[k] = (center[k] * w + row[k] * Math.abs(coef)) / total;
+                }
+                weights.set(target, total);
+                coefs.set(target, coefs.get(target) + coef);
+            }
+        }
+        List<svm_node[]> svs = new ArrayList<>();
+        for (double[] center : centers) {
+            svs.add(toNodes(center));
+        }
+        return rebuild(model, svs, coefs);
+    }
+
+    /**
+     * reduced-set approximation: keep a budget of support vectors chosen by k-means++
+     * and refit their coefficients by projecting the decision function onto their span,
+     * K_BB beta = K_BS alpha
+     * @param model a regression model
+     * @param budget the number of support vectors to keep
+     * @return the reduced model, or the input if it is within budget
+     */
+    static svm_model reduce(svm_model model, int budget) {
+        Preconditions.checkArgument(budget > 0, "budget <= 0");
+        if (model.l <= budget) {
+            return model;
+        }
+        DenseMatrix x = supportVectors(model);
+        svm_parameter param = model.param;
+        int[] kept = NystromFeatures.selectLandmarks(x, budget, LibConfig.Landmarks.KMEANS_PP, param, 0L);
+        double[] alpha = model.sv_coef[0];
+
+        double[] kbb = new double[budget * budget];
+        double[] beta = new double[budget];
+        IntStream.range(0, budget).parallel().forEach(a -> {
+            int i = kept[a];
+            for (int b = 0; b < budget; b++) {
+                int j = kept[b];
+                kbb[a * budget + b] = KernelMatrix.eval(param, x.dot(i, j), x.squaredNorm(i), x.squaredNorm(j));
+            }
+            double sum = 0.0d;
+            for (int s = 0; s < model.l; s++) {
+                sum += alpha[s] * KernelMatrix.eval(param, x.dot(i, s), x.squaredNorm(i), x.squaredNorm(s));
+            }
+            beta[a] = sum;
+        });
+        Cholesky.solve(Cholesky.factor(kbb, budget), budget, beta);
+
+        List<svm_node[]> svs = new ArrayList<>();
+        List<Double> coefs = new ArrayList<>();
+        for (int a = 0; a < budget; a++) {
+            svs.add(model.SV[kept[a]]);
+            coefs.add(beta[a]);
+        }
+        return rebuild(model, svs, coefs);
+    }
+
+    /**
+     * compare two models on labelled samples
+     * @param original the uncompressed model
+     * @param compressed the compressed model
+     * @param samples holdout samples
+     * @param labels labels of the holdout samples
+     * @return {rmse of original, rmse of compressed, rmse between the two}
+     */
+    static double[] report(svm_model original, svm_model compressed, SampleMatrix samples, double[] labels) {
+        double[] before = new double[samples.rows()];
+        double[] after = new double[samples.rows()];
+        IntStream.range(0, samples.rows()).parallel().forEach(i -> {
+            svm_node[] sample = samples.toNodes(i);
+            before[i] = svm.svm_predict(original, sample);
+            after[i] = svm.svm_predict(compressed, sample);
+        });
+        return new double[]{
+                SVMLib.rmse(before, labels), SVMLib.rmse(after, labels), SVMLib.rmse(after, before)
+        };
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private static DenseMatrix supportVectors(svm_model model) {
+        int d = 0;
+        for (int i = 0; i < model.l; i++) {
+            for (svm_node node : model.SV[i]) {
+                d = Math.max(d, node.index);
+            }
+        }
+        return DenseMatrix.of(Arrays.asList(model.SV).subList(0, model.l), d);
+    }
+
+    private static double squaredDistance(double[] a, double[] b) {
+        double sum = 0.0d;
+        for (int k = 0; k < a.length; k++) {
+            sum += (a[k] - b[k]) * (a[k] - b[k]);
+        }
+        return sum;
+    }
+
+    private static svm_node[] toNodes(double[] values) {
+        svm_node[] nodes = new svm_node[values.length];
+        for (int k = 0; k < values.length; k++) {
+            nodes[k] = new svm_node();
+            nodes[k].index = k + 1;
+            nodes[k].value = values[k];
+        }
+        return nodes;
+    }
+
+    private static svm_model rebuild(svm_model model, List<svm_node[]> svs, List<Double> coefs) {
+        svm_model compressed = new svm_model();
+        compressed.param = (svm_parameter) model.param.clone();
+        compressed.nr_class = model.nr_class;
+        compressed.rho = model.rho.clone();
+        compressed.l = svs.size();
+        compressed.SV = svs.toArray(new svm_node[0][]);
+        compressed.sv_coef = new double[1][compressed.l];
+        for (int i = 0; i < compressed.l; i++) {
+            compressed.sv_coef[0][i] = coefs.get(i);
+        }
+        return compressed;
+    }
+}
+
+// End ModelCompressor.java
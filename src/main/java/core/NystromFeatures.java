@@ -0,0 +1,260 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_parameter;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Nystrom low-rank feature map phi(x) = L^-1 k(x),
+ * where k(x) holds the kernel values between x and m landmark samples
+ * and L L^T is the Cholesky factorization of the landmarks' kernel matrix,
+ * so that phi(x) . phi(y) = k(x)^T K_mm^-1 k(y) approximates K(x, y)
+ */
+final class NystromFeatures implements Serializable {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long serialVersionUID = -7932986631008397777L;
+
+    private static final int BLOCK_SIZE = 256;
+
+    //~ Instance fields --------------------------------------------------------
+
+    final svm_parameter param;
+    final int inputDim;
+    final int m;
+    final double[][] landmarks;
+    final double[] landmarkNorms;
+    /* lower triangular factor of K_mm, row-major m * m */
+    final double[] cholesky;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param x training samples
+     * @param landmarkRows rows of x used as landmarks
+     * @param param kernel parameters
+     */
+    NystromFeatures(SampleMatrix x, int[] landmarkRows, svm_parameter param) {
+        this(x, landmarkRows, param, 0.0d);
+    }
+
+    /**
+     * @param x training samples
+     * @param landmarkRows rows of x used as landmarks
+     * @param param kernel parameters
+     * @param ridge added to the diagonal of the landmarks' kernel matrix
+     */
+    private NystromFeatures(SampleMatrix x, int[] landmarkRows, svm_parameter param, double ridge) {
+        this.param = (svm_parameter) param.clone();
+        this.inputDim = x.cols();
+        this.m = landmarkRows.length;
+        Preconditions.checkArgument((long) this.m * this.m <= Integer.MAX_VALUE, "too many landmarks: %s", this.m);
+        this.landmarks = new double[this.m][this.inputDim];
+        this.landmarkNorms = new double[this.m];
+        for (int j = 0; j < this.m; j++) {
+            x.copyRow(landmarkRows[j], this.landmarks[j]);
+            this.landmarkNorms[j] = x.squaredNorm(landmarkRows[j]);
+        }
+        double[] kmm = new double[this.m * this.m];
+        IntStream.range(0, this.m).parallel().forEach(i -> {
+            for (int j = 0; j <= i; j++) {
+                double k = KernelMatrix.eval(this.param, dot(this.landmarks[i], this.landmarks[j]),
+                        this.landmarkNorms[i], this.landmarkNorms[j]);
+                kmm[i * this.m + j] = k;
+                kmm[j * this.m + i] = k;
+            }
+            kmm[i * this.m + i] += ridge;
+        });
+        this.cholesky = Cholesky.factor(kmm, this.m);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * pick landmark rows from the training samples
+     * @param x training samples
+     * @param m number of landmarks
+     * @param sampling how to sample, see {@link LibConfig.Landmarks}
+     * @param param kernel parameters, used by leverage score sampling
+     * @param seed random seed
+     * @return m distinct row indices of x
+     */
+    static int[] selectLandmarks(SampleMatrix x, int m, LibConfig.Landmarks sampling,
+                                 svm_parameter param, long seed) {
+        Preconditions.checkArgument(m > 0 && m <= x.rows(), "m should be in [1, " + x.rows() + "]");
+        Random random = new Random(seed);
+        switch (sampling) {
+            case KMEANS_PP:
+                return kMeansPlusPlus(x, m, random);
+            case LEVERAGE:
+                return leverageScores(x, m, param, random);
+            case UNIFORM:
+            default:
+                return uniform(x.rows(), m, random);
+        }
+    }
+
+    /**
+     * map every row of a matrix to its Nystrom features
+     * the n * m cross kernel is computed in parallel blocks of rows
+     * @param x samples
+     * @return an x.rows() by m dense matrix
+     */
+    DenseMatrix transform(SampleMatrix x) {
+        int n = x.rows();
+        long size = (long) n * this.m;
+        Preconditions.checkArgument(size <= Integer.MAX_VALUE,
+                "%s rows by %s landmarks do not fit in one array", n, this.m);
+        double[] values = new double[(int) size];
+        int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int end = Math.min(n, (b + 1) * BLOCK_SIZE);
+            for (int i = b * BLOCK_SIZE; i < end; i++) {
+                int offset = i * this.m;
+                double xx = x.squaredNorm(i);
+                for (int j = 0; j < this.m; j++) {
+                    values[offset + j] = KernelMatrix.eval(this.param, x.dot(i, this.landmarks[j]),
+                            xx, this.landmarkNorms[j]);
+                }
+                Cholesky.forwardSolve(this.cholesky, this.m, values, offset);
+            }
+        });
+        return new DenseMatrix(n, this.m, values);
+    }
+
+    /**
+     * fold the projection into a weight vector, w' = L^-T w,
+     * so that w . phi(x) = w' . k(x)
+     * @param w weights of the m features
+     * @return weights of the m landmark kernel values
+     */
+    double[] fold(double[] w) {
+        double[] folded = Arrays.copyOf(w, this.m);
+        Cholesky.backSolve(this.cholesky, this.m, folded);
+        return folded;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    static double dot(double[] a, double[] b) {
+        double sum = 0.0d;
+        for (int k = 0; k < a.length; k++) {
+            sum += a[k] * b[k];
+        }
+        return sum;
+    }
+
+    private static int[] uniform(int n, int m, Random random) {
+        // partial Fisher-Yates shuffle
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = i;
+        }
+        for (int i = 0; i < m; i++) {
+            int j = i + random.nextInt(n - i);
+            int tmp = rows[i];
+            rows[i] = rows[j];
+            rows[j] = tmp;
+        }
+        int[] landmarks = new int[m];
+        System.arraycopy(rows, 0, landmarks, 0, m);
+        return landmarks;
+    }
+
+    /**
+     * k-means++ seeding, each landmark is drawn with probability
+     * proportional to its squared distance to the closest landmark so far
+     */
+    private static int[] kMeansPlusPlus(SampleMatrix x, int m, Random random) {
+        int n = x.rows();
+        int[] landmarks = new int[m];
+        double[] distance = new double[n];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        landmarks[0] = random.nextInt(n);
+        for (int t = 1; t < m; t++) {
+            int last = landmarks[t - 1];
+            double lastNorm = x.squaredNorm(last);
+            IntStream.range(0, n).parallel().forEach(i -> {
+                double d = Math.max(0, x.squaredNorm(i) + lastNorm - 2 * x.dot(i, last));
+                if (d < distance[i]) {
+                    distance[i] = d;
+                }
+            });
+            landmarks[t] = sample(distance, random);
+            distance[landmarks[t]] = 0;
+        }
+        return landmarks;
+    }
+
+    /**
+     * approximate ridge leverage score sampling: the score of a row is
+     * K_ii - k_i^T (K_ss + lambda I)^-1 k_i against a uniform pilot sample s of size m,
+     * which is proportional to its ridge leverage score under the pilot's approximation,
+     * m rows are then drawn without replacement with probability proportional to the scores
+     */
+    private static int[] leverageScores(SampleMatrix x, int m, svm_parameter param, Random random) {
+        int n = x.rows();
+        int[] pilot = uniform(n, m, random);
+        double trace = 0.0d;
+        for (int i : pilot) {
+            double xx = x.squaredNorm(i);
+            trace += KernelMatrix.eval(param, xx, xx, xx);
+        }
+        NystromFeatures features = new NystromFeatures(x, pilot, param, 1e-3 * trace / m);
+        double[] scores = new double[n];
+        int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            double[] k = new double[m];
+            int end = Math.min(n, (b + 1) * BLOCK_SIZE);
+            for (int i = b * BLOCK_SIZE; i < end; i++) {
+                double xx = x.squaredNorm(i);
+                for (int j = 0; j < m; j++) {
+                    k[j] = KernelMatrix.eval(features.param, x.dot(i, features.landmarks[j]),
+                            xx, features.landmarkNorms[j]);
+                }
+                Cholesky.forwardSolve(features.cholesky, m, k, 0);
+                scores[i] = Math.max(KernelMatrix.eval(features.param, xx, xx, xx) - dot(k, k), 0) + 1e-12;
+            }
+        });
+        // Efraimidis-Spirakis: keep the m largest log(u) / w
+        double[] keys = new double[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = Math.log(random.nextDouble()) / scores[i];
+        }
+        double[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        double threshold = sorted[n - m];
+        int[] landmarks = new int[m];
+        for (int i = 0, j = 0; i < n && j < m; i++) {
+            if (keys[i] >= threshold) {
+                landmarks[j++] = i;
+            }
+        }
+        return landmarks;
+    }
+
+    private static int sample(double[] weights, Random random) {
+        double total = 0.0d;
+        for (double w : weights) {
+            total += w;
+        }
+        double target = random.nextDouble() * total;
+        int last = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] > 0) {
+                last = i;
+                target -= weights[i];
+                if (target < 0) {
+                    return i;
+                }
+            }
+        }
+        return last;
+    }
+}
+
+// End NystromFeatures.java
@@ -0,0 +1,92 @@
+package core;
+
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+/**
+ * a kernel regression model trained on Nystrom features
+ * the landmark set and projection are kept with the model and the projection is
+ * folded into one coefficient per landmark, so prediction costs O(m * d)
+ */
+public final class NystromModel implements Regressor {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long serialVersionUID = 927510637830738796L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final NystromFeatures features;
+    private final double[] weights;
+    private final double[] coef;
+    private final double bias;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param features the Nystrom feature map
+     * @param solution weights of the m features followed by the bias
+     */
+    NystromModel(NystromFeatures features, double[] solution) {
+        assert solution.length == features.m + 1;
+        this.features = features;
+        this.weights = solution;
+        this.coef = features.fold(solution);
+        this.bias = solution[features.m];
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    @Override
+    public double predict(double[] sample) {
+        double xx = NystromFeatures.dot(sample, sample);
+        double sum = this.bias;
+        for (int j = 0; j < this.features.m; j++) {
+            double k = KernelMatrix.eval(this.features.param,
+                    NystromFeatures.dot(sample, this.features.landmarks[j]), xx, this.features.landmarkNorms[j]);
+            sum += this.coef[j] * k;
+        }
+        return sum;
+    }
+
+    /**
+     * express this model as a libsvm model with the landmarks as support vectors
+     * @return an equivalent epsilon-SVR svm_model
+     */
+    public svm_model toSvmModel() {
+        svm_model model = new svm_model();
+        model.param = (svm_parameter) this.features.param.clone();
+        model.param.svm_type = svm_parameter.EPSILON_SVR;
+        model.nr_class = 2;
+        model.l = this.features.m;
+        model.SV = new svm_node[model.l][];
+        model.sv_coef = new double[][]{this.coef.clone()};
+        model.rho = new double[]{-this.bias};
+        for (int j = 0; j < model.l; j++) {
+            double[] landmark = this.features.landmarks[j];
+            model.SV[j] = new svm_node[landmark.length];
+            for (int k = 0; k < landmark.length; k++) {
+                model.SV[j][k] = new svm_node();
+                model.SV[j][k].index = k + 1;
+                model.SV[j][k].value = landmark[k];
+            }
+        }
+        return model;
+    }
+
+    /**
+     * @return the number of landmarks m
+     */
+    public int getLandmarkNum() {
+        return this.features.m;
+    }
+
+    /**
+     * @return weights of the m Nystrom features before folding
+     */
+    double[] getWeights() {
+        return this.weights;
+    }
+}
+
+// End NystromModel.java
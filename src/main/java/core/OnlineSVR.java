@@ -0,0 +1,320 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+import java.util.Arrays;
+
+/**
+ * an epsilon-SVR model that is updated with new batches of samples instead of retrained
+ * the model keeps a sliding window of the latest samples together with their dual
+ * coefficients and outputs; a batch enters with zero coefficients, the samples leaving
+ * the window hand their coefficients over to the newest ones, and SMO is warm started
+ * from the result. the kernel cache is carried over from update to update, so cached rows
+ * only get the columns of the new samples, and SMO selects its working sets among the new,
+ * changed and free samples before checking the rest. an update costs
+ * O((batch + expired) * window) kernel evaluations plus SMO iterations in proportion to the
+ * batch, whatever the length of the history
+ */
+public final class OnlineSVR implements Regressor {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long serialVersionUID = -5604197116192114745L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final svm_parameter param;
+    private final int window;
+    private long maxAge = Long.MAX_VALUE;
+
+    /* the samples in the window, oldest first */
+    private double[][] x = new double[0][];
+    private double[] norms = new double[0];
+    private double[] y = new double[0];
+    private long[] times = new long[0];
+    /* alpha+ - alpha- of each sample */
+    private double[] coef = new double[0];
+    /* sum_k coef_k * K(x_i, x_k) of each sample */
+    private double[] outputs = new double[0];
+    private double rho = 0.0d;
+    /* kernel matrix of the window, its cache is carried over to the next window;
+     * not saved with the model, the first update after loading builds a new one */
+    private transient KernelMatrix kernel = null;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param param epsilon-SVR parameter, the cache is sized for the window if cache_size <= 0
+     * @param window the largest number of samples to keep
+     */
+    public OnlineSVR(svm_parameter param, int window) {
+        Preconditions.checkArgument(param.svm_type == svm_parameter.EPSILON_SVR,
+                "only epsilon-SVR can be trained online");
+        Preconditions.checkArgument(window > 1, "window <= 1");
+        this.param = (svm_parameter) param.clone();
+        if (this.param.cache_size <= 0) {
+            this.param.cache_size = LibConfig.getInstance().adaptiveCacheSize(window);
+        }
+        this.window = window;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * continue from a model trained on the whole data, the samples being in time order
+     * and all stamped with the current time
+     * @param model epsilon-SVR model with sv_indices into x
+     * @param x the samples the model was trained on
+     * @param y labels of the samples
+     * @param window the largest number of samples to keep, older ones are forgotten at once
+     * @return an online model predicting like the given one until it is updated
+     */
+    public static OnlineSVR of(svm_model model, SampleMatrix x, double[] y, int window) {
+        long[] timestamps = new long[x.rows()];
+        Arrays.fill(timestamps, System.currentTimeMillis());
+        return of(model, x, y, timestamps, window);
+    }
+
+    /**
+     * continue from a model trained on the whole data, the samples being in time order
+     * @param model epsilon-SVR model with sv_indices into x
+     * @param x the samples the model was trained on
+     * @param y labels of the samples
+     * @param timestamps time of each sample in milliseconds, for {@link #setMaxAge(long)}
+     * @param window the largest number of samples to keep, older ones are forgotten at once
+     * @return an online model predicting like the given one until it is updated
+     */
+    public static OnlineSVR of(svm_model model, SampleMatrix x, double[] y, long[] timestamps, int window) {
+        Preconditions.checkNotNull(model.sv_indices, "model without sv_indices");
+        Preconditions.checkArgument(timestamps.length == x.rows());
+        OnlineSVR online = new OnlineSVR(model.param, window);
+        double[] coef = new double[x.rows()];
+        for (int k = 0; k < model.l; k++) {
+            coef[model.sv_indices[k] - 1] = model.sv_coef[0][k];
+        }
+        online.rho = model.rho[0];
+        online.advance(rows(x), y, coef, timestamps.clone(), 0, System.currentTimeMillis());
+        return online;
+    }
+
+    /**
+     * add a batch of samples, forget the ones out of the window and re-optimize
+     * @param batch new samples, scaled like the ones already in the model
+     * @param labels labels of the new samples
+     * @return this
+     */
+    public OnlineSVR update(SampleMatrix batch, double[] labels) {
+        return update(batch, labels, System.currentTimeMillis());
+    }
+
+    /**
+     * add a batch of samples, forget the ones out of the window and re-optimize
+     * @param batch new samples, scaled like the ones already in the model
+     * @param labels labels of the new samples
+     * @param timestamp time of the batch in milliseconds, not earlier than the previous batch
+     * @return this
+     */
+    public OnlineSVR update(SampleMatrix batch, double[] labels, long timestamp) {
+        Preconditions.checkArgument(batch.rows() == labels.length);
+        int n = this.x.length, b = batch.rows();
+        double[][] x = new double[n + b][];
+        double[] y = new double[n + b];
+        double[] coef = new double[n + b];
+        long[] times = new long[n + b];
+        System.arraycopy(this.x, 0, x, 0, n);
+        System.arraycopy(this.y, 0, y, 0, n);
+        System.arraycopy(this.coef, 0, coef, 0, n);
+        System.arraycopy(this.times, 0, times, 0, n);
+        double[][] rows = rows(batch);
+        for (int i = 0; i < b; i++) {
+            x[n + i] = rows[i];
+            y[n + i] = labels[i];
+            times[n + i] = timestamp;
+        }
+        advance(x, y, coef, times, n, timestamp);
+        return this;
+    }
+
+    @Override
+    public double predict(double[] sample) {
+        double xx = NystromFeatures.dot(sample, sample);
+        double sum = -this.rho;
+        for (int k = 0; k < this.x.length; k++) {
+            if (this.coef[k] != 0) {
+                sum += this.coef[k] * KernelMatrix.eval(this.param,
+                        NystromFeatures.dot(sample, this.x[k]), xx, this.norms[k]);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * express this model as a libsvm model with the window's support vectors
+     * @return an equivalent epsilon-SVR svm_model
+     */
+    public svm_model toSvmModel() {
+        int nSV = getSupportVectorNum();
+        svm_model model = new svm_model();
+        model.param = (svm_parameter) this.param.clone();
+        model.nr_class = 2;
+        model.l = nSV;
+        model.SV = new svm_node[nSV][];
+        model.sv_coef = new double[1][nSV];
+        model.sv_indices = new int[nSV];
+        model.rho = new double[]{this.rho};
+        for (int i = 0, k = 0; i < this.x.length; i++) {
+            if (this.coef[i] != 0) {
+                model.SV[k] = new DenseMatrix(1, this.x[i].length, this.x[i]).toNodes(0);
+                model.sv_coef[0][k] = this.coef[i];
+                model.sv_indices[k] = i + 1;
+                k++;
+            }
+        }
+        return model;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * bring the outputs of the new samples up to date, drop the expired samples and
+     * re-optimize over the rest
+     * @param fresh index of the first sample whose output is not known yet
+     */
+    private void advance(double[][] x, double[] y, double[] coef, long[] times, int fresh, long now) {
+        long startTime = System.currentTimeMillis();
+        int n = x.length;
+        double[] norms = new double[n];
+        double[] outputs = new double[n];
+        System.arraycopy(this.norms, 0, norms, 0, fresh);
+        System.arraycopy(this.outputs, 0, outputs, 0, fresh);
+        for (int i = fresh; i < n; i++) {
+            norms[i] = NystromFeatures.dot(x[i], x[i]);
+        }
+        for (int i = fresh; i < n; i++) {
+            double sum = 0.0d;
+            for (int k = 0; k < n; k++) {
+                if (coef[k] != 0) {
+                    sum += coef[k] * KernelMatrix.eval(this.param, NystromFeatures.dot(x[i], x[k]), norms[i], norms[k]);
+                }
+            }
+            outputs[i] = sum;
+        }
+
+        // samples are in time order, so the expired ones are a prefix
+        int expired = Math.max(0, n - this.window);
+        while (expired < n && this.maxAge != Long.MAX_VALUE && times[expired] < now - this.maxAge) {
+            expired++;
+        }
+        if (expired == n) {
+            this.x = new double[0][];
+            this.norms = this.y = this.coef = this.outputs = new double[0];
+            this.times = new long[0];
+            this.rho = 0.0d;
+            this.kernel = null;
+            return;
+        }
+
+        // hand the coefficients of expired samples over to the newest samples,
+        // keeping sum(coef) = 0 and every coef within [-C, C]
+        double[] change = new double[n];
+        for (int r = 0; r < expired; r++) {
+            double left = coef[r];
+            change[r] = -coef[r];
+            for (int k = n - 1; k >= expired && left != 0; k--) {
+                double moved = Math.min(Math.max(coef[k] + change[k] + left, -this.param.C), this.param.C)
+                        - coef[k] - change[k];
+                change[k] += moved;
+                left -= moved;
+            }
+        }
+        for (int j = 0; j < n; j++) {
+            if (change[j] == 0) {
+                continue;
+            }
+            for (int i = expired; i < n; i++) {
+                outputs[i] += change[j] * KernelMatrix.eval(this.param,
+                        NystromFeatures.dot(x[i], x[j]), norms[i], norms[j]);
+            }
+        }
+
+        int m = n - expired, d = x[expired].length;
+        double[] values = new double[m * d];
+        double[] keptCoef = new double[m];
+        // the new samples, the ones that took over coefficients and the free ones
+        int[] active = new int[m];
+        int activeNum = 0;
+        for (int i = 0; i < m; i++) {
+            System.arraycopy(x[expired + i], 0, values, i * d, d);
+            keptCoef[i] = coef[expired + i] + change[expired + i];
+            if (expired + i >= fresh || change[expired + i] != 0
+                    || (keptCoef[i] != 0 && Math.abs(keptCoef[i]) < this.param.C)) {
+                active[activeNum++] = i;
+            }
+        }
+        this.x = Arrays.copyOfRange(x, expired, n);
+        this.norms = Arrays.copyOfRange(norms, expired, n);
+        this.y = Arrays.copyOfRange(y, expired, n);
+        this.times = Arrays.copyOfRange(times, expired, n);
+
+        DenseMatrix samples = new DenseMatrix(m, d, values);
+        // the old window is the first fresh samples, the rows of those left are reused
+        this.kernel = this.kernel != null && expired < fresh ? this.kernel.slide(samples, expired)
+                : new KernelMatrix(samples, this.param);
+        SMOSolver solver = new SMOSolver(this.kernel, this.y, this.param,
+                keptCoef, Arrays.copyOfRange(outputs, expired, n))
+                .setActive(Arrays.copyOf(active, activeNum));
+        solver.optimize();
+        this.coef = solver.getCoefficients();
+        this.outputs = solver.getOutputs();
+        this.rho = solver.getRho();
+        if (SVMLib.DEBUG) {
+            System.out.println("Online update finished in " + (System.currentTimeMillis() - startTime) / 1000.0
+                    + " seconds, #new = " + (n - fresh) + ", #expired = " + expired
+                    + ", #iter = " + solver.getIterations() + ", nSV = " + getSupportVectorNum());
+        }
+    }
+
+    private static double[][] rows(SampleMatrix x) {
+        double[][] rows = new double[x.rows()][x.cols()];
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, rows[i]);
+        }
+        return rows;
+    }
+
+    //~ Getter/setter methods --------------------------------------------------
+
+    /**
+     * @param maxAge samples older than this many milliseconds are forgotten at the next update
+     * @return this
+     */
+    public OnlineSVR setMaxAge(long maxAge) {
+        Preconditions.checkArgument(maxAge > 0, "maxAge <= 0");
+        this.maxAge = maxAge;
+        return this;
+    }
+
+    /**
+     * @return the number of samples in the window
+     */
+    public int size() {
+        return this.x.length;
+    }
+
+    /**
+     * @return the number of samples with a non-zero coefficient
+     */
+    public int getSupportVectorNum() {
+        int nSV = 0;
+        for (double c : this.coef) {
+            if (c != 0) {
+                nSV++;
+            }
+        }
+        return nSV;
+    }
+}
+
+// End OnlineSVR.java
@@ -0,0 +1,19 @@
+package core;
+
+import java.io.Serializable;
+
+/**
+ * a trained regression model that is not a plain libsvm svm_model
+ */
+public interface Regressor extends Serializable {
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * predict a sample's label
+     * @param sample features of the sample, in the order of the training data
+     * @return the predicted label of this sample
+     */
+    double predict(double[] sample);
+}
+
+// End Regressor.java
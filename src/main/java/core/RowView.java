@@ -0,0 +1,93 @@
+package core;
+
+import libsvm.svm_node;
+
+/**
+ * a subset of the rows of another matrix, without copying them
+ */
+final class RowView implements SampleMatrix {
+    //~ Instance fields --------------------------------------------------------
+
+    private final SampleMatrix base;
+    private final int[] index;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param base the matrix to view
+     * @param index rows of base, in the order they appear in this view
+     */
+    RowView(SampleMatrix base, int[] index) {
+        this.base = base;
+        this.index = index;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * view all rows but a contiguous range
+     * @param base the matrix to view
+     * @param from first row left out
+     * @param to last row left out, exclusive
+     * @return the remaining rows in their original order
+     */
+    static RowView without(SampleMatrix base, int from, int to) {
+        int[] index = new int[base.rows() - (to - from)];
+        for (int i = 0, k = 0; i < base.rows(); i++) {
+            if (i < from || i >= to) {
+                index[k++] = i;
+            }
+        }
+        return new RowView(base, index);
+    }
+
+    @Override
+    public int rows() {
+        return this.index.length;
+    }
+
+    @Override
+    public int cols() {
+        return this.base.cols();
+    }
+
+    @Override
+    public double dot(int i, int j) {
+        return this.base.dot(this.index[i], this.index[j]);
+    }
+
+    @Override
+    public double dot(int i, double[] x) {
+        return this.base.dot(this.index[i], x);
+    }
+
+    @Override
+    public double squaredNorm(int i) {
+        return this.base.squaredNorm(this.index[i]);
+    }
+
+    @Override
+    public void axpy(int i, double a, double[] w) {
+        this.base.axpy(this.index[i], a, w);
+    }
+
+    @Override
+    public void copyRow(int i, double[] out) {
+        this.base.copyRow(this.index[i], out);
+    }
+
+    @Override
+    public svm_node[] toNodes(int i) {
+        return this.base.toNodes(this.index[i]);
+    }
+
+    /**
+     * @param i row of this view
+     * @return the row of the base matrix
+     */
+    int baseRow(int i) {
+        return this.index[i];
+    }
+}
+
+// End RowView.java
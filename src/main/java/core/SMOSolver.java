@@ -0,0 +1,443 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+/**
+ * epsilon-SVR solver using SMO with second order working set selection,
+ * following the solver of libsvm but running over a {@link KernelMatrix}
+ * the produced models are plain {@link svm_model}s
+ */
+final class SMOSolver {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final double TAU = 1e-12;
+
+    private static final byte LOWER_BOUND = 0;
+    private static final byte UPPER_BOUND = 1;
+    private static final byte FREE = 2;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final KernelMatrix kernel;
+    private final svm_parameter param;
+    private final int l;
+    private final double[] y;
+
+    /* the 2l variables: alpha+ in [0, l), alpha- in [l, 2l) */
+    private final double[] alpha;
+    private final double[] gradient;
+    private final double[] diag;
+    private final double[] bound;
+    private final byte[] status;
+    /* the variables working sets are selected from until they are optimal, null for all */
+    private int[] active = null;
+
+    private int iterations = 0;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param kernel kernel matrix of the training samples
+     * @param y labels of the training samples
+     * @param param svm parameter, svm_type must be EPSILON_SVR
+     */
+    SMOSolver(KernelMatrix kernel, double[] y, svm_parameter param) {
+        this(kernel, y, param, new double[y.length], new double[y.length]);
+    }
+
+    /**
+     * start from a feasible solution instead of all zeros, for incremental training
+     * @param kernel kernel matrix of the training samples
+     * @param y labels of the training samples
+     * @param param svm parameter, svm_type must be EPSILON_SVR
+     * @param coef alpha+ - alpha- of each sample, within [-C, C] and summing to 0
+     * @param outputs sum_k coef_k * K(x_i, x_k) of each sample, without the bias
+     */
+    SMOSolver(KernelMatrix kernel, double[] y, svm_parameter param, double[] coef, double[] outputs) {
+        Preconditions.checkArgument(param.svm_type == svm_parameter.EPSILON_SVR,
+                "SMOSolver only solves epsilon-SVR");
+        Preconditions.checkArgument(kernel.size() == y.length);
+        Preconditions.checkArgument(coef.length == y.length && outputs.length == y.length);
+        this.kernel = kernel;
+        this.param = param;
+        this.l = y.length;
+        this.y = y;
+
+        this.alpha = new double[2 * this.l];
+        this.gradient = new double[2 * this.l];
+        this.diag = new double[2 * this.l];
+        this.bound = new double[2 * this.l];
+        this.status = new byte[2 * this.l];
+        for (int i = 0; i < this.l; i++) {
+            // the gradient is the linear term plus +-outputs, which are 0 for a cold start
+            this.alpha[i] = Math.max(coef[i], 0);
+            this.alpha[i + this.l] = Math.max(-coef[i], 0);
+            this.gradient[i] = param.p - y[i] + outputs[i];
+            this.gradient[i + this.l] = param.p + y[i] - outputs[i];
+            double kii = kernel.eval(i, i);
+            this.diag[i] = kii;
+            this.diag[i + this.l] = kii;
+            this.bound[i] = param.C;
+            this.bound[i + this.l] = param.C;
+            updateStatus(i);
+            updateStatus(i + this.l);
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * solve the dual problem and build a model from the support vectors
+     * @param samples the samples the kernel matrix was built on
+     * @return a trained epsilon-SVR model
+     */
+    svm_model solve(SampleMatrix samples) {
+        long startTime = System.currentTimeMillis();
+        optimize();
+        svm_model model = buildModel(samples, getRho());
+        if (SVMLib.DEBUG) {
+            System.out.println("SMO finished in " + (System.currentTimeMillis() - startTime) / 1000.0
+                    + " seconds, #iter = " + this.iterations + ", nSV = " + model.l);
+        }
+        return model;
+    }
+
+    /**
+     * give every sample its own C, e.g. the number of samples a row stands for
+     * must be called before solving, with no alpha above its new bound
+     * @param weights per-instance multipliers of C
+     * @return this
+     */
+    SMOSolver setWeights(double[] weights) {
+        Preconditions.checkArgument(weights.length == this.l);
+        for (int i = 0; i < this.l; i++) {
+            Preconditions.checkArgument(weights[i] > 0, "weight <= 0");
+            double c = this.param.C * weights[i];
+            Preconditions.checkState(this.alpha[i] <= c && this.alpha[i + this.l] <= c,
+                    "alpha out of the new bound");
+            this.bound[i] = c;
+            this.bound[i + this.l] = c;
+            updateStatus(i);
+            updateStatus(i + this.l);
+        }
+        return this;
+    }
+
+    /**
+     * select working sets among some samples first, e.g. the new ones of a warm start,
+     * and only then among all samples, which usually takes few more iterations
+     * @param samples the samples to start with
+     * @return this
+     */
+    SMOSolver setActive(int[] samples) {
+        this.active = new int[2 * samples.length];
+        for (int a = 0; a < samples.length; a++) {
+            Preconditions.checkElementIndex(samples[a], this.l);
+            this.active[2 * a] = samples[a];
+            this.active[2 * a + 1] = samples[a] + this.l;
+        }
+        return this;
+    }
+
+    /**
+     * run SMO until the optimality condition is reached, without building a model
+     */
+    void optimize() {
+        int maxIter = Math.max(10000000, this.l > Integer.MAX_VALUE / 100 ? Integer.MAX_VALUE : 100 * this.l);
+        int[] working = new int[2];
+        while (this.iterations < maxIter) {
+            if (!selectWorkingSet(working)) {
+                if (this.active == null) {
+                    break;
+                }
+                // the active samples are optimal, go on until all of them are
+                this.active = null;
+                continue;
+            }
+            update(working[0], working[1]);
+            this.iterations++;
+        }
+        if (this.iterations >= maxIter) {
+            System.err.println("WARNING: reaching max number of iterations");
+        }
+    }
+
+    /**
+     * @return alpha+ - alpha- of each sample
+     */
+    double[] getCoefficients() {
+        double[] coef = new double[this.l];
+        for (int i = 0; i < this.l; i++) {
+            coef[i] = this.alpha[i] - this.alpha[i + this.l];
+        }
+        return coef;
+    }
+
+    /**
+     * @return sum_k coef_k * K(x_i, x_k) of each sample, recovered from the gradient
+     */
+    double[] getOutputs() {
+        double[] outputs = new double[this.l];
+        for (int i = 0; i < this.l; i++) {
+            outputs[i] = this.gradient[i] - this.param.p + this.y[i];
+        }
+        return outputs;
+    }
+
+    /**
+     * @return the bias term, the model predicts sum_k coef_k * K(x, x_k) - rho
+     */
+    double getRho() {
+        return calculateRho();
+    }
+
+    /**
+     * @return the number of SMO iterations taken by {@link #solve(SampleMatrix)}
+     */
+    int getIterations() {
+        return this.iterations;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private int sign(int t) {
+        return t < this.l ? 1 : -1;
+    }
+
+    private int real(int t) {
+        return t < this.l ? t : t - this.l;
+    }
+
+    /**
+     * second order working set selection, see libsvm's Solver
+     * @param working receives the selected pair
+     * @return false if the optimality condition is reached
+     */
+    private boolean selectWorkingSet(int[] working) {
+        int count = this.active == null ? 2 * this.l : this.active.length;
+        double gMax = Double.NEGATIVE_INFINITY;
+        int gMaxIdx = -1;
+        for (int a = 0; a < count; a++) {
+            int t = this.active == null ? a : this.active[a];
+            if (sign(t) == 1) {
+                if (this.status[t] != UPPER_BOUND && -this.gradient[t] >= gMax) {
+                    gMax = -this.gradient[t];
+                    gMaxIdx = t;
+                }
+            } else {
+                if (this.status[t] != LOWER_BOUND && this.gradient[t] >= gMax) {
+                    gMax = this.gradient[t];
+                    gMaxIdx = t;
+                }
+            }
+        }
+        if (gMaxIdx == -1) {
+            return false;
+        }
+        int i = gMaxIdx;
+        boolean single = this.kernel.isSingle();
+        double[] kernelI = single ? null : this.kernel.row(real(i));
+        float[] floatI = single ? this.kernel.floatRow(real(i)) : null;
+
+        double gMax2 = Double.NEGATIVE_INFINITY;
+        int gMinIdx = -1;
+        double objDiffMin = Double.POSITIVE_INFINITY;
+        for (int a = 0; a < count; a++) {
+            int j = this.active == null ? a : this.active[a];
+            int sj = sign(j);
+            double gradDiff;
+            if (sj == 1) {
+                if (this.status[j] == LOWER_BOUND) {
+                    continue;
+                }
+                gradDiff = gMax + this.gradient[j];
+                gMax2 = Math.max(gMax2, this.gradient[j]);
+            } else {
+                if (this.status[j] == UPPER_BOUND) {
+                    continue;
+                }
+                gradDiff = gMax - this.gradient[j];
+                gMax2 = Math.max(gMax2, -this.gradient[j]);
+            }
+            if (gradDiff > 0) {
+                // for either sign of j this is K_ii + K_jj - 2 * K_ij
+                double kij = single ? floatI[real(j)] : kernelI[real(j)];
+                double quadCoef = this.diag[i] + this.diag[j] - 2.0 * kij;
+                double objDiff = -(gradDiff * gradDiff) / (quadCoef > 0 ? quadCoef : TAU);
+                if (objDiff <= objDiffMin) {
+                    gMinIdx = j;
+                    objDiffMin = objDiff;
+                }
+            }
+        }
+        if (gMax + gMax2 < this.param.eps || gMinIdx == -1) {
+            return false;
+        }
+        working[0] = i;
+        working[1] = gMinIdx;
+        return true;
+    }
+
+    private void update(int i, int j) {
+        int si = sign(i), sj = sign(j);
+        boolean single = this.kernel.isSingle();
+        double[] kernelI = single ? null : this.kernel.row(real(i));
+        double[] kernelJ = single ? null : this.kernel.row(real(j));
+        float[] floatI = single ? this.kernel.floatRow(real(i)) : null;
+        float[] floatJ = single ? this.kernel.floatRow(real(j)) : null;
+        double qij = si * sj * (single ? floatI[real(j)] : kernelI[real(j)]);
+        double ci = this.bound[i], cj = this.bound[j];
+        double oldAlphaI = this.alpha[i], oldAlphaJ = this.alpha[j];
+
+        if (si != sj) {
+            double quadCoef = this.diag[i] + this.diag[j] + 2 * qij;
+            if (quadCoef <= 0) {
+                quadCoef = TAU;
+            }
+            double delta = (-this.gradient[i] - this.gradient[j]) / quadCoef;
+            double diff = this.alpha[i] - this.alpha[j];
+            this.alpha[i] += delta;
+            this.alpha[j] += delta;
+            if (diff > 0) {
+                if (this.alpha[j] < 0) {
+                    this.alpha[j] = 0;
+                    this.alpha[i] = diff;
+                }
+            } else {
+                if (this.alpha[i] < 0) {
+                    this.alpha[i] = 0;
+                    this.alpha[j] = -diff;
+                }
+            }
+            if (diff > ci - cj) {
+                if (this.alpha[i] > ci) {
+                    this.alpha[i] = ci;
+                    this.alpha[j] = ci - diff;
+                }
+            } else {
+                if (this.alpha[j] > cj) {
+                    this.alpha[j] = cj;
+                    this.alpha[i] = cj + diff;
+                }
+            }
+        } else {
+            double quadCoef = this.diag[i] + this.diag[j] - 2 * qij;
+            if (quadCoef <= 0) {
+                quadCoef = TAU;
+            }
+            double delta = (this.gradient[i] - this.gradient[j]) / quadCoef;
+            double sum = this.alpha[i] + this.alpha[j];
+            this.alpha[i] -= delta;
+            this.alpha[j] += delta;
+            if (sum > ci) {
+                if (this.alpha[i] > ci) {
+                    this.alpha[i] = ci;
+                    this.alpha[j] = sum - ci;
+                }
+            } else {
+                if (this.alpha[j] < 0) {
+                    this.alpha[j] = 0;
+                    this.alpha[i] = sum;
+                }
+            }
+            if (sum > cj) {
+                if (this.alpha[j] > cj) {
+                    this.alpha[j] = cj;
+                    this.alpha[i] = sum - cj;
+                }
+            } else {
+                if (this.alpha[i] < 0) {
+                    this.alpha[i] = 0;
+                    this.alpha[j] = sum;
+                }
+            }
+        }
+
+        // G_k += Q_ki * dA_i + Q_kj * dA_j, with Q_ki = s_k * s_i * K_ki
+        double deltaI = si * (this.alpha[i] - oldAlphaI);
+        double deltaJ = sj * (this.alpha[j] - oldAlphaJ);
+        // the gradient itself stays in double so rounding does not pile up over the iterations
+        if (single) {
+            for (int k = 0; k < this.l; k++) {
+                double u = floatI[k] * deltaI + floatJ[k] * deltaJ;
+                this.gradient[k] += u;
+                this.gradient[k + this.l] -= u;
+            }
+        } else {
+            for (int k = 0; k < this.l; k++) {
+                double u = kernelI[k] * deltaI + kernelJ[k] * deltaJ;
+                this.gradient[k] += u;
+                this.gradient[k + this.l] -= u;
+            }
+        }
+        updateStatus(i);
+        updateStatus(j);
+    }
+
+    private void updateStatus(int t) {
+        if (this.alpha[t] >= this.bound[t]) {
+            this.status[t] = UPPER_BOUND;
+        } else if (this.alpha[t] <= 0) {
+            this.status[t] = LOWER_BOUND;
+        } else {
+            this.status[t] = FREE;
+        }
+    }
+
+    private double calculateRho() {
+        int nrFree = 0;
+        double ub = Double.POSITIVE_INFINITY, lb = Double.NEGATIVE_INFINITY, sumFree = 0.0d;
+        for (int t = 0; t < 2 * this.l; t++) {
+            double yG = sign(t) * this.gradient[t];
+            if (this.status[t] == UPPER_BOUND) {
+                if (sign(t) == -1) {
+                    ub = Math.min(ub, yG);
+                } else {
+                    lb = Math.max(lb, yG);
+                }
+            } else if (this.status[t] == LOWER_BOUND) {
+                if (sign(t) == 1) {
+                    ub = Math.min(ub, yG);
+                } else {
+                    lb = Math.max(lb, yG);
+                }
+            } else {
+                nrFree++;
+                sumFree += yG;
+            }
+        }
+        return nrFree > 0 ? sumFree / nrFree : (ub + lb) / 2;
+    }
+
+    private svm_model buildModel(SampleMatrix samples, double rho) {
+        int nSV = 0;
+        for (int i = 0; i < this.l; i++) {
+            if (this.alpha[i] - this.alpha[i + this.l] != 0) {
+                nSV++;
+            }
+        }
+        svm_model model = new svm_model();
+        model.param = (svm_parameter) this.param.clone();
+        model.nr_class = 2;
+        model.l = nSV;
+        model.SV = new svm_node[nSV][];
+        model.sv_coef = new double[1][nSV];
+        model.sv_indices = new int[nSV];
+        model.rho = new double[]{rho};
+        for (int i = 0, k = 0; i < this.l; i++) {
+            double coef = this.alpha[i] - this.alpha[i + this.l];
+            if (coef != 0) {
+                model.SV[k] = samples.toNodes(i);
+                model.sv_coef[0][k] = coef;
+                model.sv_indices[k] = i + 1;
+                k++;
+            }
+        }
+        return model;
+    }
+}
+
+// End SMOSolver.java
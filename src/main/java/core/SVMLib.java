@@ -1,11 +1,18 @@
 package core;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import libsvm.*;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.IOException;
-import java.util.Vector;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -18,6 +25,33 @@ public class SVMLib {
 
     public static boolean DEBUG = false;
 
+    private static final long SEED = 0L;
+
+    private static final double HOLDOUT_RATIO = 0.1d;
+
+    /**
+     * support vectors with |coef| below this share of the largest are dropped by {@link #compress}
+     */
+    private static final double PRUNE_TOLERANCE = 1e-3;
+
+    /**
+     * support vectors closer than this are merged by {@link #compress}
+     */
+    private static final double MERGE_RADIUS = 1e-3;
+
+    /**
+     * linear-kernel regression models collapsed into one weight vector,
+     * keyed by model identity; a hit is read without locking
+     */
+    private static final LoadingCache<svm_model, LinearModel> linearModels
+            = CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(LinearModel::of));
+
+    /**
+     * the svm_nodes {@link #predict} passes to libsvm, reused by each thread while its
+     * samples keep the same number of non-zeros
+     */
+    private static final ThreadLocal<svm_node[]> predictNodes = ThreadLocal.withInitial(() -> new svm_node[0]);
+
     //~ Instance fields --------------------------------------------------------
 
     private LibConfig config  = LibConfig.getInstance();
@@ -26,6 +60,18 @@ public class SVMLib {
 
     public svm_parameter svm_param;
 
+    private LibConfig.Solver solver = LibConfig.Solver.LIBSVM;
+
+    private LibConfig.Precision precision = LibConfig.Precision.DOUBLE;
+
+    /* directory of grid search checkpoints, null to search without them */
+    private String checkpointDir = null;
+
+    /* columns of the data read that the training data kept, null if it was not screened */
+    private int[] columns = null;
+    /* the number of columns of the data read, once it was screened */
+    private int width = 0;
+
     //~ Constructors -----------------------------------------------------------
 
     private SVMLib() {}
@@ -49,17 +95,143 @@ public class SVMLib {
      */
     public SVMLib initDataFromFile(String fileName) {
         this.trainingData = new Data().readDataFromCSVFile(fileName);
+        this.columns = null;
+        this.trainingData.setPrecision(this.precision);
+        return this;
+    }
+
+    /**
+     * init the lib from a csv file with several label columns, "y1,...,yk,x1,...,xn",
+     * for {@link #trainTargets} and {@link #updateParams()}
+     * @param targetNum the number k of label columns
+     * @return this
+     */
+    public SVMLib initDataFromFile(String fileName, int targetNum) {
+        this.trainingData = new Data().readDataFromCSVFile(fileName, targetNum);
+        this.columns = null;
+        this.trainingData.setPrecision(this.precision);
+        return this;
+    }
+
+    /**
+     * init the lib from a file in LIBSVM format, kept as sparse samples
+     * @return this
+     */
+    public SVMLib initDataFromLibsvmFile(String fileName) {
+        this.trainingData = new Data().readDataFromLibsvmFile(fileName);
+        this.columns = null;
+        this.trainingData.setPrecision(this.precision);
         return this;
     }
 
+    /**
+     * init the lib from a binary snapshot written by {@link #exportData}
+     * @return this
+     */
+    public SVMLib initDataFromBinaryFile(String fileName) {
+        this.trainingData = new Data().readDataFromBinaryFile(fileName);
+        this.columns = null;
+        this.trainingData.setPrecision(this.precision);
+        return this;
+    }
+
+    /**
+     * init the lib from several sources joined on a key, e.g. labels and weather by day,
+     * without writing the joined rows to a file first
+     * @param join the sources to join, see {@link FeatureJoin}
+     * @return this
+     */
+    public SVMLib initDataFromJoin(FeatureJoin join) {
+        this.trainingData = new Data().readJoinedData(join);
+        this.columns = null;
+        this.trainingData.setPrecision(this.precision);
+        return this;
+    }
+
+    /**
+     * drop the constant and collinear columns of the training data, and with the wrapper the
+     * least informative columns that subsampled fits do without, see {@link FeatureScreen}
+     * later training sees only the kept columns and returns a {@link ScreenedModel}, which
+     * projects samples with every column of the data read
+     * Fourier, Nystrom, ensemble and online models cannot project samples, so they are
+     * refused once the data was screened
+     * @param wrapper the number of least informative columns the wrapper may drop, 0 to skip it
+     * @return the screening report
+     */
+    public FeatureScreen.Report screenFeatures(int wrapper) {
+        Preconditions.checkNotNull(this.trainingData);
+        long startTime = System.currentTimeMillis();
+        svm_parameter param = null;
+        if (wrapper > 0) {
+            param = (svm_parameter) this.svm_param.clone();
+            if (param.gamma <= 0) {
+                param.gamma = 1.0 / this.trainingData.getFeatureNum();
+            }
+        }
+        FeatureScreen.Report report = new FeatureScreen().setWrapper(wrapper).setSeed(SEED)
+                .screen(this.trainingData.getMatrix("scaled"), this.trainingData.getLabelArray(), param);
+        int[] kept = report.getKept();
+        Preconditions.checkState(kept.length > 0, "every column was dropped, nothing left to train on");
+        if (this.columns == null) {
+            this.width = this.trainingData.getFeatureNum();
+        }
+        this.trainingData = this.trainingData.select(kept);
+        if (this.columns != null) {
+            for (int k = 0; k < kept.length; k++) {
+                kept[k] = this.columns[kept[k]];
+            }
+        }
+        this.columns = kept;
+        System.out.println("Feature screening done in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+        System.out.println(report);
+        return report;
+    }
+
+    /**
+     * attach the columns kept by {@link #screenFeatures(int)} to a model trained afterwards,
+     * so it predicts samples with every column of the data read and saves with its columns
+     * the training methods do so themselves
+     * @param model model trained on the screened training data
+     * @return the model with its columns
+     */
+    public ScreenedModel screened(svm_model model) {
+        Preconditions.checkState(this.columns != null, "the training data was not screened");
+        if (model instanceof ScreenedModel) {
+            return (ScreenedModel) model;
+        }
+        return new ScreenedModel(this.columns, this.width, model);
+    }
+
+    /**
+     * export the training data, e.g. to check it with standalone libsvm
+     * @param fileName file to write
+     * @param type original or scaled
+     * @param format LIBSVM text, csv or binary snapshot
+     * @param gzip whether to gzip the file
+     */
+    @SuppressWarnings("unused")
+    public void exportData(String fileName, String type, LibConfig.Format format, boolean gzip) {
+        this.trainingData.export(fileName, type, format, gzip);
+    }
+
     /**
      * train the data sets
-     * @return a trained model, can be used for validating
+     * @return a trained model, can be used for validating; a {@link ScreenedModel} once the
+     * training data was screened
      */
     @Nullable
     public svm_model train() {
         this.svm_param.gamma = 1.0 / this.trainingData.getSampleNum();
-        return train(this.trainingData);
+        MemoryPlan plan = admit(MemoryPlan.train(this.trainingData,
+                cacheSize(this.svm_param, this.trainingData.getSampleNum()), this.solver, this.precision));
+        if (plan == null) {
+            return null;
+        }
+        svm_parameter param = (svm_parameter) this.svm_param.clone();
+        param.cache_size = plan.getCacheSize();
+        svm_model model = train(this.trainingData, param, plan.getPrecision());
+        reportMemory(plan);
+        return withColumns(model);
     }
 
     /**
@@ -70,6 +242,47 @@ public class SVMLib {
      */
     @Nullable
     private svm_model train(Data data) {
+        return train(data, this.svm_param);
+    }
+
+    /**
+     * models other than svm_models cannot carry the columns kept by {@link #screenFeatures(int)},
+     * trained on the kept columns they would predict full-width samples on the wrong ones
+     * @param model the kind of model to train, for the message
+     */
+    private void checkUnscreened(String model) {
+        Preconditions.checkState(this.columns == null, "%s models take every column, train them before screening", model);
+    }
+
+    /**
+     * @return the model with the columns kept by {@link #screenFeatures(int)}, or as it is
+     * if the training data was not screened
+     */
+    @Nullable
+    private svm_model withColumns(@Nullable svm_model model) {
+        return model == null || this.columns == null ? model : screened(model);
+    }
+
+    /**
+     * train an outer data sets using given parameter
+     * @param data training data sets
+     * @param svm_param parameter to train with
+     * @return a trained model, can be used to validate test data
+     */
+    @Nullable
+    private svm_model train(Data data, svm_parameter svm_param) {
+        return train(data, svm_param, this.precision);
+    }
+
+    /**
+     * train an outer data sets using given parameter in the precision of a job
+     * @param data training data sets
+     * @param svm_param parameter to train with
+     * @param precision precision of the samples and kernel rows of the SMO solver
+     * @return a trained model, can be used to validate test data
+     */
+    @Nullable
+    private svm_model train(Data data, svm_parameter svm_param, LibConfig.Precision precision) {
         Preconditions.checkNotNull(data);
 
         long startTime = System.currentTimeMillis();
@@ -84,9 +297,14 @@ public class SVMLib {
             problem.y[i] = data.getLabels().get(i);
         }
         /* train svm model */
-        String errorMsg = svm.svm_check_parameter(problem, this.svm_param);
+        svm_parameter param = (svm_parameter) svm_param.clone();
+        if (param.cache_size <= 0) {
+            param.cache_size = this.config.adaptiveCacheSize(problem.l,
+                    this.solver == LibConfig.Solver.SMO ? precision : LibConfig.Precision.DOUBLE);
+        }
+        String errorMsg = svm.svm_check_parameter(problem, param);
         if (errorMsg == null) {
-            svm_model model = svm.svm_train(problem, this.svm_param);
+            svm_model model = solve(data, problem, param, precision);
             if (DEBUG) {
                 try {
                     String modelFile = this.config.properties.getProperty("modelFile");
@@ -104,70 +322,633 @@ public class SVMLib {
         }
     }
 
+    /**
+     * train on the training data with duplicate rows collapsed into weighted samples,
+     * see {@link Coreset}
+     * @param resolution rows within the same grid cell of this size are collapsed,
+     *                   0 to collapse exact duplicates of features and label only
+     * @return a trained model, its support vectors are collapsed rows
+     */
+    @Nullable
+    public svm_model trainCollapsed(double resolution) {
+        this.svm_param.gamma = 1.0 / this.trainingData.getSampleNum();
+        SampleMatrix x = this.trainingData.getMatrix("scaled");
+        return withColumns(train(Coreset.collapse(x, this.trainingData.getLabelArray(), resolution)));
+    }
+
+    /**
+     * train on a weighted coreset of at most size rows, see {@link Coreset#of}
+     * @param size the largest number of rows to train on
+     * @return a trained model, its support vectors are collapsed rows
+     */
+    @Nullable
+    public svm_model trainCoreset(int size) {
+        this.svm_param.gamma = 1.0 / this.trainingData.getSampleNum();
+        SampleMatrix x = this.trainingData.getMatrix("scaled");
+        return withColumns(train(Coreset.of(x, this.trainingData.getLabelArray(), size)));
+    }
+
+    /**
+     * train one epsilon-SVR per target of the training data in parallel, see
+     * {@link Data#readDataFromCSVFile(String, int)}
+     * targets whose kernels have the same parameters, e.g. the same gamma, share one kernel
+     * cache, so each kernel row is computed once for all of them; the SMO solver is used
+     * whatever solver is set, since libsvm cannot share its cache
+     * @param params the parameter of each target, or none to train every target with svm_param
+     * @return the model of each target
+     */
+    @Nullable
+    public svm_model[] trainTargets(svm_parameter... params) {
+        Preconditions.checkNotNull(this.trainingData);
+        int targetNum = this.trainingData.getTargetNum();
+        Preconditions.checkArgument(params.length == 0 || params.length == targetNum,
+                "one parameter per target expected");
+        long startTime = System.currentTimeMillis();
+        int sampleNum = this.trainingData.getSampleNum();
+
+        svm_parameter[] targetParams = new svm_parameter[targetNum];
+        List<List<Double>> targetKeys = new ArrayList<>(targetNum);
+        double cacheSize = 0.0d;
+        for (int t = 0; t < targetNum; t++) {
+            svm_parameter param = (svm_parameter) (params.length == 0 ? this.svm_param : params[t]).clone();
+            Preconditions.checkArgument(param.svm_type == svm_parameter.EPSILON_SVR,
+                    "multi-target training needs epsilon-SVR");
+            if (param.gamma <= 0) {
+                param.gamma = 1.0 / sampleNum;
+            }
+            if (param.cache_size <= 0) {
+                param.cache_size = this.config.adaptiveCacheSize(sampleNum, this.precision);
+            }
+            cacheSize = Math.max(cacheSize, param.cache_size);
+            targetParams[t] = param;
+            targetKeys.add(Arrays.asList((double) param.kernel_type, param.gamma, (double) param.degree,
+                    param.coef0));
+        }
+        MemoryPlan plan = admit(MemoryPlan.targets(this.trainingData, cacheSize, this.precision,
+                new HashSet<>(targetKeys).size(), Math.min(targetNum, Runtime.getRuntime().availableProcessors())));
+        if (plan == null) {
+            return null;
+        }
+        // the plan may run this job in single precision
+        LibConfig.Precision precision = plan.getPrecision();
+        SampleMatrix samples = this.trainingData.getMatrix("scaled", precision);
+        Map<List<Double>, KernelMatrix> kernels = new HashMap<>();
+        KernelMatrix[] targetKernels = new KernelMatrix[targetNum];
+        for (int t = 0; t < targetNum; t++) {
+            svm_parameter param = targetParams[t];
+            param.cache_size = Math.min(param.cache_size, plan.getCacheSize());
+            targetKernels[t] = kernels.computeIfAbsent(targetKeys.get(t),
+                    key -> new KernelMatrix(samples, param, precision).share());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(plan.getThreads());
+        try {
+            List<Future<svm_model>> futures = new ArrayList<>(targetNum);
+            for (int t = 0; t < targetNum; t++) {
+                double[] y = this.trainingData.forTarget(t).getLabelArray();
+                KernelMatrix kernel = targetKernels[t];
+                svm_parameter param = targetParams[t];
+                futures.add(pool.submit(() -> new SMOSolver(kernel, y, param).solve(samples)));
+            }
+            svm_model[] models = new svm_model[targetNum];
+            for (int t = 0; t < targetNum; t++) {
+                models[t] = withColumns(futures.get(t).get());
+            }
+            reportMemory(plan);
+            if (DEBUG) {
+                System.out.println("Multi-target train of " + targetNum + " targets on " + kernels.size()
+                        + " kernels finished in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+            }
+            return models;
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Multi-target train failed!");
+            e.printStackTrace();
+            return null;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * train an epsilon-SVR on weighted samples, each with C scaled by its weight
+     * libsvm has no per-instance C, so the SMO solver is used unless the linear solver applies
+     * @param coreset weighted samples
+     * @return a trained model, or null for other svm types
+     */
+    @Nullable
+    private svm_model train(Coreset coreset) {
+        if (this.svm_param.svm_type != svm_parameter.EPSILON_SVR) {
+            System.out.println("weighted training needs epsilon-SVR");
+            return null;
+        }
+        long startTime = System.currentTimeMillis();
+        System.out.println("training samples: " + this.trainingData.getSampleNum() + " -> " + coreset.size()
+                + "; largest move " + coreset.radius
+                + (this.svm_param.kernel_type == svm_parameter.RBF
+                ? "; RBF kernel error <= " + coreset.rbfError(this.svm_param.gamma) : ""));
+        svm_parameter param = (svm_parameter) this.svm_param.clone();
+        if (param.cache_size <= 0) {
+            param.cache_size = this.config.adaptiveCacheSize(coreset.size(), this.precision);
+        }
+        svm_model model;
+        if (this.solver == LibConfig.Solver.LINEAR && param.kernel_type == svm_parameter.LINEAR) {
+            double[] solution = new LinearSVR(param.C, param.p).setWeights(coreset.weights)
+                    .solve(coreset.x, coreset.y);
+            int d = coreset.x.cols();
+            model = new LinearModel(Arrays.copyOf(solution, d), solution[d]).toSvmModel(param);
+        } else {
+            model = new SMOSolver(new KernelMatrix(coreset.x, param, this.precision), coreset.y, param)
+                    .setWeights(coreset.weights).solve(coreset.x);
+            // the indices point into the coreset, not the training data
+            model.sv_indices = null;
+        }
+        if (DEBUG) {
+            System.out.println("Weighted train finished in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+        }
+        return model;
+    }
+
+    /**
+     * run the chosen solver, falling back to libsvm for what it does not support
+     * @param data training data sets
+     * @param problem the same data as an svm_problem
+     * @param param checked svm parameter
+     * @param precision precision of the samples and kernel rows of the SMO solver
+     * @return a trained model
+     */
+    private svm_model solve(Data data, svm_problem problem, svm_parameter param, LibConfig.Precision precision) {
+        boolean svr = param.svm_type == svm_parameter.EPSILON_SVR;
+        switch (this.solver) {
+            case SMO:
+                if (svr) {
+                    SampleMatrix samples = data.getMatrix("scaled", precision);
+                    return new SMOSolver(new KernelMatrix(samples, param, precision), problem.y, param)
+                            .solve(samples);
+                }
+                break;
+            case LINEAR:
+                if (svr && param.kernel_type == svm_parameter.LINEAR) {
+                    SampleMatrix samples = data.getMatrix("scaled");
+                    double[] solution = new LinearSVR(param.C, param.p).solve(samples, problem.y);
+                    return new LinearModel(Arrays.copyOf(solution, samples.cols()), solution[samples.cols()])
+                            .toSvmModel(param);
+                }
+                System.out.println("linear solver needs a linear-kernel epsilon-SVR, training with libsvm");
+                break;
+            case LIBSVM:
+            default:
+        }
+        return svm.svm_train(problem, param);
+    }
+
+    /**
+     * train an approximate RBF model on random Fourier features
+     * the kernel uses the gamma of svm_param, the linear solver its C and p
+     * @param dimension the number of random features D
+     * @return a trained model, predicting in O(D * d)
+     */
+    public FourierModel trainFourier(int dimension) {
+        checkUnscreened("Fourier");
+        if (this.svm_param.gamma <= 0) {
+            this.svm_param.gamma = 1.0 / this.trainingData.getSampleNum();
+        }
+        return trainFourier(this.trainingData, dimension);
+    }
+
+    /**
+     * train a random Fourier model on an outer data sets
+     * @param data training data sets
+     * @param dimension the number of random features D
+     * @return a trained model
+     */
+    private FourierModel trainFourier(Data data, int dimension) {
+        Preconditions.checkNotNull(data);
+        Preconditions.checkArgument(dimension > 0, "dimension <= 0");
+
+        long startTime = System.currentTimeMillis();
+        FourierFeatures features = new FourierFeatures(data.getFeatureNum(), dimension, this.svm_param.gamma, SEED);
+        SampleMatrix z = features.transform(data.getMatrix("scaled"));
+        double[] solution = new LinearSVR(this.svm_param.C, this.svm_param.p).solve(z, data.getLabelArray());
+        if (DEBUG) {
+            System.out.println("Fourier train finished in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+        }
+        return new FourierModel(features, solution);
+    }
+
+    /**
+     * train a kernel model on an m-dimensional Nystrom feature map
+     * the kernel is taken from svm_param, the linear solver uses its C and p
+     * @param m the number of landmarks
+     * @param sampling how the landmarks are picked, see {@link LibConfig.Landmarks}
+     * @return a trained model, predicting in O(m * d)
+     */
+    public NystromModel trainNystrom(int m, LibConfig.Landmarks sampling) {
+        Preconditions.checkNotNull(this.trainingData);
+        checkUnscreened("Nystrom");
+        if (this.svm_param.gamma <= 0) {
+            this.svm_param.gamma = 1.0 / this.trainingData.getSampleNum();
+        }
+
+        long startTime = System.currentTimeMillis();
+        SampleMatrix x = this.trainingData.getMatrix("scaled");
+        int[] landmarks = NystromFeatures.selectLandmarks(x, m, sampling, this.svm_param, SEED);
+        NystromFeatures features = new NystromFeatures(x, landmarks, this.svm_param);
+        double[] solution = new LinearSVR(this.svm_param.C, this.svm_param.p)
+                .solve(features.transform(x), this.trainingData.getLabelArray());
+        if (DEBUG) {
+            System.out.println("Nystrom train finished in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+        }
+        return new NystromModel(features, solution);
+    }
+
+    /**
+     * train k epsilon-SVR models on k subsets of the training data in parallel, see {@link EnsembleSVR}
+     * the models use the kernel, C and p of svm_param and the precision of this lib
+     * @param k number of subsets
+     * @param partition how to split the training data, see {@link LibConfig.Partition}
+     * @return the ensemble
+     */
+    public EnsembleSVR trainEnsemble(int k, LibConfig.Partition partition) {
+        Preconditions.checkNotNull(this.trainingData);
+        checkUnscreened("ensemble");
+        if (this.svm_param.gamma <= 0) {
+            this.svm_param.gamma = 1.0 / this.trainingData.getSampleNum();
+        }
+        long startTime = System.currentTimeMillis();
+        EnsembleSVR ensemble = EnsembleSVR.train(this.trainingData.getMatrix("scaled"),
+                this.trainingData.getLabelArray(), this.svm_param, k, partition, this.precision, SEED);
+        if (DEBUG) {
+            System.out.println("Ensemble train finished in " + (System.currentTimeMillis() - startTime) / 1000.0
+                    + " seconds, nSV = " + ensemble.getSupportVectorNum());
+        }
+        return ensemble;
+    }
+
+    /**
+     * continue training a model online, see {@link OnlineSVR}
+     * @param model an epsilon-SVR model trained on the training data, whose samples are in time order
+     * @param window the largest number of latest samples to keep
+     * @return an online model that can be updated with {@link #update}
+     */
+    public OnlineSVR online(svm_model model, int window) {
+        Preconditions.checkNotNull(this.trainingData);
+        Preconditions.checkArgument(!(model instanceof ScreenedModel), "online models take every column");
+        checkUnscreened("online");
+        return OnlineSVR.of(model, this.trainingData.getMatrix("scaled"), this.trainingData.getLabelArray(), window);
+    }
+
+    /**
+     * update an online model with a new batch of labelled samples
+     * @param model the model to update
+     * @param fileName csv file of the new samples
+     * @param scaleParam scale param of the training data, null if it was not scaled
+     * @return the updated model
+     */
+    public OnlineSVR update(OnlineSVR model, String fileName, @Nullable double[][] scaleParam) {
+        Data batch = new Data().readDataFromCSVFile(fileName);
+        if (scaleParam != null) {
+            batch.scaleTestData(scaleParam);
+        }
+        return model.update(batch.getMatrix("scaled"), batch.getLabelArray());
+    }
+
+    /**
+     * compare random Fourier models of several dimensions against the exact model
+     * all models are trained on the first 90% of the training data and tested on the rest
+     * @param dimensions the numbers of random features to try
+     * @return one row of {D, rmse, train seconds} per model, the exact model first with D = 0
+     */
+    @SuppressWarnings("unused")
+    public double[][] fourierReport(int... dimensions) {
+        if (this.svm_param.gamma <= 0) {
+            this.svm_param.gamma = 1.0 / this.trainingData.getSampleNum();
+        }
+        Data[] split = holdout(this.trainingData);
+        SampleMatrix test = split[1].getMatrix("scaled");
+        double[] testLabels = split[1].getLabelArray();
+        double[][] report = new double[dimensions.length + 1][];
+
+        long startTime = System.currentTimeMillis();
+        svm_model exact = train(split[0]);
+        double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        double[] predictions = new double[test.rows()];
+        for (int i = 0; i < test.rows(); i++) {
+            predictions[i] = exact == null ? Double.NaN : svm.svm_predict(exact, test.toNodes(i));
+        }
+        report[0] = new double[]{0, rmse(predictions, testLabels), seconds};
+        System.out.println("exact: rmse " + report[0][1] + "; train " + seconds + " seconds");
+
+        for (int t = 0; t < dimensions.length; t++) {
+            startTime = System.currentTimeMillis();
+            FourierModel model = trainFourier(split[0], dimensions[t]);
+            seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+            double[] sample = new double[test.cols()];
+            for (int i = 0; i < test.rows(); i++) {
+                test.copyRow(i, sample);
+                predictions[i] = model.predict(sample);
+            }
+            report[t + 1] = new double[]{dimensions[t], rmse(predictions, testLabels), seconds};
+            System.out.println("D = " + dimensions[t] + ": rmse " + report[t + 1][1] + "; train " + seconds + " seconds");
+        }
+        return report;
+    }
+
+    /**
+     * compress a regression model for faster prediction: support vectors with negligible
+     * coefficients are removed, near-duplicates are merged, and if the model is still over
+     * budget a reduced set of support vectors is fitted to it
+     * the accuracy cost is printed for a holdout set, or for the training data without one
+     * @param model a trained epsilon-SVR or nu-SVR model
+     * @param budget the largest number of support vectors to keep
+     * @param holdoutFile labelled csv file to report on, null to report on the training data
+     * @param scaleParam scale param of the training data, null if it was not scaled
+     * @return the compressed model
+     */
+    public svm_model compress(svm_model model, int budget, @Nullable String holdoutFile,
+                              @Nullable double[][] scaleParam) {
+        Preconditions.checkArgument(model.param.svm_type == svm_parameter.EPSILON_SVR
+                || model.param.svm_type == svm_parameter.NU_SVR, "only regression models can be compressed");
+
+        if (model instanceof ScreenedModel) {
+            ScreenedModel screened = (ScreenedModel) model;
+            svm_model compressed = compress(screened.getModel(), budget, holdoutFile, scaleParam, screened);
+            return new ScreenedModel(screened.getColumns(), screened.getWidth(), compressed);
+        }
+        return compress(model, budget, holdoutFile, scaleParam, null);
+    }
+
+    /**
+     * @param screened the model with the columns of the model to compress, null if it takes every column
+     */
+    private svm_model compress(svm_model model, int budget, @Nullable String holdoutFile,
+                               @Nullable double[][] scaleParam, @Nullable ScreenedModel screened) {
+        long startTime = System.currentTimeMillis();
+        svm_model compressed = ModelCompressor.prune(model, PRUNE_TOLERANCE);
+        compressed = ModelCompressor.merge(compressed, MERGE_RADIUS);
+        compressed = ModelCompressor.reduce(compressed, budget);
+        System.out.println("Compression done in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+        System.out.println("support vectors: " + model.l + " -> " + compressed.l);
+
+        Data holdout = this.trainingData;
+        if (holdoutFile != null) {
+            holdout = new Data().readDataFromCSVFile(holdoutFile);
+            if (scaleParam != null) {
+                holdout.scaleTestData(scaleParam);
+            }
+            if (screened != null) {
+                holdout = holdout.select(screened.getColumns());
+            }
+        }
+        double[] report = ModelCompressor.report(model, compressed,
+                holdout.getMatrix("scaled"), holdout.getLabelArray());
+        System.out.println((holdoutFile == null ? "training" : "holdout") + " rmse: " + report[0] + " -> "
+                + report[1] + "; rmse between models: " + report[2]);
+        return compressed;
+    }
+
+    /**
+     * compile a regression model for fast prediction in the precision of this lib,
+     * see {@link KernelModel}
+     * @param model an epsilon-SVR or nu-SVR model
+     * @return the compiled model
+     */
+    public Regressor compile(svm_model model) {
+        if (model instanceof ScreenedModel) {
+            ScreenedModel screened = (ScreenedModel) model;
+            return screened.compile(KernelModel.of(screened.getModel(), this.precision));
+        }
+        return KernelModel.of(model, this.precision);
+    }
+
+    /**
+     * save a model that is not a plain svm_model, e.g. {@link NystromModel}
+     * @param model the model to save
+     * @param fileName file to save to
+     */
+    public static void saveModel(Regressor model, String fileName) {
+        try (FileOutputStream fos = new FileOutputStream(fileName);
+             ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos))) {
+            oos.writeObject(model);
+        } catch (IOException e) {
+            System.out.println("Model save failed!");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * load a model saved by {@link #saveModel(Regressor, String)}
+     * @param fileName file to load from
+     * @return the model, or null if it cannot be read
+     */
+    @Nullable
+    public static Regressor loadModel(String fileName) {
+        try (FileInputStream fis = new FileInputStream(fileName);
+             ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(fis))) {
+            return (Regressor) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            System.out.println("Model load failed!");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * warm up the prediction and parsing paths for a loaded model before it takes traffic,
+     * see {@link Warmup}
+     * @param model svm model to be served
+     * @param scaleParam scale param of the training data, null if it was not scaled
+     * @return the latency before and after the warm-up; the model is ready if {@link Warmup.Report#isReady()}
+     */
+    public static Warmup.Report warmUp(svm_model model, @Nullable double[][] scaleParam) {
+        Warmup.Report report = Warmup.of(model).setScaleParam(scaleParam).run();
+        System.out.println("Warm-up finished: " + report);
+        return report;
+    }
+
+    /**
+     * predict every row of a csv test file on all cores and write "label,prediction" lines
+     * in the order of the file
+     * @param model svm model trained by training data
+     * @param fileName csv test file, label first
+     * @param resultFile file to write the predictions to, null to only compute the errors
+     * @param scaleParam scale param of the training data, null if it was not scaled
+     * @return the errors of the predictions, or null if the test failed
+     */
+    @Nullable
+    public static BatchScorer.Report test(svm_model model, String fileName, @Nullable String resultFile,
+                                          @Nullable double[][] scaleParam) {
+        long startTime = System.currentTimeMillis();
+        BatchScorer scorer = BatchScorer.of(model);
+        if (scaleParam != null) {
+            scorer.setScaleParam(scaleParam);
+        }
+        try {
+            BatchScorer.Report report = scorer.score(fileName, resultFile);
+            System.out.println("Test finished in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+            System.out.println(report);
+            return report;
+        } catch (IOException e) {
+            System.out.println("Test failed!");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * predict a sample's label according to the given model
+     * linear-kernel regression models are collapsed into w and b on first use,
+     * so each prediction is a single dot product
      * @param sample new sample to be predicted
      * @param model svm model trained by training data
      * @return the predicted label of this sample
      */
     public static double predict(double[] sample, svm_model model) {
-        svm_node[] svm_sample = new svm_node[sample.length];
-        for (int i = 0; i < sample.length; i++) {
-            svm_sample[i] = new svm_node();
-            svm_sample[i].index = i;
-            svm_sample[i].value = sample[i];
+        if (model instanceof ScreenedModel) {
+            return ((ScreenedModel) model).predict(sample);
+        }
+        if (model.param.kernel_type == svm_parameter.LINEAR
+                && (model.param.svm_type == svm_parameter.EPSILON_SVR || model.param.svm_type == svm_parameter.NU_SVR)) {
+            // the model must not be modified after its first prediction
+            return linearModels.getUnchecked(model).predict(sample);
+        }
+        // libsvm treats missing indices as zeros, so only non-zeros are passed
+        int nonZeros = 0;
+        for (double value : sample) {
+            if (value != 0) {
+                nonZeros++;
+            }
+        }
+        svm_node[] svm_sample = predictNodes.get();
+        if (svm_sample.length != nonZeros) {
+            // libsvm reads the sample up to its length, so only the nodes are kept
+            svm_node[] nodes = Arrays.copyOf(svm_sample, nonZeros);
+            for (int k = svm_sample.length; k < nonZeros; k++) {
+                nodes[k] = new svm_node();
+            }
+            predictNodes.set(svm_sample = nodes);
+        }
+        for (int i = 0, k = 0; i < sample.length; i++) {
+            if (sample[i] != 0) {
+                svm_sample[k].index = i + 1;
+                svm_sample[k].value = sample[i];
+                k++;
+            }
         }
         return svm.svm_predict(model, svm_sample);
     }
 
     /**
-     * do cross validation on given dataset and given parameter
+     * do cross validation on given dataset for several C at one gamma: every C is trained
+     * on each training fold and all of them are validated against one shared kernel block,
+     * see {@link ValidationKernel}
+     * @param data dataset to validate on
+     * @param param parameter to train with, its C is ignored
+     * @param cs the C of each candidate
      * @param fold_n the number of folds
-     * @return the 'loss' of the prediction
+     * @param checkpoint finished folds to skip, receives the folds run now; null to run all folds
+     * @param precision precision of the job
+     * @return the 'loss' of each candidate, NaN for candidates that failed to train
      */
-    private double crossValidation(int fold_n) {
-        double totalDiff = 0.0d;
+    private double[] crossValidation(Data data, svm_parameter param, double[] cs, int fold_n,
+                                     @Nullable SearchCheckpoint checkpoint, LibConfig.Precision precision) {
+        int sampleNum = data.getSampleNum();
+        double[] totalDiff = new double[cs.length];
         for (int i = 0; i < fold_n; i++) {
-            Vector<svm_node[]> trainSet = new Vector<>();
-            Vector<svm_node[]> validSet = new Vector<>();
-            Vector<Double> trainLabels = new Vector<>();
-            Vector<Double> validLabels = new Vector<>();
-
-            int vsLen = this.trainingData.getSampleNum() / fold_n;
-            int vsStart = i * vsLen;
-            int vsEnd = (i + 1) * vsLen;
-
-            for (int j = 0; j < vsStart; j++) {
-                trainSet.add(this.trainingData.getDataSet("scaled").get(j));
-                trainLabels.add(this.trainingData.getLabels().get(j));
-            }
-            for (int j = vsStart; j < vsEnd; j++) {
-                validSet.add(this.trainingData.getDataSet("scaled").get(j));
-                validLabels.add(this.trainingData.getLabels().get(j));
-            }
-            for (int j = vsEnd; j < this.trainingData.getSampleNum(); j++) {
-                trainSet.add(this.trainingData.getDataSet("scaled").get(j));
-                trainLabels.add(this.trainingData.getLabels().get(j));
-            }
-
-            Data trainData = new Data(trainSet, trainLabels);
-            svm_model model = train(trainData);
-            if (model != null) {
-                double diff = 0.0d;
-                for (int j = 0; j < validSet.size(); j++) {
-                    svm_node[] sample = validSet.get(i);
-                    double real_label = validLabels.get(i);
-                    double predict_label = svm.svm_predict(model, sample);
-                    diff += Math.pow((predict_label - real_label), 2);
+            List<Integer> todo = new ArrayList<>();
+            for (int k = 0; k < cs.length; k++) {
+                Double done = checkpoint == null ? null : checkpoint.get(cs[k], param.gamma, i);
+                if (done != null) {
+                    totalDiff[k] += done;
+                } else {
+                    todo.add(k);
+                }
+            }
+            if (todo.isEmpty()) {
+                continue;
+            }
+
+            double[] todoCs = new double[todo.size()];
+            for (int m = 0; m < todoCs.length; m++) {
+                todoCs[m] = cs[todo.get(m)];
+            }
+            double[] diff = crossValidationFold(data, param, todoCs, i, fold_n, precision);
+            for (int m = 0; m < todo.size(); m++) {
+                int k = todo.get(m);
+                if (checkpoint != null && !Double.isNaN(diff[m])) {
+                    checkpoint.record(cs[k], param.gamma, i, diff[m]);
                 }
-                totalDiff += diff;
+                totalDiff[k] += diff[m];
             }
         }
-        return totalDiff / this.trainingData.getSampleNum();
+        for (int k = 0; k < cs.length; k++) {
+            totalDiff[k] /= sampleNum;
+        }
+        return totalDiff;
+    }
+
+    /**
+     * run one fold of {@link #crossValidation}: every C is trained on the training part
+     * and validated against one shared kernel block
+     * @param data dataset to validate on
+     * @param param parameter to train with, its C is ignored
+     * @param cs the C of each candidate
+     * @param i the fold
+     * @param fold_n the number of folds
+     * @param precision precision of the job
+     * @return the summed 'loss' of each candidate over the validation part, NaN for
+     * candidates that failed to train
+     */
+    double[] crossValidationFold(Data data, svm_parameter param, double[] cs, int i, int fold_n,
+                                 LibConfig.Precision precision) {
+        int sampleNum = data.getSampleNum();
+        int[] trainRows = new int[sampleNum - sampleNum / fold_n];
+        int[] validRows = new int[sampleNum / fold_n];
+        Data trainData = fold(data, i, fold_n, trainRows, validRows, precision);
+        List<svm_model> models = new ArrayList<>(cs.length);
+        for (double c : cs) {
+            svm_parameter candidate = (svm_parameter) param.clone();
+            candidate.C = c;
+            models.add(train(trainData, candidate, precision));
+        }
+        return ValidationKernel.losses(data.getMatrix("scaled"), data.getLabelArray(), trainRows, validRows, models);
+    }
+
+    /**
+     * split data into the training and validation part of a cross validation fold
+     * @param data dataset to validate on
+     * @param i the fold
+     * @param fold_n the number of folds
+     * @param trainRows receives the rows of the training part, n - n / fold_n of them
+     * @param validRows receives the rows of the validation part, n / fold_n of them
+     * @param precision precision of the job
+     * @return the training part in the precision of the job
+     */
+    private Data fold(Data data, int i, int fold_n, int[] trainRows, int[] validRows,
+                      LibConfig.Precision precision) {
+        int sampleNum = data.getSampleNum();
+        int vsLen = sampleNum / fold_n;
+        int vsStart = i * vsLen;
+        int vsEnd = (i + 1) * vsLen;
+        Vector<svm_node[]> trainSet = new Vector<>(trainRows.length);
+        Vector<Double> trainLabels = new Vector<>(trainRows.length);
+        for (int j = 0, t = 0; j < sampleNum; j++) {
+            if (j >= vsStart && j < vsEnd) {
+                validRows[j - vsStart] = j;
+            } else {
+                trainRows[t++] = j;
+                trainSet.add(data.getDataSet("scaled").get(j));
+                trainLabels.add(data.getLabels().get(j));
+            }
+        }
+        Data trainData = new Data(trainSet, trainLabels);
+        trainData.setPrecision(precision);
+        return trainData;
     }
 
     /**
      * use grid search to optimize svm_parameter
+     * with a checkpoint directory set, finished folds are recorded there and reused by
+     * later searches over the same data and parameters, see {@link #setCheckpointDir}
      * @return the optimized svm_parameter
      */
     @SuppressWarnings("unused")
@@ -176,41 +957,434 @@ public class SVMLib {
         svm_print_interface print_func = this.config.svm_print_null;
         svm.svm_set_print_string_function(print_func);
 
-        double bestC = 1.0d;
-        double bestG = 1.0 / this.trainingData.getSampleNum();
-        double smallestDiff = Double.MAX_VALUE;
+        int sampleNum = this.trainingData.getSampleNum();
+        MemoryPlan plan = admit(MemoryPlan.tune(this.trainingData, cacheSize(this.svm_param, sampleNum - sampleNum / 10),
+                this.solver, this.precision, candidates(grid(sampleNum)), 10, 1));
+        if (plan == null) {
+            return this.svm_param;
+        }
+        LibConfig.Precision precision = plan.getPrecision();
+        SearchCheckpoint checkpoint = openCheckpoint(this.trainingData, this.svm_param, this.solver, precision);
+        double cacheSize = this.svm_param.cache_size;
+        this.svm_param.cache_size = plan.getCacheSize();
+        double smallestDiff;
+        try {
+            smallestDiff = gridSearch(this.trainingData, this.svm_param, checkpoint, precision);
+        } finally {
+            this.svm_param.cache_size = cacheSize;
+            closeCheckpoint(checkpoint);
+        }
+        reportMemory(plan);
+        System.out.println("best C: " + this.svm_param.C + "; best gamma: " + this.svm_param.gamma + "; best diff: " + smallestDiff);
+        return this.svm_param;
+    }
 
-        for (int power_of_c = -8; power_of_c < 8; power_of_c += 1) {
-            this.svm_param.C = Math.pow(2, power_of_c);
+    /**
+     * grid search over C and gamma by 10-fold cross validation
+     * @param data dataset to validate on
+     * @param param parameter to search, receives the best C and gamma
+     * @param checkpoint finished folds to skip, null to run every fold
+     * @param precision precision of the job
+     * @return the smallest cross validation loss
+     */
+    private double gridSearch(Data data, svm_parameter param, @Nullable SearchCheckpoint checkpoint,
+                              LibConfig.Precision precision) {
+        List<double[]> grid = grid(data.getSampleNum());
+        double[] losses = new double[grid.size()];
+        for (Map.Entry<Double, List<Integer>> entry : byGamma(grid).entrySet()) {
+            long startTime = System.currentTimeMillis();
+            List<Integer> points = entry.getValue();
+            double[] cs = cs(grid, points);
+            param.gamma = entry.getKey();
+            double[] diff = crossValidation(data, param, cs, 10, checkpoint, precision);
+            for (int k = 0; k < cs.length; k++) {
+                losses[points.get(k)] = diff[k];
+            }
+            if (DEBUG) {
+                System.out.println("gamma " + param.gamma + " done in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+            }
+        }
+        return best(grid, losses, data.getSampleNum(), param, checkpoint);
+    }
 
-            // check if default g gives better result
-            this.svm_param.gamma = 1.0 / this.trainingData.getSampleNum();
-            double diff = crossValidation(10);
+    /**
+     * pick the grid point with the smallest cross validation loss
+     * @param grid the grid searched
+     * @param losses the loss of each grid point
+     * @param sampleNum number of training samples
+     * @param param receives the best C and gamma
+     * @param checkpoint receives the best point too, may be null
+     * @return the smallest loss
+     */
+    private static double best(List<double[]> grid, double[] losses, int sampleNum, svm_parameter param,
+                               @Nullable SearchCheckpoint checkpoint) {
+        double bestC = 1.0d;
+        double bestG = 1.0 / sampleNum;
+        double smallestDiff = Double.MAX_VALUE;
+        for (int p = 0; p < grid.size(); p++) {
+            double diff = losses[p];
+            // NaN from failed candidates never compares smaller
             if ((diff < smallestDiff)) {
                 smallestDiff = diff;
-                bestC = this.svm_param.C;
-                bestG = this.svm_param.gamma;
+                bestC = grid.get(p)[0];
+                bestG = grid.get(p)[1];
                 System.out.println("best c: " + bestC + "; best g: " + bestG + "; diff: " + diff);
             }
+        }
+        if (checkpoint != null) {
+            checkpoint.best(bestC, bestG, smallestDiff);
+        }
+        param.C = bestC;
+        param.gamma = bestG;
+        return smallestDiff;
+    }
 
+    /**
+     * the (C, gamma) candidates of the grid search in search order,
+     * each C with the default gamma 1 / n first
+     * @param sampleNum number of training samples
+     * @return the candidates
+     */
+    private static List<double[]> grid(int sampleNum) {
+        List<double[]> grid = new ArrayList<>();
+        for (int power_of_c = -8; power_of_c < 8; power_of_c += 1) {
+            // check if default g gives better result
+            grid.add(new double[]{Math.pow(2, power_of_c), 1.0 / sampleNum});
             for (int power_of_g = -8; power_of_g < 8; power_of_g += 1) {
-                this.svm_param.gamma = Math.pow(2, power_of_g);
-                diff = crossValidation(10);
-
-                if ((diff < smallestDiff)) {
-                    smallestDiff = diff;
-                    bestC = this.svm_param.C;
-                    bestG = this.svm_param.gamma;
-                    System.out.println("best c: " + bestC + "; best g: " + bestG + "; diff: " + diff);
+                grid.add(new double[]{Math.pow(2, power_of_c), Math.pow(2, power_of_g)});
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * the candidates sharing a gamma are cross validated together
+     * @return the grid points of each gamma in search order
+     */
+    private static Map<Double, List<Integer>> byGamma(List<double[]> grid) {
+        Map<Double, List<Integer>> byGamma = new LinkedHashMap<>();
+        for (int p = 0; p < grid.size(); p++) {
+            byGamma.computeIfAbsent(grid.get(p)[1], g -> new ArrayList<>()).add(p);
+        }
+        return byGamma;
+    }
+
+    /**
+     * @return the C of each grid point
+     */
+    private static double[] cs(List<double[]> grid, List<Integer> points) {
+        double[] cs = new double[points.size()];
+        for (int k = 0; k < cs.length; k++) {
+            cs[k] = grid.get(points.get(k))[0];
+        }
+        return cs;
+    }
+
+    /**
+     * @return the number of C values validated together at each gamma of a grid
+     */
+    private static int candidates(List<double[]> grid) {
+        return (int) grid.stream().mapToDouble(point -> point[0]).distinct().count();
+    }
+
+    /**
+     * @param l number of training samples
+     * @return the kernel cache a training run with param uses, in MB
+     */
+    private double cacheSize(svm_parameter param, int l) {
+        return param.cache_size > 0 ? param.cache_size : this.config.adaptiveCacheSize(l,
+                this.solver == LibConfig.Solver.LIBSVM ? LibConfig.Precision.DOUBLE : this.precision);
+    }
+
+    /**
+     * fit a job into the memory budget, see {@link MemoryPlan}
+     * the job runs in the plan's precision, which may be single where this lib's is double;
+     * it is passed down to the job's matrices and kernels, the lib and its data keep theirs
+     * @param plan the job as requested
+     * @return the plan to run the job with, or null if it cannot fit
+     */
+    @Nullable
+    private MemoryPlan admit(MemoryPlan plan) {
+        String requested = plan.toString();
+        long budget = MemoryPlan.budget(this.config);
+        if (!plan.admit(budget)) {
+            System.out.println("Memory admission failed! " + plan + " exceeds the budget of "
+                    + budget / (1 << 20) + " MB");
+            return null;
+        }
+        if (!plan.toString().equals(requested)) {
+            System.out.println("Fitting the memory budget of " + budget / (1 << 20) + " MB: " + requested
+                    + " -> " + plan);
+        }
+        MemoryPlan.resetPeak();
+        return plan;
+    }
+
+    private static void reportMemory(MemoryPlan plan) {
+        System.out.println("Memory: " + plan + "; peak used " + MemoryPlan.peakUsed() / (1 << 20) + " MB");
+    }
+
+    /**
+     * @return the checkpoint of a search over data, or null if none is set or it cannot be opened
+     */
+    @Nullable
+    private SearchCheckpoint openCheckpoint(Data data, svm_parameter param, LibConfig.Solver solver,
+                                            LibConfig.Precision precision) {
+        if (this.checkpointDir == null) {
+            return null;
+        }
+        String fingerprint = SearchCheckpoint.fingerprint(data, param, grid(data.getSampleNum()), 10,
+                solver, precision);
+        try {
+            return SearchCheckpoint.open(new File(this.checkpointDir), fingerprint);
+        } catch (IOException e) {
+            System.out.println("Checkpoint open failed! searching without it");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void closeCheckpoint(@Nullable SearchCheckpoint checkpoint) {
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            checkpoint.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * grid search every target of the training data, see {@link Data#readDataFromCSVFile(String, int)}
+     * the features are shared, so they are read and scaled only once, and the targets are
+     * cross validated together: each fold of each gamma has one kernel cache shared by the
+     * C candidates of every target, trained in parallel, and all of them are validated
+     * against one kernel block, see {@link ValidationKernel}; the SMO solver is used
+     * whatever solver is set, since libsvm cannot share its cache
+     * @return the optimized svm_parameter of each target
+     */
+    @Nullable
+    public svm_parameter[] updateParams() {
+        Preconditions.checkNotNull(this.trainingData);
+        long startTime = System.currentTimeMillis();
+        // build the scaled samples once, before the targets share them
+        this.trainingData.getDataSet("scaled");
+        int targetNum = this.trainingData.getTargetNum();
+        int sampleNum = this.trainingData.getSampleNum();
+        int folds = 10;
+        List<double[]> grid = grid(sampleNum);
+        MemoryPlan plan = admit(MemoryPlan.tuneTargets(this.trainingData,
+                cacheSize(this.svm_param, sampleNum - sampleNum / folds), this.precision,
+                candidates(grid) * targetNum, folds, Runtime.getRuntime().availableProcessors()));
+        if (plan == null) {
+            return null;
+        }
+        LibConfig.Precision precision = plan.getPrecision();
+        svm_parameter[] params = new svm_parameter[targetNum];
+        double[][] ys = new double[targetNum][];
+        SearchCheckpoint[] checkpoints = new SearchCheckpoint[targetNum];
+        for (int t = 0; t < targetNum; t++) {
+            Data data = this.trainingData.forTarget(t);
+            params[t] = (svm_parameter) this.svm_param.clone();
+            params[t].cache_size = plan.getCacheSize();
+            ys[t] = data.getLabelArray();
+            checkpoints[t] = openCheckpoint(data, params[t], LibConfig.Solver.SMO, precision);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(plan.getThreads());
+        try {
+            SampleMatrix x = this.trainingData.getMatrix("scaled");
+            double[][] losses = new double[targetNum][grid.size()];
+            for (Map.Entry<Double, List<Integer>> entry : byGamma(grid).entrySet()) {
+                double gamma = entry.getKey();
+                List<Integer> points = entry.getValue();
+                double[] cs = cs(grid, points);
+                for (int i = 0; i < folds; i++) {
+                    int[] trainRows = new int[sampleNum - sampleNum / folds];
+                    int[] validRows = new int[sampleNum / folds];
+                    Data trainData = null;
+                    KernelMatrix kernel = null;
+                    List<int[]> todo = new ArrayList<>();
+                    List<double[]> labels = new ArrayList<>();
+                    List<Future<svm_model>> futures = new ArrayList<>();
+                    for (int t = 0; t < targetNum; t++) {
+                        double[] y = null;
+                        for (int k = 0; k < cs.length; k++) {
+                            Double done = checkpoints[t] == null ? null : checkpoints[t].get(cs[k], gamma, i);
+                            if (done != null) {
+                                losses[t][points.get(k)] += done;
+                                continue;
+                            }
+                            if (trainData == null) {
+                                trainData = fold(this.trainingData, i, folds, trainRows, validRows, precision);
+                                svm_parameter param = (svm_parameter) params[t].clone();
+                                param.gamma = gamma;
+                                kernel = new KernelMatrix(trainData.getMatrix("scaled"), param, precision).share();
+                            }
+                            if (y == null) {
+                                y = new double[trainRows.length];
+                                for (int j = 0; j < y.length; j++) {
+                                    y[j] = ys[t][trainRows[j]];
+                                }
+                            }
+                            svm_parameter candidate = (svm_parameter) params[t].clone();
+                            candidate.C = cs[k];
+                            candidate.gamma = gamma;
+                            SampleMatrix samples = trainData.getMatrix("scaled");
+                            KernelMatrix shared = kernel;
+                            double[] trainLabels = y;
+                            futures.add(pool.submit(() -> new SMOSolver(shared, trainLabels, candidate).solve(samples)));
+                            todo.add(new int[]{t, k});
+                            labels.add(ys[t]);
+                        }
+                    }
+                    if (futures.isEmpty()) {
+                        continue;
+                    }
+                    List<svm_model> models = new ArrayList<>(futures.size());
+                    for (Future<svm_model> future : futures) {
+                        models.add(future.get());
+                    }
+                    double[] diff = ValidationKernel.losses(x, labels, trainRows, validRows, models);
+                    for (int m = 0; m < todo.size(); m++) {
+                        int t = todo.get(m)[0], k = todo.get(m)[1];
+                        if (checkpoints[t] != null && !Double.isNaN(diff[m])) {
+                            checkpoints[t].record(cs[k], gamma, i, diff[m]);
+                        }
+                        losses[t][points.get(k)] += diff[m];
+                    }
+                }
+            }
+            for (int t = 0; t < targetNum; t++) {
+                for (int p = 0; p < grid.size(); p++) {
+                    losses[t][p] /= sampleNum;
                 }
+                best(grid, losses[t], sampleNum, params[t], checkpoints[t]);
+                System.out.println("target " + t + ": best C: " + params[t].C + "; best gamma: " + params[t].gamma);
+            }
+            reportMemory(plan);
+            if (DEBUG) {
+                System.out.println("Multi-target grid search of " + targetNum + " targets finished in "
+                        + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+            }
+            return params;
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Multi-target grid search failed!");
+            e.printStackTrace();
+            return null;
+        } finally {
+            pool.shutdownNow();
+            for (SearchCheckpoint checkpoint : checkpoints) {
+                closeCheckpoint(checkpoint);
+            }
+        }
+    }
+
+    /**
+     * grid search like {@link #updateParam()}, with the cross validation folds run by
+     * worker JVMs on this machine, see {@link GridSearchCoordinator}
+     * the scaled training data is written to a temporary snapshot that the workers map
+     * @param workers number of worker processes
+     * @param jvmArgs extra JVM arguments of the workers, e.g. -Xmx2g
+     * @return the optimized svm_parameter
+     */
+    @SuppressWarnings("unused")
+    public svm_parameter updateParam(int workers, String... jvmArgs) {
+        Preconditions.checkArgument(workers > 0, "workers <= 0");
+        int folds = 10;
+        int sampleNum = this.trainingData.getSampleNum();
+        List<double[]> grid = grid(sampleNum);
+        // the workers train epsilon-SVR with the SMO solver and everything else with libsvm
+        SearchCheckpoint checkpoint = openCheckpoint(this.trainingData, this.svm_param,
+                this.svm_param.svm_type == svm_parameter.EPSILON_SVR ? LibConfig.Solver.SMO : LibConfig.Solver.LIBSVM,
+                this.precision);
+
+        File snapshot = null;
+        double[] losses = new double[grid.size() * folds];
+        // positions in losses of the folds left to run
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < losses.length; slot++) {
+            double[] point = grid.get(slot / folds);
+            Double done = checkpoint == null ? null : checkpoint.get(point[0], point[1], slot % folds);
+            if (done != null) {
+                losses[slot] = done;
+            } else {
+                slots.add(slot);
             }
         }
-        this.svm_param.C = bestC;
-        this.svm_param.gamma = bestG;
+        try (GridSearchCoordinator coordinator = new GridSearchCoordinator()) {
+            if (!slots.isEmpty()) {
+                snapshot = File.createTempFile("svmlib", ".bin");
+                // written directly, so a failed export fails the search instead of every task
+                new DataExporter(this.trainingData.getMatrix("scaled"), this.trainingData.getLabelArray())
+                        .write(snapshot.getPath(), LibConfig.Format.BINARY, false);
+                List<GridSearchCoordinator.Task> tasks = new ArrayList<>();
+                for (int slot : slots) {
+                    svm_parameter param = (svm_parameter) this.svm_param.clone();
+                    param.C = grid.get(slot / folds)[0];
+                    param.gamma = grid.get(slot / folds)[1];
+                    tasks.add(new GridSearchCoordinator.Task(tasks.size(), snapshot.getPath(), param, slot % folds, folds));
+                }
+                coordinator.launch(workers, jvmArgs);
+                // failed tasks are not recorded and run again by the next search
+                double[] results = coordinator.run(tasks, checkpoint == null ? null
+                        : (task, loss) -> checkpoint.record(task.param.C, task.param.gamma, task.fold, loss));
+                for (GridSearchCoordinator.Task task : tasks) {
+                    losses[slots.get(task.id)] = results[task.id];
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Grid search failed!");
+            e.printStackTrace();
+            closeCheckpoint(checkpoint);
+            return this.svm_param;
+        } finally {
+            if (snapshot != null && !snapshot.delete()) {
+                snapshot.deleteOnExit();
+            }
+        }
+
+        double[] pointLosses = new double[grid.size()];
+        for (int p = 0; p < grid.size(); p++) {
+            for (int fold = 0; fold < folds; fold++) {
+                pointLosses[p] += losses[p * folds + fold];
+            }
+            pointLosses[p] /= sampleNum;
+        }
+        double smallestDiff = best(grid, pointLosses, sampleNum, this.svm_param, checkpoint);
+        closeCheckpoint(checkpoint);
         System.out.println("best C: " + this.svm_param.C + "; best gamma: " + this.svm_param.gamma + "; best diff: " + smallestDiff);
         return this.svm_param;
     }
 
+    /**
+     * split a dataset into a training part and the last {@link #HOLDOUT_RATIO} of it
+     * @param data data to split
+     * @return the training part and the holdout part
+     */
+    private static Data[] holdout(Data data) {
+        int trainNum = (int) Math.round(data.getSampleNum() * (1 - HOLDOUT_RATIO));
+        Vector<svm_node[]> samples = data.getDataSet("scaled");
+        Vector<Double> labels = data.getLabels();
+        return new Data[]{
+                new Data(samples.subList(0, trainNum), labels.subList(0, trainNum)),
+                new Data(samples.subList(trainNum, samples.size()), labels.subList(trainNum, labels.size()))
+        };
+    }
+
+    /**
+     * @param predictions predicted labels
+     * @param labels real labels
+     * @return root mean squared error of the predictions
+     */
+    static double rmse(double[] predictions, double[] labels) {
+        double sum = 0.0d;
+        for (int i = 0; i < labels.length; i++) {
+            sum += (predictions[i] - labels[i]) * (predictions[i] - labels[i]);
+        }
+        return Math.sqrt(sum / labels.length);
+    }
+
     /**
      * set the type of this lib, see{@link LibConfig.Type}
      * @param type type
@@ -222,6 +1396,42 @@ public class SVMLib {
         return this;
     }
 
+    /**
+     * set the precision of dense samples, kernel rows cached by the SMO solver and
+     * models compiled by {@link #compile}, see{@link LibConfig.Precision}
+     * libsvm keeps training in double precision
+     * @param precision precision
+     * @return this
+     */
+    public SVMLib setPrecision(LibConfig.Precision precision) {
+        this.precision = precision;
+        if (this.trainingData != null) {
+            this.trainingData.setPrecision(precision);
+        }
+        return this;
+    }
+
+    /**
+     * keep grid search checkpoints in a directory, so an interrupted search resumes
+     * and a repeated one reuses its results, see {@link SearchCheckpoint}
+     * @param checkpointDir directory of the checkpoints, null to search without them
+     * @return this
+     */
+    public SVMLib setCheckpointDir(@Nullable String checkpointDir) {
+        this.checkpointDir = checkpointDir;
+        return this;
+    }
+
+    /**
+     * set the solver used for training, see{@link LibConfig.Solver}
+     * @param solver solver
+     * @return this
+     */
+    public SVMLib setSolver(LibConfig.Solver solver) {
+        this.solver = solver;
+        return this;
+    }
+
 }
 
 // End SVMLib.java
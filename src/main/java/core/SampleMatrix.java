@@ -0,0 +1,67 @@
+package core;
+
+import libsvm.svm_node;
+
+/**
+ * a read-only matrix of samples backed by primitive arrays,
+ * one row per sample and one column per feature
+ */
+interface SampleMatrix {
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return the number of samples
+     */
+    int rows();
+
+    /**
+     * @return the number of features
+     */
+    int cols();
+
+    /**
+     * inner product of two rows of this matrix
+     * @param i index of the first row
+     * @param j index of the second row
+     * @return x_i . x_j
+     */
+    double dot(int i, int j);
+
+    /**
+     * inner product of a row and a dense vector
+     * @param i index of the row
+     * @param x a dense vector of {@link #cols()} values
+     * @return x_i . x
+     */
+    double dot(int i, double[] x);
+
+    /**
+     * @param i index of the row
+     * @return x_i . x_i
+     */
+    double squaredNorm(int i);
+
+    /**
+     * add a multiple of a row to a dense vector, w += a * x_i
+     * @param i index of the row
+     * @param a multiplier
+     * @param w a dense vector of {@link #cols()} values, updated in place
+     */
+    void axpy(int i, double a, double[] w);
+
+    /**
+     * copy a row into a dense vector
+     * @param i index of the row
+     * @param out receives the {@link #cols()} values of the row
+     */
+    void copyRow(int i, double[] out);
+
+    /**
+     * convert a row back to libsvm's representation
+     * @param i index of the row
+     * @return the row as 1-based svm_nodes
+     */
+    svm_node[] toNodes(int i);
+}
+
+// End SampleMatrix.java
@@ -0,0 +1,105 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_model;
+
+/**
+ * a model trained on the columns kept by {@link FeatureScreen}, saved together with them
+ * so samples with every column of the original data are projected before prediction
+ * it is an svm_model itself, returned by training once the training data was screened,
+ * and its libsvm fields are those of the model on the kept columns
+ */
+public final class ScreenedModel extends svm_model implements Regressor {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final long serialVersionUID = 5978102326687025424L;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int[] columns;
+    private final int width;
+    private final svm_model model;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param columns the kept columns in ascending order, starting from 0
+     * @param width the number of columns of the original data
+     * @param model model trained on the kept columns
+     */
+    ScreenedModel(int[] columns, int width, svm_model model) {
+        Preconditions.checkArgument(columns.length > 0 && columns[columns.length - 1] < width,
+                "columns out of the original data");
+        this.columns = columns.clone();
+        this.width = width;
+        this.model = model;
+        this.param = model.param;
+        this.nr_class = model.nr_class;
+        this.l = model.l;
+        this.SV = model.SV;
+        this.sv_coef = model.sv_coef;
+        this.rho = model.rho;
+        this.probA = model.probA;
+        this.probB = model.probB;
+        this.sv_indices = model.sv_indices;
+        this.label = model.label;
+        this.nSV = model.nSV;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @param sample every column of the original data
+     */
+    @Override
+    public double predict(double[] sample) {
+        return SVMLib.predict(project(sample), this.model);
+    }
+
+    /**
+     * @param model a compiled form of the model on the kept columns, e.g. {@link KernelModel}
+     * @return the compiled model taking samples with every column of the original data
+     */
+    Regressor compile(Regressor model) {
+        return sample -> model.predict(project(sample));
+    }
+
+    /**
+     * @return the kept columns in ascending order, starting from 0
+     */
+    public int[] getColumns() {
+        return this.columns.clone();
+    }
+
+    /**
+     * @return the number of columns of the original data
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return the model trained on the kept columns
+     */
+    public svm_model getModel() {
+        return this.model;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * samples of another width were not read like the training data, so their columns
+     * cannot be told apart and are rejected rather than predicted on the wrong columns
+     */
+    private double[] project(double[] sample) {
+        Preconditions.checkArgument(sample.length == this.width,
+                "expected %s columns, got %s", this.width, sample.length);
+        double[] projected = new double[this.columns.length];
+        for (int k = 0; k < projected.length; k++) {
+            projected[k] = sample[this.columns[k]];
+        }
+        return projected;
+    }
+}
+
+// End ScreenedModel.java
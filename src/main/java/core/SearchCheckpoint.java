@@ -0,0 +1,194 @@
+package core;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the finished cross validation folds of a grid search, kept in a local file so an
+ * interrupted search resumes where it stopped
+ * the file is named after a fingerprint of the dataset and the search space, so a later
+ * search over the same data and parameters finds and reuses it; each fold loss is appended
+ * and synced to disk as soon as it is known, a torn last line is dropped on reading
+ * file format:
+ * # grid search fingerprint
+ * fold C gamma fold loss
+ * best C gamma loss
+ */
+final class SearchCheckpoint implements Closeable {
+    //~ Static fields and initializer ------------------------------------------
+
+    /**
+     * changed whenever the losses recorded for the same fingerprint would change
+     */
+    private static final int VERSION = 2;
+
+    private static final String HEADER = "# grid search ";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final File file;
+    private final FileOutputStream out;
+    private final Writer writer;
+    /* fold losses by (C, gamma, fold) */
+    private final Map<List<Double>, Double> losses = new HashMap<>();
+
+    //~ Constructors -----------------------------------------------------------
+
+    private SearchCheckpoint(File file, FileOutputStream out) {
+        this.file = file;
+        this.out = out;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * open the checkpoint of a search, reading the folds it already finished
+     * @param dir directory of the checkpoint files, created if missing
+     * @param fingerprint see {@link #fingerprint}
+     * @return the checkpoint, open for appending
+     * @throws IOException if the file cannot be read or written
+     */
+    static SearchCheckpoint open(File dir, String fingerprint) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        File file = new File(dir, fingerprint + ".ckpt");
+        byte[] content = file.exists() ? Files.readAllBytes(file.toPath()) : new byte[0];
+        // only whole lines count, a crash may have torn the last one
+        int length = content.length;
+        while (length > 0 && content[length - 1] != '\n') {
+            length--;
+        }
+        SearchCheckpoint checkpoint;
+        if (length == 0) {
+            checkpoint = new SearchCheckpoint(file, new FileOutputStream(file));
+            checkpoint.writer.write(HEADER + fingerprint + "\n");
+            checkpoint.sync();
+        } else {
+            checkpoint = new SearchCheckpoint(file, new FileOutputStream(file, true));
+            checkpoint.out.getChannel().truncate(length);
+            checkpoint.read(new String(content, 0, length, StandardCharsets.US_ASCII), fingerprint);
+        }
+        if (SVMLib.DEBUG) {
+            System.out.println("checkpoint " + file + ": " + checkpoint.losses.size() + " folds done");
+        }
+        return checkpoint;
+    }
+
+    /**
+     * hash the scaled samples, the labels and everything else the fold losses depend on
+     * @param data dataset searched
+     * @param param the parameter whose C and gamma are searched
+     * @param grid (C, gamma) candidates in search order
+     * @param folds number of cross validation folds
+     * @param solver solver training the folds
+     * @param precision precision the folds are trained in
+     * @return a hex fingerprint
+     */
+    static String fingerprint(Data data, svm_parameter param, List<double[]> grid, int folds,
+                              LibConfig.Solver solver, LibConfig.Precision precision) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(VERSION).putInt(data.getSampleNum()).putInt(data.getFeatureNum());
+        List<svm_node[]> samples = data.getDataSet("scaled");
+        for (int i = 0; i < data.getSampleNum(); i++) {
+            hasher.putDouble(data.getLabels().get(i));
+            for (svm_node node : samples.get(i)) {
+                hasher.putInt(node.index).putDouble(node.value);
+            }
+            hasher.putInt(-1);
+        }
+        hasher.putInt(param.svm_type).putInt(param.kernel_type).putInt(param.degree).putDouble(param.coef0)
+                .putDouble(param.eps).putDouble(param.p).putDouble(param.nu).putInt(param.shrinking);
+        for (double[] point : grid) {
+            hasher.putDouble(point[0]).putDouble(point[1]);
+        }
+        hasher.putInt(folds).putInt(solver.ordinal()).putInt(precision.ordinal());
+        return hasher.hash().toString().substring(0, 32);
+    }
+
+    /**
+     * @return the loss of a finished fold, or null if it has not been run
+     */
+    @Nullable
+    synchronized Double get(double c, double gamma, int fold) {
+        return this.losses.get(key(c, gamma, fold));
+    }
+
+    /**
+     * record the loss of a finished fold
+     * a failed write is reported and the search goes on without it
+     */
+    synchronized void record(double c, double gamma, int fold, double loss) {
+        this.losses.put(key(c, gamma, fold), loss);
+        append("fold " + c + " " + gamma + " " + fold + " " + loss);
+    }
+
+    /**
+     * record a new best candidate
+     */
+    synchronized void best(double c, double gamma, double loss) {
+        append("best " + c + " " + gamma + " " + loss);
+    }
+
+    /**
+     * @return the number of finished folds
+     */
+    synchronized int size() {
+        return this.losses.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.writer.close();
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private void read(String content, String fingerprint) throws IOException {
+        String[] lines = content.split("\n");
+        if (!lines[0].equals(HEADER + fingerprint)) {
+            this.writer.close();
+            throw new IOException(this.file + " belongs to another search");
+        }
+        for (int l = 1; l < lines.length; l++) {
+            String[] contents = lines[l].split(" ");
+            if (contents.length == 5 && contents[0].equals("fold")) {
+                this.losses.put(key(Double.parseDouble(contents[1]), Double.parseDouble(contents[2]),
+                        Integer.parseInt(contents[3])), Double.parseDouble(contents[4]));
+            }
+        }
+    }
+
+    private void append(String line) {
+        try {
+            this.writer.write(line + "\n");
+            sync();
+        } catch (IOException e) {
+            System.out.println("Checkpoint write failed!");
+            e.printStackTrace();
+        }
+    }
+
+    private void sync() throws IOException {
+        this.writer.flush();
+        this.out.getChannel().force(false);
+    }
+
+    private static List<Double> key(double c, double gamma, int fold) {
+        return Arrays.asList(c, gamma, (double) fold);
+    }
+}
+
+// End SearchCheckpoint.java
@@ -0,0 +1,161 @@
+package core;
+
+import libsvm.svm_node;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * sparse sample storage in compressed sparse row form,
+ * only non-zero index:value pairs are kept, in ascending column order
+ */
+final class SparseMatrix implements SampleMatrix {
+    //~ Instance fields --------------------------------------------------------
+
+    private final int rows;
+    private final int cols;
+    /* row i occupies [rowPtr[i], rowPtr[i + 1]) of colIdx and values */
+    final int[] rowPtr;
+    final int[] colIdx;
+    final double[] values;
+    private final double[] squaredNorms;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * @param rows number of samples
+     * @param cols number of features
+     * @param rowPtr rows + 1 offsets into colIdx and values
+     * @param colIdx 0-based column of each non-zero, ascending within a row
+     * @param values value of each non-zero
+     */
+    SparseMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) {
+        assert rowPtr.length == rows + 1;
+        this.rows = rows;
+        this.cols = cols;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+        this.squaredNorms = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            double sum = 0.0d;
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                sum += values[k] * values[k];
+            }
+            this.squaredNorms[i] = sum;
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * copy a list of svm_node samples into a sparse matrix, dropping zeros
+     * @param samples samples with ascending 1-based feature indices
+     * @param cols number of features
+     * @return a sparse matrix holding the same values
+     */
+    static SparseMatrix of(List<svm_node[]> samples, int cols) {
+        int rows = samples.size();
+        int[] rowPtr = new int[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            int nnz = 0;
+            for (svm_node node : samples.get(i)) {
+                if (node.index > 0 && node.value != 0) {
+                    nnz++;
+                }
+            }
+            rowPtr[i + 1] = rowPtr[i] + nnz;
+        }
+        int[] colIdx = new int[rowPtr[rows]];
+        double[] values = new double[rowPtr[rows]];
+        for (int i = 0; i < rows; i++) {
+            int k = rowPtr[i];
+            for (svm_node node : samples.get(i)) {
+                if (node.index > 0 && node.value != 0) {
+                    colIdx[k] = node.index - 1;
+                    values[k] = node.value;
+                    k++;
+                }
+            }
+        }
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, values);
+    }
+
+    /**
+     * @return the number of stored non-zeros
+     */
+    int nonZeros() {
+        return this.rowPtr[this.rows];
+    }
+
+    @Override
+    public int rows() {
+        return this.rows;
+    }
+
+    @Override
+    public int cols() {
+        return this.cols;
+    }
+
+    @Override
+    public double dot(int i, int j) {
+        double sum = 0.0d;
+        int a = this.rowPtr[i], aEnd = this.rowPtr[i + 1];
+        int b = this.rowPtr[j], bEnd = this.rowPtr[j + 1];
+        while (a < aEnd && b < bEnd) {
+            int ca = this.colIdx[a], cb = this.colIdx[b];
+            if (ca == cb) {
+                sum += this.values[a++] * this.values[b++];
+            } else if (ca < cb) {
+                a++;
+            } else {
+                b++;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public double dot(int i, double[] x) {
+        double sum = 0.0d;
+        for (int k = this.rowPtr[i], end = this.rowPtr[i + 1]; k < end; k++) {
+            sum += this.values[k] * x[this.colIdx[k]];
+        }
+        return sum;
+    }
+
+    @Override
+    public double squaredNorm(int i) {
+        return this.squaredNorms[i];
+    }
+
+    @Override
+    public void axpy(int i, double a, double[] w) {
+        for (int k = this.rowPtr[i], end = this.rowPtr[i + 1]; k < end; k++) {
+            w[this.colIdx[k]] += a * this.values[k];
+        }
+    }
+
+    @Override
+    public void copyRow(int i, double[] out) {
+        Arrays.fill(out, 0, this.cols, 0.0d);
+        for (int k = this.rowPtr[i], end = this.rowPtr[i + 1]; k < end; k++) {
+            out[this.colIdx[k]] = this.values[k];
+        }
+    }
+
+    @Override
+    public svm_node[] toNodes(int i) {
+        int start = this.rowPtr[i];
+        svm_node[] nodes = new svm_node[this.rowPtr[i + 1] - start];
+        for (int k = 0; k < nodes.length; k++) {
+            nodes[k] = new svm_node();
+            nodes[k].index = this.colIdx[start + k] + 1;
+            nodes[k].value = this.values[start + k];
+        }
+        return nodes;
+    }
+}
+
+// End SparseMatrix.java
@@ -0,0 +1,151 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * validation of many regression models trained on the same fold with the same kernel,
+ * e.g. every C of a grid search at one gamma, possibly of several targets
+ * the kernel between the validation rows and the union of the models' support vectors
+ * is computed once, in blocks of rows, and every model is scored as a sparse dot
+ * product of its coefficients with that block
+ */
+final class ValidationKernel {
+    //~ Static fields and initializer ------------------------------------------
+
+    /**
+     * validation rows per kernel block, bounding the block to BLOCK_ROWS * #SV values
+     */
+    private static final int BLOCK_ROWS = 256;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private ValidationKernel() {}
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * models that are not regression models or lack sv_indices are scored one by one
+     * with svm_predict
+     * @param x all samples
+     * @param y labels of all samples
+     * @param trainRows rows of x the models were trained on, in training order
+     * @param validRows rows of x to validate on
+     * @param models models trained on trainRows with the same kernel, null for failed ones
+     * @return the sum of squared errors of each model on validRows, NaN for failed models
+     */
+    static double[] losses(SampleMatrix x, double[] y, int[] trainRows, int[] validRows, List<svm_model> models) {
+        return losses(x, Collections.nCopies(models.size(), y), trainRows, validRows, models);
+    }
+
+    /**
+     * validate models of several targets, e.g. every C of every target, against one block
+     * @param x all samples
+     * @param labels labels of all samples for each model
+     * @param trainRows rows of x the models were trained on, in training order
+     * @param validRows rows of x to validate on
+     * @param models models trained on trainRows with the same kernel, null for failed ones
+     * @return the sum of squared errors of each model on validRows, NaN for failed models
+     */
+    static double[] losses(SampleMatrix x, List<double[]> labels, int[] trainRows, int[] validRows,
+                           List<svm_model> models) {
+        Preconditions.checkArgument(labels.size() == models.size());
+        int m = models.size();
+        double[] losses = new double[m];
+        // column of each training row in the kernel block, -1 if no model uses it
+        int[] column = new int[trainRows.length];
+        Arrays.fill(column, -1);
+        int[][] columns = new int[m][];
+        int width = 0;
+        svm_parameter param = null;
+        for (int k = 0; k < m; k++) {
+            svm_model model = models.get(k);
+            if (model == null) {
+                losses[k] = Double.NaN;
+                continue;
+            }
+            if (!shared(model)) {
+                double[] y = labels.get(k);
+                for (int v : validRows) {
+                    double diff = svm.svm_predict(model, x.toNodes(v)) - y[v];
+                    losses[k] += diff * diff;
+                }
+                continue;
+            }
+            Preconditions.checkArgument(param == null || (param.kernel_type == model.param.kernel_type
+                    && param.gamma == model.param.gamma && param.degree == model.param.degree
+                    && param.coef0 == model.param.coef0), "kernels differ");
+            param = model.param;
+            columns[k] = new int[model.l];
+            for (int j = 0; j < model.l; j++) {
+                int t = model.sv_indices[j] - 1;
+                if (column[t] < 0) {
+                    column[t] = width++;
+                }
+                columns[k][j] = column[t];
+            }
+        }
+        if (param == null) {
+            return losses;
+        }
+        int[] unionRows = new int[width];
+        for (int t = 0; t < trainRows.length; t++) {
+            if (column[t] >= 0) {
+                unionRows[column[t]] = trainRows[t];
+            }
+        }
+
+        int u = width;
+        svm_parameter kernel = param;
+        double[] block = new double[Math.min(BLOCK_ROWS, validRows.length) * u];
+        for (int from = 0; from < validRows.length; from += BLOCK_ROWS) {
+            int start = from, rows = Math.min(BLOCK_ROWS, validRows.length - from);
+            IntStream.range(0, rows).parallel().forEach(r -> {
+                int v = validRows[start + r];
+                double vv = x.squaredNorm(v);
+                for (int c = 0; c < u; c++) {
+                    int t = unionRows[c];
+                    block[r * u + c] = KernelMatrix.eval(kernel, x.dot(v, t), vv, x.squaredNorm(t));
+                }
+            });
+            IntStream.range(0, m).parallel().filter(k -> columns[k] != null).forEach(k -> {
+                svm_model model = models.get(k);
+                double[] y = labels.get(k);
+                double[] coef = model.sv_coef[0];
+                int[] cols = columns[k];
+                double loss = 0.0d;
+                for (int r = 0; r < rows; r++) {
+                    double prediction = -model.rho[0];
+                    int offset = r * u;
+                    for (int j = 0; j < cols.length; j++) {
+                        prediction += coef[j] * block[offset + cols[j]];
+                    }
+                    double diff = prediction - y[validRows[start + r]];
+                    loss += diff * diff;
+                }
+                losses[k] += loss;
+            });
+        }
+        return losses;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * @return whether the model's prediction is its decision value over rows of the training set
+     */
+    private static boolean shared(svm_model model) {
+        return model.sv_indices != null
+                && (model.param.svm_type == svm_parameter.EPSILON_SVR || model.param.svm_type == svm_parameter.NU_SVR)
+                && model.param.kernel_type != svm_parameter.PRECOMPUTED;
+    }
+}
+
+// End ValidationKernel.java
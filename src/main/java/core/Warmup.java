@@ -0,0 +1,289 @@
+package core;
+
+import com.google.common.base.Preconditions;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * warms up the JIT for a freshly loaded model before it takes traffic
+ * synthetic samples shaped like the model's support vectors are predicted with the model
+ * {@link BatchScorer#of(svm_model)} compiles, as {@link SVMLib#test} scores, and written as
+ * csv lines that go through the parsing of that scorer and of
+ * {@link Data#readDataFromCSVFile(String)}, round after round, until the JIT has stopped
+ * compiling and the p99 latency of a round has settled
+ */
+public final class Warmup {
+    //~ Static fields and initializer ------------------------------------------
+
+    /* timed predictions and parsed csv lines per round */
+    private static final int ROUND_CALLS = 1000;
+
+    /* a method is compiled by C2 after about 10000 invocations */
+    private static final int MIN_ROUNDS = 10;
+
+    /* consecutive quiet rounds before the hot paths count as compiled */
+    private static final int QUIET_ROUNDS = 3;
+
+    /* a round is quiet if its p99 is within this ratio of the previous round's */
+    private static final double SETTLED = 1.25d;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final svm_model model;
+    /* the columns a screened model keeps, null if it takes every column */
+    private final int[] columns;
+    /* the number of columns of the samples served */
+    private final int featureNum;
+    /* per feature of the support vectors: share of them where it is non-zero, and its range there */
+    private final double[] density;
+    private final double[] lows;
+    private final double[] highs;
+    private double[][] scaleParam = null;
+    private long budget = 60000;
+    private long seed = 1L;
+    private volatile boolean ready = false;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private Warmup(svm_model model) {
+        this.model = model;
+        // a screened model has the support vectors of its kept columns
+        this.columns = model instanceof ScreenedModel ? ((ScreenedModel) model).getColumns() : null;
+        int n = 0;
+        for (svm_node[] sv : model.SV) {
+            for (svm_node node : sv) {
+                n = Math.max(n, node.index);
+            }
+        }
+        this.featureNum = model instanceof ScreenedModel ? ((ScreenedModel) model).getWidth() : n;
+        this.density = new double[n];
+        this.lows = new double[n];
+        this.highs = new double[n];
+        Arrays.fill(this.lows, Double.POSITIVE_INFINITY);
+        Arrays.fill(this.highs, Double.NEGATIVE_INFINITY);
+        for (svm_node[] sv : model.SV) {
+            for (svm_node node : sv) {
+                int j = node.index - 1;
+                this.density[j] += 1.0d / model.SV.length;
+                this.lows[j] = Math.min(this.lows[j], node.value);
+                this.highs[j] = Math.max(this.highs[j], node.value);
+            }
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @param model a loaded model with at least one support vector
+     * @return a warm-up for the model
+     */
+    public static Warmup of(svm_model model) {
+        Preconditions.checkArgument(model.l > 0, "model has no support vectors");
+        return new Warmup(model);
+    }
+
+    /**
+     * run the warm-up rounds on the calling thread
+     * the model is ready once the rounds settled within the time budget; otherwise the
+     * rounds stop at the budget and the model is left not ready
+     * @return the latency before and after the warm-up
+     */
+    public Report run() {
+        long startTime = System.currentTimeMillis();
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean jitTimed = jit != null && jit.isCompilationTimeMonitoringSupported();
+        Random random = new Random(this.seed);
+        BatchScorer scorer = BatchScorer.of(this.model);
+        Regressor predictor = scorer.getModel();
+        if (this.scaleParam != null) {
+            scorer.setScaleParam(this.scaleParam);
+        }
+        double[][] samples = new double[ROUND_CALLS][];
+        String[] lines = new String[ROUND_CALLS];
+        double[] labels = new double[1];
+        long[] latencies = new long[ROUND_CALLS];
+
+        Report report = new Report();
+        long compileTime = jitTimed ? jit.getTotalCompilationTime() : 0;
+        int quiet = 0;
+        while (true) {
+            StringBuilder csv = new StringBuilder();
+            for (int i = 0; i < ROUND_CALLS; i++) {
+                samples[i] = sample(random);
+                lines[i] = line(samples[i], random);
+                csv.append(lines[i]).append('\n');
+            }
+            for (int i = 0; i < ROUND_CALLS; i++) {
+                long start = System.nanoTime();
+                predictor.predict(samples[i]);
+                latencies[i] = System.nanoTime() - start;
+            }
+            byte[] bytes = csv.toString().getBytes(StandardCharsets.US_ASCII);
+            scorer.score(bytes, bytes.length);
+            for (String line : lines) {
+                Data.parseCSVLine(line, this.featureNum, labels);
+            }
+
+            long p99 = percentile(latencies, 0.99d);
+            if (report.rounds == 0) {
+                report.coldP99 = p99;
+            }
+            long compiled = jitTimed ? jit.getTotalCompilationTime() : 0;
+            boolean settled = report.rounds > 0 && p99 <= SETTLED * report.warmP99 && compiled == compileTime;
+            quiet = settled ? quiet + 1 : 0;
+            compileTime = compiled;
+            report.warmP99 = p99;
+            report.rounds++;
+            if (report.rounds >= MIN_ROUNDS && quiet >= QUIET_ROUNDS) {
+                this.ready = true;
+                break;
+            }
+            if (System.currentTimeMillis() - startTime >= this.budget) {
+                break;
+            }
+        }
+        report.ready = this.ready;
+        report.seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        if (SVMLib.DEBUG) {
+            System.out.println("Warm-up " + (this.ready ? "done" : "stopped") + " in " + report.seconds + " seconds");
+        }
+        return report;
+    }
+
+    /**
+     * @return whether the last {@link #run()} settled, so the model can take traffic
+     */
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * a scaled sample with the sparsity and value ranges of the support vectors
+     */
+    private double[] sample(Random random) {
+        double[] sample = new double[this.featureNum];
+        for (int j = 0; j < this.density.length; j++) {
+            if (random.nextDouble() < this.density[j]) {
+                sample[this.columns == null ? j : this.columns[j]] = this.lows[j]
+                        + random.nextDouble() * (this.highs[j] - this.lows[j]);
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * a csv line "y,x1,...,xn" of a sample, unscaled back to the training data's units
+     */
+    private String line(double[] sample, Random random) {
+        StringBuilder line = new StringBuilder();
+        line.append(random.nextGaussian());
+        for (int j = 0; j < sample.length; j++) {
+            double value = sample[j];
+            if (this.scaleParam != null) {
+                double upper = this.scaleParam[0][0], lower = this.scaleParam[0][1];
+                double max = this.scaleParam[j + 1][0], min = this.scaleParam[j + 1][1];
+                value = min + (value - lower) / (upper - lower) * (max - min);
+            }
+            line.append(',').append(value);
+        }
+        return line.toString();
+    }
+
+    /**
+     * @return the p-th percentile of values, which are sorted in place
+     */
+    static long percentile(long[] values, double p) {
+        Arrays.sort(values);
+        return values[(int) Math.min(values.length - 1, Math.ceil(p * values.length) - 1)];
+    }
+
+    //~ Getter/setter methods --------------------------------------------------
+
+    /**
+     * @param scaleParam returned by {@link Data#scaleTrainingData()}, so the csv lines are
+     *                   scaled on parsing like test data
+     * @return this
+     */
+    public Warmup setScaleParam(@Nullable double[][] scaleParam) {
+        this.scaleParam = scaleParam;
+        return this;
+    }
+
+    /**
+     * @param budget the longest the warm-up may run, in milliseconds
+     * @return this
+     */
+    public Warmup setBudget(long budget) {
+        Preconditions.checkArgument(budget >= 0, "budget < 0");
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * @param seed random seed of the synthetic samples
+     * @return this
+     */
+    public Warmup setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    //~ Inner classes ----------------------------------------------------------
+
+    /**
+     * latency of single predictions before and after a warm-up
+     */
+    public static final class Report {
+        private long coldP99 = 0;
+        private long warmP99 = 0;
+        private int rounds = 0;
+        private double seconds = 0.0d;
+        private boolean ready = false;
+
+        /**
+         * @return p99 latency of the first round, in nanoseconds
+         */
+        public long getColdP99() {
+            return this.coldP99;
+        }
+
+        /**
+         * @return p99 latency of the last round, in nanoseconds
+         */
+        public long getWarmP99() {
+            return this.warmP99;
+        }
+
+        /**
+         * @return the number of rounds run
+         */
+        public int getRounds() {
+            return this.rounds;
+        }
+
+        /**
+         * @return whether the rounds settled within the budget
+         */
+        public boolean isReady() {
+            return this.ready;
+        }
+
+        @Override
+        public String toString() {
+            return (this.ready ? "ready" : "not ready") + " after " + this.rounds + " rounds in " + this.seconds
+                    + " seconds; p99 before: " + this.coldP99 / 1000.0 + " us; p99 after: "
+                    + this.warmP99 / 1000.0 + " us";
+        }
+    }
+}
+
+// End Warmup.java
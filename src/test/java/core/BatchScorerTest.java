@@ -0,0 +1,115 @@
+package core;
+
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * pipelined scoring against predicting line by line
+ */
+public class BatchScorerTest {
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void parsesLikeDouble() {
+        Random random = new Random(7L);
+        String[] fixed = {"0", "-0.0", "1", "+2.5", "007", "0.000123", "1e5", "-1.5E-3", "1e-400", "1e400",
+                "123456789012345678", "0.1234567890123456789", "9007199254740993", "NaN", "-Infinity", " 3.25 "};
+        for (String text : fixed) {
+            assertParsed(text);
+        }
+        for (int t = 0; t < 100000; t++) {
+            assertParsed(Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20)));
+            assertParsed(Long.toString(random.nextLong() % 100000000) + "." + random.nextInt(1000));
+        }
+    }
+
+    @Test
+    public void scoresInOrder() throws IOException {
+        Data data = SMOSolverTest.synthetic(40000, 5, 7L);
+        File input = this.folder.newFile(), output = this.folder.newFile();
+        data.export(input.getPath(), "original", LibConfig.Format.CSV, false);
+        LinearModel model = new LinearModel(new double[]{0.5, -1, 2, 0, 0.25}, 0.1);
+
+        BatchScorer.Report report = new BatchScorer(model).setThreads(4).setTolerance(0.5)
+                .score(input.getPath(), output.getPath());
+
+        List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.US_ASCII);
+        assertEquals(data.getSampleNum(), lines.size());
+        assertEquals(data.getSampleNum(), report.getCount());
+        SampleMatrix x = data.getMatrix("original");
+        double[] sample = new double[x.cols()];
+        double absolute = 0.0d, relative = 0.0d;
+        int good = 0;
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, sample);
+            double label = data.getLabels().get(i), prediction = model.predict(sample);
+            assertEquals(label + "," + prediction, lines.get(i));
+            absolute += Math.abs(prediction - label);
+            relative += Math.abs(prediction - label) / Math.abs(label);
+            if (Math.abs(prediction - label) < 0.5 * Math.abs(label)) {
+                good++;
+            }
+        }
+        assertEquals(absolute / x.rows(), report.getMAE(), 1e-9);
+        assertEquals(relative / x.rows(), report.getMAPE(), 1e-9);
+        assertEquals((double) good / x.rows(), report.getWithinTolerance(), 0);
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    @Test
+    public void compiledModelScoresLikeLibsvm() {
+        Data data = SMOSolverTest.synthetic(500, 4, 3L);
+        double[][] scaleParam = data.scaleTrainingData();
+        StringBuilder text = new StringBuilder();
+        SampleMatrix x = data.getMatrix("original");
+        double[] sample = new double[x.cols()];
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, sample);
+            text.append(data.getLabels().get(i));
+            for (double value : sample) {
+                text.append(',').append(value);
+            }
+            text.append('\n');
+        }
+        byte[] lines = text.toString().getBytes(StandardCharsets.US_ASCII);
+        for (int kernelType : new int[]{svm_parameter.LINEAR, svm_parameter.RBF}) {
+            svm_model model = SMOSolverTest.trainLibsvm(data, SMOSolverTest.param(kernelType, 100));
+            SampleMatrix scaled = data.getMatrix("scaled");
+            double squared = 0.0d;
+            for (int i = 0; i < scaled.rows(); i++) {
+                scaled.copyRow(i, sample);
+                double diff = SVMLib.predict(sample, model) - data.getLabels().get(i);
+                squared += diff * diff;
+            }
+            BatchScorer.Report report = BatchScorer.of(model).setScaleParam(scaleParam).score(lines, lines.length);
+            assertEquals(Math.sqrt(squared / scaled.rows()), report.getRMSE(), 1e-9);
+        }
+    }
+
+    private static void assertParsed(String text) {
+        byte[] bytes = ("," + text + ",").getBytes(StandardCharsets.US_ASCII);
+        double expected = Double.parseDouble(text);
+        double actual = BatchScorer.parseDouble(bytes, 1, bytes.length - 1);
+        assertEquals(text, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+    }
+}
+
+// End BatchScorerTest.java
@@ -0,0 +1,99 @@
+package core;
+
+import libsvm.*;
+import org.junit.Test;
+
+import java.util.Vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * weighted training on collapsed rows against training on every row
+ */
+public class CoresetTest {
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void exactDuplicatesGiveTheSameModel() {
+        Data data = repeat(SMOSolverTest.synthetic(300, 4, 7L), 3);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        Coreset coreset = Coreset.collapse(data.getMatrix("scaled"), data.getLabelArray(), 0);
+        assertEquals(300, coreset.size());
+        assertEquals(0, coreset.radius, 0);
+
+        svm_model expected = SMOSolverTest.trainLibsvm(data, param);
+        svm_model actual = new SMOSolver(new KernelMatrix(coreset.x, param), coreset.y, param)
+                .setWeights(coreset.weights).solve(coreset.x);
+        assertSamePredictions(expected, actual, 1e-2);
+    }
+
+    @Test
+    public void conflictingLabelsAreNotCollapsed() {
+        // the same features seen with different labels, like one day's weather with two defect counts
+        Data data = repeat(SMOSolverTest.synthetic(300, 4, 7L), 2);
+        for (int i = 0; i < 100; i += 2) {
+            data.getLabels().set(i, data.getLabels().get(i) + 1.0d);
+        }
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        Coreset coreset = Coreset.collapse(data.getMatrix("scaled"), data.getLabelArray(), 0);
+        assertEquals(350, coreset.size());
+
+        svm_model expected = SMOSolverTest.trainLibsvm(data, param);
+        svm_model actual = new SMOSolver(new KernelMatrix(coreset.x, param), coreset.y, param)
+                .setWeights(coreset.weights).solve(coreset.x);
+        assertSamePredictions(expected, actual, 1e-2);
+    }
+
+    @Test
+    public void weightedLinearSolverMatchesRepeatedRows() {
+        Data data = repeat(SMOSolverTest.synthetic(300, 4, 5L), 2);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.LINEAR, 100);
+        Coreset coreset = Coreset.collapse(data.getMatrix("scaled"), data.getLabelArray(), 0);
+
+        double[] expected = new LinearSVR(param.C, param.p).setEps(1e-4)
+                .solve(data.getMatrix("scaled"), data.getLabelArray());
+        double[] actual = new LinearSVR(param.C, param.p).setEps(1e-4).setWeights(coreset.weights)
+                .solve(coreset.x, coreset.y);
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals(expected[k], actual[k], 0.05);
+        }
+    }
+
+    @Test
+    public void coresetStaysWithinSizeAndAccuracy() {
+        Data data = SMOSolverTest.synthetic(2000, 2, 3L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        Coreset coreset = Coreset.of(data.getMatrix("scaled"), data.getLabelArray(), 400);
+        assertTrue(coreset.size() <= 400);
+        assertTrue(coreset.radius <= coreset.resolution * Math.sqrt(2));
+
+        svm_model expected = SMOSolverTest.trainLibsvm(data, param);
+        svm_model actual = new SMOSolver(new KernelMatrix(coreset.x, param), coreset.y, param)
+                .setWeights(coreset.weights).solve(coreset.x);
+        assertSamePredictions(expected, actual, 0.1);
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private static Data repeat(Data data, int times) {
+        Vector<svm_node[]> samples = new Vector<>();
+        Vector<Double> labels = new Vector<>();
+        for (int i = 0; i < data.getSampleNum(); i++) {
+            for (int t = 0; t < times; t++) {
+                samples.add(data.getDataSet("scaled").get(i));
+                labels.add(data.getLabels().get(i));
+            }
+        }
+        return new Data(samples, labels);
+    }
+
+    private static void assertSamePredictions(svm_model expected, svm_model actual, double delta) {
+        SampleMatrix test = SMOSolverTest.synthetic(100, expected.SV[0].length, 11L).getMatrix("scaled");
+        for (int i = 0; i < test.rows(); i++) {
+            assertEquals(svm.svm_predict(expected, test.toNodes(i)), svm.svm_predict(actual, test.toNodes(i)), delta);
+        }
+    }
+}
+
+// End CoresetTest.java
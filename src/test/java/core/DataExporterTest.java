@@ -0,0 +1,93 @@
+package core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * round trips through every export format
+ */
+public class DataExporterTest {
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void roundTrips() throws IOException {
+        Data data = SMOSolverTest.synthetic(10000, 6, 3L);
+        for (boolean gzip : new boolean[]{false, true}) {
+            String csv = new File(folder.getRoot(), "data.csv" + (gzip ? ".gz" : "")).getPath();
+            String libsvm = new File(folder.getRoot(), "data.txt").getPath();
+            String binary = new File(folder.getRoot(), "data.bin" + (gzip ? ".gz" : "")).getPath();
+            data.export(binary, "original", LibConfig.Format.BINARY, gzip);
+            assertSame(data, new Data().readDataFromBinaryFile(binary));
+            if (!gzip) {
+                data.export(csv, "original", LibConfig.Format.CSV, false);
+                assertSame(data, new Data().readDataFromCSVFile(csv));
+                data.export(libsvm, "original", LibConfig.Format.LIBSVM, false);
+                assertSame(data, new Data().readDataFromLibsvmFile(libsvm));
+            }
+        }
+    }
+
+    @Test
+    public void sparseRoundTrip() throws IOException {
+        Data data = SMOSolverTest.synthetic(1000, 4, 5L);
+        File libsvm = folder.newFile();
+        data.export(libsvm.getPath(), "original", LibConfig.Format.LIBSVM, false);
+        Data sparse = new Data().readDataFromLibsvmFile(libsvm.getPath());
+        File binary = folder.newFile();
+        sparse.export(binary.getPath(), "original", LibConfig.Format.BINARY, true);
+        Data copy = new Data().readDataFromBinaryFile(binary.getPath());
+        assertTrue(copy.isSparse());
+        assertSame(data, copy);
+    }
+
+    @Test
+    public void scalesReloadedData() throws IOException {
+        Data data = SMOSolverTest.synthetic(1000, 6, 3L);
+        File binary = folder.newFile();
+        data.export(binary.getPath(), "original", LibConfig.Format.BINARY, false);
+        Data train = new Data().readDataFromBinaryFile(binary.getPath());
+        Data test = new Data().readDataFromBinaryFile(binary.getPath());
+
+        double[][] scaleParam = data.scaleTrainingData();
+        assertEquals(Arrays.deepToString(scaleParam), Arrays.deepToString(train.scaleTrainingData()));
+        test.scaleTestData(scaleParam);
+        assertSame(data, train, "scaled");
+        assertSame(data, test, "scaled");
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private static void assertSame(Data expected, Data actual) {
+        assertSame(expected, actual, "original");
+    }
+
+    private static void assertSame(Data expected, Data actual, String type) {
+        assertEquals(expected.getSampleNum(), actual.getSampleNum());
+        assertEquals(expected.getFeatureNum(), actual.getFeatureNum());
+        SampleMatrix a = expected.getMatrix(type), b = actual.getMatrix(type);
+        double[] rowA = new double[a.cols()], rowB = new double[b.cols()];
+        for (int i = 0; i < a.rows(); i++) {
+            assertEquals(expected.getLabels().get(i), actual.getLabels().get(i), 0);
+            a.copyRow(i, rowA);
+            b.copyRow(i, rowB);
+            for (int k = 0; k < rowA.length; k++) {
+                assertEquals(rowA[k], rowB[k], 0);
+            }
+        }
+    }
+}
+
+// End DataExporterTest.java
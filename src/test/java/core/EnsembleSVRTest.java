@@ -0,0 +1,77 @@
+package core;
+
+import libsvm.*;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ensembles of subset models against one model on all samples
+ */
+public class EnsembleSVRTest {
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void averagedMembersAreOnePass() {
+        Data data = SMOSolverTest.synthetic(1200, 4, 7L);
+        EnsembleSVR ensemble = EnsembleSVR.train(data.getMatrix("original"), data.getLabelArray(),
+                SMOSolverTest.param(svm_parameter.RBF, 100), 4, LibConfig.Partition.RANDOM,
+                LibConfig.Precision.DOUBLE, 0L);
+        assertEquals(4, ensemble.getMemberNum());
+        SampleMatrix x = SMOSolverTest.synthetic(100, 4, 8L).getMatrix("original");
+        double[] batch = ensemble.predict(x);
+        double[] sample = new double[x.cols()];
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, sample);
+            double mean = 0.0d;
+            for (KernelModel member : ensemble.members) {
+                mean += member.predict(sample) / ensemble.getMemberNum();
+            }
+            assertEquals(mean, ensemble.predict(sample), 1e-9);
+            assertEquals(mean, batch[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void ensembleIsCloseToFullModel() {
+        Data data = SMOSolverTest.synthetic(4000, 4, 7L);
+        Data test = SMOSolverTest.synthetic(1000, 4, 8L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        SampleMatrix samples = data.getMatrix("original");
+        double[] y = data.getLabelArray();
+
+        long startTime = System.currentTimeMillis();
+        KernelModel full = KernelModel.of(new SMOSolver(new KernelMatrix(samples, param), y, param).solve(samples),
+                LibConfig.Precision.DOUBLE);
+        double fullSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        double fullRmse = rmse(full, test);
+        System.out.println("full: rmse " + fullRmse + "; train " + fullSeconds + " seconds");
+
+        for (LibConfig.Partition partition : LibConfig.Partition.values()) {
+            startTime = System.currentTimeMillis();
+            EnsembleSVR ensemble = EnsembleSVR.train(samples, y, param, 4, partition, LibConfig.Precision.DOUBLE, 0L);
+            double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+            double rmse = rmse(ensemble, test);
+            System.out.println(partition + ": rmse " + rmse + "; train " + seconds + " seconds; members "
+                    + ensemble.getMemberNum());
+            assertTrue(rmse < 1.5 * fullRmse);
+        }
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private static double rmse(Regressor model, Data test) {
+        SampleMatrix x = test.getMatrix("original");
+        double[] sample = new double[x.cols()];
+        double sum = 0.0d;
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, sample);
+            double diff = model.predict(sample) - test.getLabels().get(i);
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum / x.rows());
+    }
+}
+
+// End EnsembleSVRTest.java
@@ -0,0 +1,155 @@
+package core;
+
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * hash joins of csv sources against a nested-loop join
+ */
+public class FeatureJoinTest {
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void joinsOnDays() throws IOException {
+        LocalDate start = LocalDate.of(2016, 1, 1);
+        Random random = new Random(7L);
+        List<String> counts = new ArrayList<>(), weather = new ArrayList<>(), stale = new ArrayList<>();
+        counts.add("date,count");
+        List<double[]> expected = new ArrayList<>();
+        for (int d = 0; d < 3000; d++) {
+            LocalDate day = start.plusDays(d);
+            int count = random.nextInt(50);
+            // one day in four has no weather, one in five has a stale row first
+            double[] features = {random.nextInt(40), random.nextInt(100), random.nextInt(10)};
+            if (d % 4 != 0) {
+                if (d % 5 == 0) {
+                    stale.add(day.getYear() + "," + day.getMonthValue() + "," + day.getDayOfMonth() + ",-1,-1,-1");
+                }
+                weather.add(day.getYear() + "," + day.getMonthValue() + "," + day.getDayOfMonth() + ","
+                        + (int) features[0] + "," + (int) features[1] + "," + (int) features[2]);
+                expected.add(new double[]{count, 1.5 * count, features[0], features[1], features[2]});
+            }
+            counts.add(day + "," + count + "," + 1.5 * count);
+        }
+        // the joined source is out of order, overwrites its stale rows and has days the probe source lacks
+        weather.add("2030,1,1,1,2,3");
+        Collections.shuffle(weather, random);
+        weather.addAll(0, stale);
+
+        File countFile = write(counts), weatherFile = write(weather);
+        FeatureJoin join = new FeatureJoin(FeatureJoin.Source.csv(countFile.getPath(), true,
+                FeatureJoin.Key.date(0), 1, 2))
+                .join(FeatureJoin.Source.csv(weatherFile.getPath(), false, FeatureJoin.Key.date(0, 1, 2), 3, 4, 5));
+        Data data = new Data().readJoinedData(join);
+
+        assertEquals(expected.size(), data.getSampleNum());
+        assertEquals(4, data.getFeatureNum());
+        SampleMatrix x = data.getMatrix("original");
+        double[] row = new double[x.cols()];
+        for (int i = 0; i < expected.size(); i++) {
+            x.copyRow(i, row);
+            assertEquals(expected.get(i)[0], data.getLabels().get(i), 0);
+            assertEquals(Arrays.toString(Arrays.copyOfRange(expected.get(i), 1, 5)), Arrays.toString(row));
+        }
+    }
+
+    @Test
+    public void joinsSeveralSourcesOnIds() throws IOException {
+        List<String> labels = new ArrayList<>(), a = new ArrayList<>(), b = new ArrayList<>();
+        // keys beyond the int range
+        for (int id = 0; id < 20000; id++) {
+            long key = id * 1000003L;
+            labels.add(key + "," + id * 0.5);
+            if (id % 2 == 0) {
+                a.add(key + "," + id);
+            }
+            if (id % 3 == 0) {
+                b.add(key + ",x," + -id);
+            }
+        }
+        FeatureJoin join = new FeatureJoin(FeatureJoin.Source.csv(write(labels).getPath(), false,
+                FeatureJoin.Key.column(0), 1))
+                .join(FeatureJoin.Source.csv(write(a).getPath(), false, FeatureJoin.Key.column(0), 1))
+                .join(FeatureJoin.Source.csv(write(b).getPath(), false, FeatureJoin.Key.column(0), 2));
+        Data data = new Data().readJoinedData(join);
+
+        // ids divisible by 6, in the probe source's order
+        assertEquals(3334, data.getSampleNum());
+        SampleMatrix x = data.getMatrix("original");
+        for (int i = 0; i < data.getSampleNum(); i++) {
+            assertEquals(6 * i * 0.5, data.getLabels().get(i), 0);
+            assertEquals(6 * i, x.dot(i, new double[]{1, 0}), 0);
+            assertEquals(-6 * i, x.dot(i, new double[]{0, 1}), 0);
+        }
+    }
+
+    @Test
+    public void scalesAndTrainsJoinedData() throws IOException {
+        Random random = new Random(5L);
+        List<String> labels = new ArrayList<>(), features = new ArrayList<>();
+        for (int id = 0; id < 500; id++) {
+            double a = random.nextDouble() * 10, b = random.nextDouble() - 0.5;
+            labels.add(id + "," + (Math.sin(a) + b));
+            features.add(id + "," + a + "," + b);
+        }
+        File labelFile = write(labels), featureFile = write(features);
+        Data joined = new Data().readJoinedData(join(labelFile, featureFile));
+        // the same rows read as svm_nodes
+        File csv = this.folder.newFile();
+        joined.export(csv.getPath(), "original", LibConfig.Format.CSV, false);
+        Data read = new Data().readDataFromCSVFile(csv.getPath());
+
+        double[][] scaleParam = joined.scaleTrainingData();
+        assertEquals(Arrays.deepToString(read.scaleTrainingData()), Arrays.deepToString(scaleParam));
+        // a join reads its sources once
+        Data test = new Data().readJoinedData(join(labelFile, featureFile));
+        test.scaleTestData(scaleParam);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        svm_model expected = SMOSolverTest.trainLibsvm(read, param);
+        svm_model actual = SMOSolverTest.trainLibsvm(joined, param);
+        SampleMatrix scaled = read.getMatrix("scaled"), testScaled = test.getMatrix("scaled");
+        double[] row = new double[scaled.cols()], testRow = new double[scaled.cols()];
+        for (int i = 0; i < scaled.rows(); i++) {
+            scaled.copyRow(i, row);
+            testScaled.copyRow(i, testRow);
+            assertEquals(Arrays.toString(row), Arrays.toString(testRow));
+            assertEquals(SVMLib.predict(row, expected), SVMLib.predict(row, actual), 1e-12);
+        }
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private static FeatureJoin join(File labels, File features) throws IOException {
+        return new FeatureJoin(FeatureJoin.Source.csv(labels.getPath(), false, FeatureJoin.Key.column(0), 1))
+                .join(FeatureJoin.Source.csv(features.getPath(), false, FeatureJoin.Key.column(0), 1, 2));
+    }
+
+    private File write(List<String> lines) throws IOException {
+        File file = this.folder.newFile();
+        Files.write(file.toPath(), lines, StandardCharsets.US_ASCII);
+        return file;
+    }
+}
+
+// End FeatureJoinTest.java
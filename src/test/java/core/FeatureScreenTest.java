@@ -0,0 +1,201 @@
+package core;
+
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * screening of constant, collinear and useless columns
+ */
+public class FeatureScreenTest {
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void dropsConstantAndCollinearColumns() {
+        Data data = redundant(3000, 7L);
+        SampleMatrix x = data.getMatrix("original");
+
+        FeatureScreen.Report report = new FeatureScreen().screen(x, data.getLabelArray(), null);
+
+        // column 3 is constant, column 4 is twice column 0
+        assertEquals("constant", report.dropped[3]);
+        assertTrue(report.dropped[0] == null ^ report.dropped[4] == null);
+        assertEquals(4, report.getKept().length);
+        assertEquals(1.0d, Math.abs(report.correlation[0]), 0.9);
+        assertTrue(report.information[1] > 5 * report.information[5]);
+    }
+
+    @Test
+    public void wrapperDropsNoise() {
+        Data data = redundant(3000, 5L);
+        data.scaleTrainingData();
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 0);
+
+        FeatureScreen.Report report = new FeatureScreen().setWrapper(2)
+                .screen(data.getMatrix("scaled"), data.getLabelArray(), param);
+
+        assertNotNull(report.dropped[5]);
+        assertNull(report.dropped[1]);
+        assertNull(report.dropped[2]);
+        assertEquals(3, report.getKept().length);
+    }
+
+    @Test
+    public void screenedModelProjectsSamples() throws IOException {
+        Data data = redundant(500, 3L);
+        int[] columns = {0, 1, 2};
+        Data selected = data.select(columns);
+        assertEquals(3, selected.getFeatureNum());
+        svm_model model = SMOSolverTest.trainLibsvm(selected, SMOSolverTest.param(svm_parameter.RBF, 100));
+
+        File file = this.folder.newFile();
+        SVMLib.saveModel(new ScreenedModel(columns, data.getFeatureNum(), model), file.getPath());
+        ScreenedModel screened = (ScreenedModel) SVMLib.loadModel(file.getPath());
+        assertNotNull(screened);
+        assertArrayEquals(columns, screened.getColumns());
+
+        SampleMatrix x = data.getMatrix("original");
+        double[] sample = new double[x.cols()];
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, sample);
+            assertEquals(SVMLib.predict(Arrays.copyOf(sample, 3), model), screened.predict(sample), 1e-12);
+        }
+    }
+
+    @Test
+    public void trainingOnScreenedDataReturnsScreenedModel() throws IOException {
+        Data data = redundant(400, 9L);
+        File file = csv(data, this.folder.newFile());
+        SVMLib lib = SVMLib.getInstance().setType(LibConfig.Type.REGRESSION).initDataFromFile(file.getPath());
+        lib.screenFeatures(0);
+        svm_model model = lib.train();
+        assertTrue(model instanceof ScreenedModel);
+        assertEquals(6, ((ScreenedModel) model).getWidth());
+
+        // full-width rows are projected on every prediction path
+        SampleMatrix x = data.getMatrix("original");
+        double[] sample = new double[x.cols()];
+        Regressor compiled = lib.compile(model);
+        double squared = 0.0d;
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, sample);
+            double prediction = ((ScreenedModel) model).predict(sample);
+            assertEquals(prediction, SVMLib.predict(sample, model), 0);
+            assertEquals(prediction, compiled.predict(sample), 1e-9);
+            double diff = prediction - data.getLabels().get(i);
+            squared += diff * diff;
+        }
+        BatchScorer.Report report = SVMLib.test(model, file.getPath(), null, null);
+        assertNotNull(report);
+        assertEquals(Math.sqrt(squared / x.rows()), report.getRMSE(), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void screenedModelRejectsOtherWidths() {
+        Data data = redundant(100, 3L);
+        int[] columns = {0, 1, 2};
+        svm_model model = SMOSolverTest.trainLibsvm(data.select(columns), SMOSolverTest.param(svm_parameter.RBF, 100));
+        new ScreenedModel(columns, data.getFeatureNum(), model).predict(new double[columns.length]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void modelsWithoutColumnsAreRefused() throws IOException {
+        File file = csv(redundant(200, 9L), this.folder.newFile());
+        SVMLib lib = SVMLib.getInstance().setType(LibConfig.Type.REGRESSION).initDataFromFile(file.getPath());
+        lib.screenFeatures(0);
+        lib.trainFourier(100);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void everyColumnConstantFailsFast() throws IOException {
+        Data data = redundant(100, 3L);
+        File file = csv(data.select(new int[]{3}), this.folder.newFile());
+        SVMLib.getInstance().initDataFromFile(file.getPath()).screenFeatures(0);
+    }
+
+    @Test
+    public void constantColumnsScaleToTheLowerBound() {
+        Data train = redundant(100, 3L), test = redundant(100, 4L);
+        double[][] scaleParam = train.scaleTrainingData();
+        // the test data's constant column differs from the training data's
+        for (svm_node[] sample : test.getDataSet("original")) {
+            sample[3].value = 2;
+        }
+        test.scaleTestData(scaleParam);
+        for (svm_node[] sample : test.getDataSet("scaled")) {
+            assertEquals(-1.0d, sample[3].value, 0);
+        }
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * write the original samples as csv lines "y,x1,...,xn"
+     */
+    private static File csv(Data data, File file) throws IOException {
+        SampleMatrix x = data.getMatrix("original");
+        double[] sample = new double[x.cols()];
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int i = 0; i < x.rows(); i++) {
+                x.copyRow(i, sample);
+                StringBuilder line = new StringBuilder().append(data.getLabels().get(i));
+                for (double value : sample) {
+                    line.append(',').append(value);
+                }
+                writer.println(line);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * three informative columns, a constant one, a copy of the first and noise
+     */
+    private static Data redundant(int n, long seed) {
+        Random random = new Random(seed);
+        Vector<svm_node[]> samples = new Vector<>();
+        Vector<Double> labels = new Vector<>();
+        for (int i = 0; i < n; i++) {
+            double[] values = new double[6];
+            for (int j = 0; j < 3; j++) {
+                values[j] = random.nextDouble() * 2 - 1;
+            }
+            values[3] = 1;
+            values[4] = 2 * values[0];
+            values[5] = random.nextDouble() * 2 - 1;
+            svm_node[] sample = new svm_node[values.length];
+            for (int j = 0; j < values.length; j++) {
+                sample[j] = new svm_node();
+                sample[j].index = j + 1;
+                sample[j].value = values[j];
+            }
+            samples.add(sample);
+            labels.add(Math.sin(3 * values[0]) + Math.sin(3 * values[1]) / 2 + Math.sin(3 * values[2]) / 3
+                    + random.nextGaussian() * 0.05);
+        }
+        return new Data(samples, labels);
+    }
+}
+
+// End FeatureScreenTest.java
@@ -0,0 +1,60 @@
+package core;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * random Fourier features against the exact RBF kernel and model
+ */
+public class FourierModelTest {
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void approximatesKernel() {
+        Data data = SMOSolverTest.synthetic(50, 4, 3L);
+        SampleMatrix x = data.getMatrix("scaled");
+        double gamma = 0.5d;
+        FourierFeatures features = new FourierFeatures(4, 4000, gamma, 1L);
+        SampleMatrix z = features.transform(x);
+
+        for (int i = 0; i < 10; i++) {
+            int j = i + 20;
+            double exact = Math.exp(-gamma * (x.squaredNorm(i) + x.squaredNorm(j) - 2 * x.dot(i, j)));
+            assertEquals(exact, z.dot(i, j), 0.05);
+        }
+    }
+
+    @Test
+    public void closeToExactModel() {
+        Data train = SMOSolverTest.synthetic(2000, 4, 7L);
+        Data test = SMOSolverTest.synthetic(300, 4, 11L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        svm_model exact = SMOSolverTest.trainLibsvm(train, param);
+
+        FourierFeatures features = new FourierFeatures(4, 1000, param.gamma, 1L);
+        double[] solution = new LinearSVR(param.C, param.p)
+                .solve(features.transform(train.getMatrix("scaled")), train.getLabelArray());
+        FourierModel model = new FourierModel(features, solution);
+
+        SampleMatrix x = test.getMatrix("scaled");
+        double[] exactPredictions = new double[x.rows()];
+        double[] approxPredictions = new double[x.rows()];
+        double[] sample = new double[x.cols()];
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, sample);
+            exactPredictions[i] = svm.svm_predict(exact, x.toNodes(i));
+            approxPredictions[i] = model.predict(sample);
+        }
+        double exactRmse = SVMLib.rmse(exactPredictions, test.getLabelArray());
+        double approxRmse = SVMLib.rmse(approxPredictions, test.getLabelArray());
+        System.out.println("exact rmse: " + exactRmse + "; fourier rmse: " + approxRmse);
+        assertTrue(approxRmse < exactRmse * 1.5);
+    }
+}
+
+// End FourierModelTest.java
@@ -0,0 +1,148 @@
+package core;
+
+import libsvm.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * grid search tasks run by workers on localhost against local cross validation
+ */
+public class GridSearchTest {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final int FOLDS = 5;
+
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void mappedSnapshotMatchesData() throws IOException {
+        Data data = SMOSolverTest.synthetic(500, 3, 7L);
+        DataSnapshot snapshot = DataSnapshot.map(snapshot(data));
+        SampleMatrix expected = data.getMatrix("scaled");
+        assertEquals(expected.rows(), snapshot.matrix.rows());
+        for (int i = 0; i < expected.rows(); i++) {
+            assertEquals(data.getLabels().get(i), snapshot.labels[i], 0);
+            assertEquals(expected.squaredNorm(i), snapshot.matrix.squaredNorm(i), 0);
+            for (int j = 0; j < 10; j++) {
+                assertEquals(expected.dot(i, j), snapshot.matrix.dot(i, j), 0);
+            }
+        }
+    }
+
+    @Test
+    public void threadWorkers() throws IOException {
+        Data data = SMOSolverTest.synthetic(300, 3, 7L);
+        List<GridSearchCoordinator.Task> tasks = tasks(snapshot(data));
+        double[] losses;
+        try (GridSearchCoordinator coordinator = new GridSearchCoordinator()) {
+            startWorker(coordinator.getPort());
+            startWorker(coordinator.getPort());
+            losses = coordinator.run(tasks);
+        }
+        assertLocalLosses(data, tasks, losses);
+    }
+
+    @Test
+    public void failedWorkerIsRetried() throws IOException {
+        Data data = SMOSolverTest.synthetic(300, 3, 5L);
+        List<GridSearchCoordinator.Task> tasks = tasks(snapshot(data));
+        double[] losses;
+        try (GridSearchCoordinator coordinator = new GridSearchCoordinator()) {
+            // takes a task and disconnects without an answer, then a real worker takes over
+            Thread failing = new Thread(() -> {
+                try (Socket socket = new Socket("127.0.0.1", coordinator.getPort())) {
+                    new ObjectOutputStream(socket.getOutputStream()).flush();
+                    new ObjectInputStream(socket.getInputStream()).readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new RuntimeException(e);
+                }
+                startWorker(coordinator.getPort());
+            });
+            failing.setDaemon(true);
+            failing.start();
+            losses = coordinator.run(tasks);
+        }
+        assertLocalLosses(data, tasks, losses);
+    }
+
+    @Test
+    public void processWorkers() throws IOException {
+        Data data = SMOSolverTest.synthetic(300, 3, 3L);
+        List<GridSearchCoordinator.Task> tasks = tasks(snapshot(data));
+        double[] losses;
+        try (GridSearchCoordinator coordinator = new GridSearchCoordinator()) {
+            coordinator.launch(2, "-Xmx256m");
+            losses = coordinator.run(tasks);
+        }
+        assertLocalLosses(data, tasks, losses);
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private String snapshot(Data data) throws IOException {
+        File file = this.folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            DataSnapshot.write(data.getMatrix("scaled"), data.getLabelArray(), out.getChannel());
+        }
+        return file.getPath();
+    }
+
+    private static List<GridSearchCoordinator.Task> tasks(String snapshot) {
+        List<GridSearchCoordinator.Task> tasks = new ArrayList<>();
+        for (double c : new double[]{1, 8}) {
+            svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+            param.C = c;
+            for (int fold = 0; fold < FOLDS; fold++) {
+                tasks.add(new GridSearchCoordinator.Task(tasks.size(), snapshot, param, fold, FOLDS));
+            }
+        }
+        return tasks;
+    }
+
+    private static void startWorker(int port) {
+        Thread worker = new Thread(() -> GridSearchWorker.run("127.0.0.1", port));
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * the same folds trained by libsvm in this JVM
+     */
+    private static void assertLocalLosses(Data data, List<GridSearchCoordinator.Task> tasks, double[] losses) {
+        int vsLen = data.getSampleNum() / FOLDS;
+        for (GridSearchCoordinator.Task task : tasks) {
+            int vsStart = task.fold * vsLen, vsEnd = vsStart + vsLen;
+            List<svm_node[]> samples = new ArrayList<>(data.getDataSet("scaled"));
+            List<Double> labels = new ArrayList<>(data.getLabels());
+            samples.subList(vsStart, vsEnd).clear();
+            labels.subList(vsStart, vsEnd).clear();
+            Data train = new Data(samples, labels);
+            svm_model model = SMOSolverTest.trainLibsvm(train, task.param);
+            double expected = 0.0d;
+            for (int j = vsStart; j < vsEnd; j++) {
+                double diff = svm.svm_predict(model, data.getDataSet("scaled").get(j)) - data.getLabels().get(j);
+                expected += diff * diff;
+            }
+            assertEquals(expected, losses[task.id], 1e-2 * expected);
+        }
+    }
+}
+
+// End GridSearchTest.java
@@ -0,0 +1,240 @@
+package core;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * bytes allocated and operations per second of the hot paths on fixed synthetic data,
+ * checked against the baselines in hot-path-baselines.properties
+ * an operation fails when it allocates more than 10% above its baseline; with
+ * -Dhotpath.throughput=true also when it runs at less than half its baseline rate, which
+ * depends on the machine, so it is left to runs on a known one. run with
+ * -Dhotpath.record=file to write the measures to a file instead of checking them, e.g. to
+ * update the baselines after a change
+ */
+public class HotPathGuardTest {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final String BASELINES = "hot-path-baselines.properties";
+
+    private static final double ALLOCATION_SLACK = 1.1d;
+
+    private static final double THROUGHPUT_SLACK = 0.5d;
+
+    private static final int WARMUP_ROUNDS = 10;
+
+    private static final int ROUNDS = 5;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    private static Properties baselines;
+
+    private static Properties measures;
+
+    /* keeps the results of the measured operations alive */
+    private static volatile double sink;
+
+    //~ Test methods -----------------------------------------------------------
+
+    @BeforeClass
+    public static void loadBaselines() throws IOException {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        baselines = new Properties();
+        try (InputStream in = HotPathGuardTest.class.getResourceAsStream(BASELINES)) {
+            assertNotNull(BASELINES + " not found", in);
+            baselines.load(in);
+        }
+        measures = new Properties();
+    }
+
+    @AfterClass
+    public static void recordMeasures() throws IOException {
+        String file = System.getProperty("hotpath.record");
+        if (file != null && measures != null) {
+            try (Writer writer = new FileWriter(file)) {
+                measures.store(writer, "measured by HotPathGuardTest");
+            }
+        }
+    }
+
+    @Test
+    public void svmPredict() {
+        Data data = SMOSolverTest.synthetic(1000, 8, 7L);
+        svm_model model = SMOSolverTest.trainLibsvm(data, SMOSolverTest.param(svm_parameter.RBF, 100));
+        double[][] samples = rows(data);
+
+        check("svmPredict", measure(samples.length, () -> {
+            double sum = 0.0d;
+            for (double[] sample : samples) {
+                sum += SVMLib.predict(sample, model);
+            }
+            sink = sum;
+        }));
+    }
+
+    @Test
+    public void kernelPredict() {
+        Data data = SMOSolverTest.synthetic(1000, 8, 7L);
+        svm_model model = SMOSolverTest.trainLibsvm(data, SMOSolverTest.param(svm_parameter.RBF, 100));
+        KernelModel kernelModel = KernelModel.of(model, LibConfig.Precision.DOUBLE);
+        double[][] samples = rows(data);
+
+        check("kernelPredict", measure(samples.length, () -> {
+            double sum = 0.0d;
+            for (double[] sample : samples) {
+                sum += kernelModel.predict(sample);
+            }
+            sink = sum;
+        }));
+    }
+
+    @Test
+    public void parseLine() {
+        String[] lines = lines(SMOSolverTest.synthetic(2000, 8, 7L));
+        double[] labels = new double[1];
+
+        check("parseLine", measure(lines.length, () -> {
+            double sum = 0.0d;
+            for (String line : lines) {
+                sum += Data.parseCSVLine(line, 8, labels)[7].value + labels[0];
+            }
+            sink = sum;
+        }));
+    }
+
+    @Test
+    public void scoreLine() {
+        Data data = SMOSolverTest.synthetic(1000, 8, 7L);
+        Data test = SMOSolverTest.synthetic(2000, 8, 5L);
+        double[][] scaleParam = data.scaleTrainingData();
+        svm_model model = SMOSolverTest.trainLibsvm(data, SMOSolverTest.param(svm_parameter.RBF, 100));
+        BatchScorer scorer = BatchScorer.of(model).setScaleParam(scaleParam);
+        byte[] bytes = String.join("\n", lines(test)).getBytes(StandardCharsets.US_ASCII);
+
+        check("scoreLine", measure(test.getSampleNum(), () -> sink = scorer.score(bytes, bytes.length).getRMSE()));
+    }
+
+    @Test
+    public void scaleSample() {
+        Data data = SMOSolverTest.synthetic(2000, 8, 7L);
+        Data test = SMOSolverTest.synthetic(2000, 8, 5L);
+        double[][] scaleParam = data.scaleTrainingData();
+
+        check("scaleSample", measure(test.getSampleNum(), () -> {
+            test.scaleTestData(scaleParam);
+            sink = test.getDataSet("scaled").get(0)[0].value;
+        }));
+    }
+
+    @Test
+    public void crossValidationFold() {
+        Data data = SMOSolverTest.synthetic(200, 4, 7L);
+        data.scaleTrainingData();
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        double[] cs = {1, 4, 16};
+        int folds = 10;
+        // the fold of SVMLib's grid search with its default solver, libsvm
+        SVMLib lib = SVMLib.getInstance().setSolver(LibConfig.Solver.LIBSVM);
+        svm.svm_set_print_string_function(s -> { });
+
+        check("crossValidationFold", measure(folds, () -> {
+            double sum = 0.0d;
+            for (int i = 0; i < folds; i++) {
+                for (double loss : lib.crossValidationFold(data, param, cs, i, folds, LibConfig.Precision.DOUBLE)) {
+                    sum += loss;
+                }
+            }
+            sink = sum;
+        }));
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * run a batch of operations until the JIT settles, then take the fewest bytes and
+     * the best rate of several rounds
+     * @param ops the number of operations in one batch
+     * @return bytes allocated per operation and operations per second
+     */
+    private static double[] measure(int ops, Runnable batch) {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            batch.run();
+        }
+        long id = Thread.currentThread().getId();
+        double bytes = Double.MAX_VALUE, rate = 0.0d;
+        for (int r = 0; r < ROUNDS; r++) {
+            long allocated = threads.getThreadAllocatedBytes(id);
+            long startTime = System.nanoTime();
+            batch.run();
+            long elapsed = System.nanoTime() - startTime;
+            bytes = Math.min(bytes, (double) (threads.getThreadAllocatedBytes(id) - allocated) / ops);
+            rate = Math.max(rate, ops * 1e9 / Math.max(1, elapsed));
+        }
+        return new double[]{bytes, rate};
+    }
+
+    private static void check(String name, double[] measure) {
+        System.out.printf("%s: %.1f bytes/op, %.0f ops/s%n", name, measure[0], measure[1]);
+        measures.setProperty(name + ".bytesPerOp", String.valueOf(Math.round(measure[0])));
+        measures.setProperty(name + ".opsPerSec", String.valueOf(Math.round(measure[1])));
+        if (System.getProperty("hotpath.record") != null) {
+            return;
+        }
+        double bytes = Double.parseDouble(baselines.getProperty(name + ".bytesPerOp"));
+        double rate = Double.parseDouble(baselines.getProperty(name + ".opsPerSec"));
+        // a byte of slack for the measurement itself, which matters to allocation-free paths
+        assertTrue(name + " allocates " + measure[0] + " bytes/op, baseline " + bytes,
+                measure[0] <= bytes * ALLOCATION_SLACK + 1);
+        if (Boolean.getBoolean("hotpath.throughput")) {
+            assertTrue(name + " runs " + measure[1] + " ops/s, baseline " + rate,
+                    measure[1] >= rate * THROUGHPUT_SLACK);
+        }
+    }
+
+    private static double[][] rows(Data data) {
+        SampleMatrix x = data.getMatrix("original");
+        double[][] rows = new double[x.rows()][x.cols()];
+        for (int i = 0; i < rows.length; i++) {
+            x.copyRow(i, rows[i]);
+        }
+        return rows;
+    }
+
+    /**
+     * @return the samples as "y,x1,...,xn" lines of six decimals, as csv exports usually are
+     */
+    private static String[] lines(Data data) {
+        String[] lines = new String[data.getSampleNum()];
+        for (int i = 0; i < lines.length; i++) {
+            StringBuilder line = new StringBuilder().append(Math.round(data.getLabels().get(i) * 1e6) / 1e6);
+            for (svm_node node : data.getDataSet("original").get(i)) {
+                line.append(',').append(Math.round(node.value * 1e6) / 1e6);
+            }
+            lines[i] = line.toString();
+        }
+        return lines;
+    }
+}
+
+// End HotPathGuardTest.java
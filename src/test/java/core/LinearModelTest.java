@@ -0,0 +1,49 @@
+package core;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * collapsed linear models against libsvm's support vector sum
+ */
+public class LinearModelTest {
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void collapsedModelPredictsTheSame() {
+        Data train = SMOSolverTest.synthetic(500, 5, 7L);
+        Data test = SMOSolverTest.synthetic(100, 5, 11L);
+        svm_model model = SMOSolverTest.trainLibsvm(train, SMOSolverTest.param(svm_parameter.LINEAR, 100));
+        LinearModel linear = LinearModel.of(model);
+
+        SampleMatrix x = test.getMatrix("scaled");
+        double[] sample = new double[x.cols()];
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, sample);
+            double expected = svm.svm_predict(model, x.toNodes(i));
+            assertEquals(expected, linear.predict(sample), 1e-9);
+            assertEquals(expected, SVMLib.predict(sample, model), 1e-9);
+            assertEquals(expected, svm.svm_predict(linear.toSvmModel(model.param), x.toNodes(i)), 1e-9);
+        }
+    }
+
+    @Test
+    public void coordinateDescentMatchesLibsvm() {
+        Data train = SMOSolverTest.synthetic(500, 5, 7L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.LINEAR, 100);
+        LinearModel expected = LinearModel.of(SMOSolverTest.trainLibsvm(train, param));
+        double[] solution = new LinearSVR(param.C, param.p).setEps(1e-4)
+                .solve(train.getMatrix("scaled"), train.getLabelArray());
+
+        double[] weights = expected.getWeights();
+        for (int k = 0; k < weights.length; k++) {
+            assertEquals(weights[k], solution[k], 0.05);
+        }
+    }
+}
+
+// End LinearModelTest.java
@@ -0,0 +1,101 @@
+package core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * memory estimates and admission of training and tuning plans
+ */
+public class MemoryPlanTest {
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void estimateGrowsWithTheJob() {
+        Data data = SMOSolverTest.synthetic(5000, 10, 7L);
+        long train = MemoryPlan.train(data, 100, LibConfig.Solver.LIBSVM, LibConfig.Precision.DOUBLE).estimate();
+        long smo = MemoryPlan.train(data, 100, LibConfig.Solver.SMO, LibConfig.Precision.DOUBLE).estimate();
+        long single = MemoryPlan.train(data, 100, LibConfig.Solver.SMO, LibConfig.Precision.SINGLE).estimate();
+        long tune = MemoryPlan.tune(data, 100, LibConfig.Solver.LIBSVM, LibConfig.Precision.DOUBLE, 16, 10, 1)
+                .estimate();
+        long parallel = MemoryPlan.tune(data, 100, LibConfig.Solver.LIBSVM, LibConfig.Precision.DOUBLE, 16, 10, 4)
+                .estimate();
+
+        // the 5000 x 5000 kernel matrix fits a 100 MB cache in floats, not in doubles
+        assertTrue(train > 5000L * 5000 * 4);
+        assertTrue(smo > 100L << 20);
+        assertTrue(single < smo && single > 5000L * 5000 * 4);
+        assertTrue(tune > train - 5000L * 5000 * 4);
+        assertTrue(parallel > 3 * (tune - train));
+    }
+
+    @Test
+    public void admitLowersThreadsThenCache() {
+        Data data = SMOSolverTest.synthetic(5000, 10, 7L);
+        long two = MemoryPlan.tune(data, 100, LibConfig.Solver.LIBSVM, LibConfig.Precision.DOUBLE, 16, 10, 2)
+                .estimate();
+        MemoryPlan plan = MemoryPlan.tune(data, 100, LibConfig.Solver.LIBSVM, LibConfig.Precision.DOUBLE, 16, 10, 8);
+        assertTrue(plan.admit(two));
+        assertEquals(2, plan.getThreads());
+        assertEquals(100, plan.getCacheSize(), 0);
+
+        long small = MemoryPlan.tune(data, 10, LibConfig.Solver.LIBSVM, LibConfig.Precision.DOUBLE, 16, 10, 1)
+                .estimate();
+        plan = MemoryPlan.tune(data, 100, LibConfig.Solver.LIBSVM, LibConfig.Precision.DOUBLE, 16, 10, 8);
+        assertTrue(plan.admit(small));
+        assertEquals(1, plan.getThreads());
+        assertEquals(10, plan.getCacheSize(), 0.5);
+        assertTrue(plan.estimate() <= small);
+    }
+
+    @Test
+    public void admitSwitchesToSinglePrecision() {
+        Data data = SMOSolverTest.synthetic(20000, 200, 7L);
+        MemoryPlan smo = MemoryPlan.train(data, 100, LibConfig.Solver.SMO, LibConfig.Precision.DOUBLE);
+        MemoryPlan libsvm = MemoryPlan.train(data, 100, LibConfig.Solver.LIBSVM, LibConfig.Precision.DOUBLE);
+        // room for the single precision matrix and a small cache only
+        long budget = MemoryPlan.train(data, 2, LibConfig.Solver.SMO, LibConfig.Precision.SINGLE).estimate();
+
+        assertTrue(smo.admit(budget));
+        assertEquals(LibConfig.Precision.SINGLE, smo.getPrecision());
+        assertTrue(smo.estimate() <= budget);
+        // libsvm keeps its samples as svm_nodes whatever the precision
+        assertFalse(libsvm.admit(budget / 4));
+        assertEquals(LibConfig.Precision.DOUBLE, libsvm.getPrecision());
+    }
+
+    @Test
+    public void singlePrecisionJobLeavesTheDataExact() throws IOException {
+        Data data = SMOSolverTest.synthetic(500, 4, 7L);
+        File binary = this.folder.newFile();
+        data.export(binary.getPath(), "original", LibConfig.Format.BINARY, false);
+        // held only as a matrix, which could not be rebuilt once rounded
+        Data read = new Data().readDataFromBinaryFile(binary.getPath());
+
+        SampleMatrix single = read.getMatrix("original", LibConfig.Precision.SINGLE);
+        assertTrue(single instanceof FloatMatrix);
+        SampleMatrix x = read.getMatrix("original"), expected = data.getMatrix("original");
+        assertTrue(x instanceof DenseMatrix);
+        double[] row = new double[x.cols()], expectedRow = new double[x.cols()];
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, row);
+            expected.copyRow(i, expectedRow);
+            assertArrayEquals(expectedRow, row, 0);
+        }
+    }
+}
+
+// End MemoryPlanTest.java
@@ -0,0 +1,41 @@
+package core;
+
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * accuracy cost of each compression stage
+ */
+public class ModelCompressorTest {
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void compressionKeepsAccuracy() {
+        Data train = SMOSolverTest.synthetic(3000, 4, 7L);
+        Data test = SMOSolverTest.synthetic(500, 4, 11L);
+        svm_model model = SMOSolverTest.trainLibsvm(train, SMOSolverTest.param(svm_parameter.RBF, 100));
+        SampleMatrix x = test.getMatrix("scaled");
+
+        svm_model pruned = ModelCompressor.prune(model, 1e-3);
+        double[] report = ModelCompressor.report(model, pruned, x, test.getLabelArray());
+        assertTrue(pruned.l <= model.l);
+        assertEquals(0, report[2], 1e-2);
+
+        svm_model merged = ModelCompressor.merge(pruned, 1e-3);
+        report = ModelCompressor.report(model, merged, x, test.getLabelArray());
+        assertEquals(0, report[2], 1e-2);
+
+        svm_model reduced = ModelCompressor.reduce(merged, model.l / 3);
+        report = ModelCompressor.report(model, reduced, x, test.getLabelArray());
+        System.out.println("support vectors: " + model.l + " -> " + reduced.l
+                + "; rmse: " + report[0] + " -> " + report[1]);
+        assertEquals(model.l / 3, reduced.l);
+        assertTrue(report[1] < report[0] * 1.1);
+    }
+}
+
+// End ModelCompressorTest.java
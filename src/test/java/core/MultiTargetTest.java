@@ -0,0 +1,150 @@
+package core;
+
+import libsvm.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * several targets read from one file and trained on one shared kernel
+ */
+public class MultiTargetTest {
+    //~ Static fields and initializer ------------------------------------------
+
+    private static final int TARGETS = 3;
+
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void targetsShareSamples() throws IOException {
+        Data source = SMOSolverTest.synthetic(200, 4, 7L);
+        Data data = new Data().readDataFromCSVFile(write(source), TARGETS);
+        assertEquals(TARGETS, data.getTargetNum());
+        assertEquals(4, data.getFeatureNum());
+        data.scaleTrainingData();
+        for (int t = 0; t < TARGETS; t++) {
+            Data target = data.forTarget(t);
+            assertSame(data.getDataSet("scaled"), target.getDataSet("scaled"));
+            for (int i = 0; i < source.getSampleNum(); i++) {
+                assertEquals(label(source.getLabels().get(i), t), target.getLabels().get(i), 1e-12);
+            }
+        }
+        assertSame(data.getLabels(), data.forTarget(0).getLabels());
+    }
+
+    @Test
+    public void sharedKernelMatchesSeparateTraining() throws Exception {
+        Data data = new Data().readDataFromCSVFile(write(SMOSolverTest.synthetic(600, 4, 3L)), TARGETS);
+        SampleMatrix x = data.getMatrix("scaled");
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 0.02);
+        // a cache of a few rows, so rows are evicted while other solvers still read them
+        KernelMatrix shared = new KernelMatrix(x, param).share();
+
+        ExecutorService pool = Executors.newFixedThreadPool(TARGETS);
+        List<Future<svm_model>> futures = new ArrayList<>();
+        for (int t = 0; t < TARGETS; t++) {
+            double[] y = data.forTarget(t).getLabelArray();
+            futures.add(pool.submit(() -> new SMOSolver(shared, y, param).solve(x)));
+        }
+        for (int t = 0; t < TARGETS; t++) {
+            svm_model expected = new SMOSolver(new KernelMatrix(x, param), data.forTarget(t).getLabelArray(), param)
+                    .solve(x);
+            svm_model actual = futures.get(t).get();
+            assertEquals(expected.l, actual.l);
+            assertEquals(expected.rho[0], actual.rho[0], 1e-12);
+            for (int i = 0; i < expected.l; i++) {
+                assertEquals(expected.sv_coef[0][i], actual.sv_coef[0][i], 1e-12);
+            }
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void targetsValidateOnOneBlock() throws Exception {
+        Data data = new Data().readDataFromCSVFile(write(SMOSolverTest.synthetic(300, 4, 5L)), TARGETS);
+        SampleMatrix x = data.getMatrix("scaled");
+        int[] trainRows = new int[200], validRows = new int[100];
+        for (int i = 0; i < 300; i++) {
+            if (i < 100) {
+                validRows[i] = i;
+            } else {
+                trainRows[i - 100] = i;
+            }
+        }
+        double[] values = new double[200 * 4], row = new double[4];
+        for (int i = 0; i < 200; i++) {
+            x.copyRow(trainRows[i], row);
+            System.arraycopy(row, 0, values, i * 4, 4);
+        }
+        SampleMatrix trainX = new DenseMatrix(200, 4, values);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        KernelMatrix shared = new KernelMatrix(trainX, param).share();
+
+        List<svm_model> models = new ArrayList<>();
+        List<double[]> labels = new ArrayList<>();
+        for (int t = 0; t < TARGETS; t++) {
+            double[] y = data.forTarget(t).getLabelArray(), trainY = new double[200];
+            for (int i = 0; i < 200; i++) {
+                trainY[i] = y[trainRows[i]];
+            }
+            for (double c : new double[]{1, 16}) {
+                svm_parameter candidate = (svm_parameter) param.clone();
+                candidate.C = c;
+                models.add(new SMOSolver(shared, trainY, candidate).solve(trainX));
+                labels.add(y);
+            }
+        }
+        double[] losses = ValidationKernel.losses(x, labels, trainRows, validRows, models);
+        for (int k = 0; k < models.size(); k++) {
+            double expected = ValidationKernel.losses(x, labels.get(k), trainRows, validRows,
+                    models.subList(k, k + 1))[0];
+            assertEquals(expected, losses[k], 1e-9 * expected);
+        }
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * the label of target t derived from the label of the source data
+     */
+    private static double label(double y, int t) {
+        return t == 0 ? y : t == 1 ? 2 * y + 1 : y * y;
+    }
+
+    private String write(Data data) throws IOException {
+        File file = this.folder.newFile();
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int i = 0; i < data.getSampleNum(); i++) {
+                StringBuilder line = new StringBuilder();
+                for (int t = 0; t < TARGETS; t++) {
+                    line.append(label(data.getLabels().get(i), t)).append(',');
+                }
+                for (svm_node node : data.getDataSet("original").get(i)) {
+                    line.append(node.value).append(',');
+                }
+                line.setLength(line.length() - 1);
+                writer.println(line);
+            }
+        }
+        return file.getPath();
+    }
+}
+
+// End MultiTargetTest.java
@@ -0,0 +1,58 @@
+package core;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Nystrom models for each landmark sampling against the exact model
+ */
+public class NystromModelTest {
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void closeToExactModel() {
+        Data train = SMOSolverTest.synthetic(2000, 4, 7L);
+        Data test = SMOSolverTest.synthetic(300, 4, 11L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        SampleMatrix x = test.getMatrix("scaled");
+        double exactRmse = rmse(SMOSolverTest.trainLibsvm(train, param), x, test.getLabelArray());
+
+        for (LibConfig.Landmarks sampling : LibConfig.Landmarks.values()) {
+            SampleMatrix samples = train.getMatrix("scaled");
+            int[] landmarks = NystromFeatures.selectLandmarks(samples, 200, sampling, param, 1L);
+            NystromFeatures features = new NystromFeatures(samples, landmarks, param);
+            double[] solution = new LinearSVR(param.C, param.p)
+                    .solve(features.transform(samples), train.getLabelArray());
+            NystromModel model = new NystromModel(features, solution);
+
+            double[] predictions = new double[x.rows()];
+            double[] sample = new double[x.cols()];
+            svm_model asSvm = model.toSvmModel();
+            for (int i = 0; i < x.rows(); i++) {
+                x.copyRow(i, sample);
+                predictions[i] = model.predict(sample);
+                assertEquals(predictions[i], svm.svm_predict(asSvm, x.toNodes(i)), 1e-9);
+            }
+            double rmse = SVMLib.rmse(predictions, test.getLabelArray());
+            System.out.println(sampling + " rmse: " + rmse + "; exact rmse: " + exactRmse);
+            assertTrue(rmse < exactRmse * 1.5);
+        }
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private static double rmse(svm_model model, SampleMatrix x, double[] labels) {
+        double[] predictions = new double[x.rows()];
+        for (int i = 0; i < x.rows(); i++) {
+            predictions[i] = svm.svm_predict(model, x.toNodes(i));
+        }
+        return SVMLib.rmse(predictions, labels);
+    }
+}
+
+// End NystromModelTest.java
@@ -0,0 +1,151 @@
+package core;
+
+import libsvm.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * incremental updates against a batch solve of the same window
+ */
+public class OnlineSVRTest {
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void batchesGiveTheBatchModel() {
+        Data data = SMOSolverTest.synthetic(400, 4, 7L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        OnlineSVR online = new OnlineSVR(param, 1000);
+        feed(online, data, 100);
+
+        svm_model expected = SMOSolverTest.trainLibsvm(data, param);
+        assertSamePredictions(expected, online);
+    }
+
+    @Test
+    public void slidingWindowForgetsOldSamples() {
+        Data data = SMOSolverTest.synthetic(600, 4, 5L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        OnlineSVR online = new OnlineSVR(param, 300);
+        feed(online, data, 100);
+        assertEquals(300, online.size());
+
+        Data last = new Data(data.getDataSet("scaled").subList(300, 600), data.getLabels().subList(300, 600));
+        svm_model expected = SMOSolverTest.trainLibsvm(last, param);
+        assertSamePredictions(expected, online);
+        assertSamePredictions(expected, OnlineSVR.of(expected, last.getMatrix("scaled"), last.getLabelArray(), 300));
+    }
+
+    @Test
+    public void continuesFromATrainedModel() {
+        Data data = SMOSolverTest.synthetic(500, 4, 3L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        Data first = new Data(data.getDataSet("scaled").subList(0, 400), data.getLabels().subList(0, 400));
+        Data rest = new Data(data.getDataSet("scaled").subList(400, 500), data.getLabels().subList(400, 500));
+
+        OnlineSVR online = OnlineSVR.of(SMOSolverTest.trainLibsvm(first, param),
+                first.getMatrix("scaled"), first.getLabelArray(), 1000);
+        online.update(rest.getMatrix("scaled"), rest.getLabelArray());
+        assertSamePredictions(SMOSolverTest.trainLibsvm(data, param), online);
+    }
+
+    @Test
+    public void maxAgeKeepsTheRecentHistory() {
+        Data data = SMOSolverTest.synthetic(500, 4, 3L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        Data first = new Data(data.getDataSet("scaled").subList(0, 400), data.getLabels().subList(0, 400));
+        Data rest = new Data(data.getDataSet("scaled").subList(400, 500), data.getLabels().subList(400, 500));
+
+        // the history of a model continued without timestamps is as recent as the model
+        OnlineSVR online = OnlineSVR.of(SMOSolverTest.trainLibsvm(first, param),
+                first.getMatrix("scaled"), first.getLabelArray(), 1000).setMaxAge(3600 * 1000L);
+        online.update(rest.getMatrix("scaled"), rest.getLabelArray());
+        assertEquals(500, online.size());
+
+        long[] timestamps = new long[400];
+        Arrays.fill(timestamps, 200, 400, 3600 * 1000L);
+        online = OnlineSVR.of(SMOSolverTest.trainLibsvm(first, param),
+                first.getMatrix("scaled"), first.getLabelArray(), timestamps, 1000).setMaxAge(3600 * 1000L);
+        online.update(rest.getMatrix("scaled"), rest.getLabelArray(), 2 * 3600 * 1000L);
+        assertEquals(300, online.size());
+    }
+
+    @Test
+    public void savesAndLoadsAfterUpdates() throws IOException {
+        Data data = SMOSolverTest.synthetic(500, 4, 3L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        Data first = new Data(data.getDataSet("scaled").subList(0, 400), data.getLabels().subList(0, 400));
+        Data rest = new Data(data.getDataSet("scaled").subList(400, 500), data.getLabels().subList(400, 500));
+        OnlineSVR online = new OnlineSVR(param, 1000);
+        feed(online, first, 100);
+
+        File file = this.folder.newFile();
+        SVMLib.saveModel(online, file.getPath());
+        OnlineSVR loaded = (OnlineSVR) SVMLib.loadModel(file.getPath());
+        assertNotNull(loaded);
+        assertEquals(online.size(), loaded.size());
+        // the loaded model keeps updating without the kernel cache it was saved with
+        loaded.update(rest.getMatrix("scaled"), rest.getLabelArray());
+        assertSamePredictions(SMOSolverTest.trainLibsvm(data, param), loaded);
+    }
+
+    @Test
+    public void slidingKernelMatchesNewKernel() {
+        SampleMatrix x = SMOSolverTest.synthetic(300, 4, 7L).getMatrix("scaled");
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        double[] values = new double[300 * 4];
+        for (int i = 0; i < 300; i++) {
+            double[] row = new double[4];
+            x.copyRow(i, row);
+            System.arraycopy(row, 0, values, i * 4, 4);
+        }
+        KernelMatrix old = new KernelMatrix(new DenseMatrix(200, 4, Arrays.copyOf(values, 800)), param);
+        for (int i = 0; i < 200; i += 3) {
+            old.row(i);
+        }
+        // drop 50 samples and add 100
+        DenseMatrix window = new DenseMatrix(250, 4, Arrays.copyOfRange(values, 200, 1200));
+        KernelMatrix slid = old.slide(window, 50), expected = new KernelMatrix(window, param);
+        for (int i = 0; i < 250; i++) {
+            assertArrayEquals(expected.row(i), slid.row(i), 0);
+        }
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    private static void feed(OnlineSVR online, Data data, int batchSize) {
+        double[] y = data.getLabelArray();
+        for (int start = 0; start < y.length; start += batchSize) {
+            int end = Math.min(y.length, start + batchSize);
+            Data batch = new Data(data.getDataSet("scaled").subList(start, end), data.getLabels().subList(start, end));
+            online.update(batch.getMatrix("scaled"), Arrays.copyOfRange(y, start, end), start);
+        }
+    }
+
+    private static void assertSamePredictions(svm_model expected, OnlineSVR actual) {
+        svm_model converted = actual.toSvmModel();
+        SampleMatrix test = SMOSolverTest.synthetic(100, 4, 11L).getMatrix("scaled");
+        double[] sample = new double[test.cols()];
+        for (int i = 0; i < test.rows(); i++) {
+            test.copyRow(i, sample);
+            double prediction = svm.svm_predict(expected, test.toNodes(i));
+            assertEquals(prediction, actual.predict(sample), 1e-2);
+            assertEquals(prediction, svm.svm_predict(converted, test.toNodes(i)), 1e-2);
+        }
+    }
+}
+
+// End OnlineSVRTest.java
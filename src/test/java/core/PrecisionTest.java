@@ -0,0 +1,85 @@
+package core;
+
+import libsvm.*;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * single precision samples, kernel rows and support vectors against double precision
+ */
+public class PrecisionTest {
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void kernelRowsAreRounded() {
+        Data data = SMOSolverTest.synthetic(300, 4, 7L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        KernelMatrix exact = new KernelMatrix(data.getMatrix("original"), param);
+        data.setPrecision(LibConfig.Precision.SINGLE);
+        SampleMatrix x = data.getMatrix("original");
+        assertTrue(x instanceof FloatMatrix);
+        KernelMatrix single = new KernelMatrix(x, param, LibConfig.Precision.SINGLE);
+        for (int i = 0; i < 300; i += 7) {
+            double[] expected = exact.row(i);
+            float[] actual = single.floatRow(i);
+            for (int j = 0; j < 300; j++) {
+                assertEquals(expected[j], actual[j], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void singleTrainingMatchesDouble() {
+        Data data = SMOSolverTest.synthetic(2000, 5, 7L);
+        Data test = SMOSolverTest.synthetic(500, 5, 8L);
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+
+        SampleMatrix samples = data.getMatrix("original");
+        svm_model exact = new SMOSolver(new KernelMatrix(samples, param), data.getLabelArray(), param)
+                .solve(samples);
+        data.setPrecision(LibConfig.Precision.SINGLE);
+        samples = data.getMatrix("original");
+        svm_model single = new SMOSolver(new KernelMatrix(samples, param, LibConfig.Precision.SINGLE),
+                data.getLabelArray(), param).solve(samples);
+
+        KernelModel a = KernelModel.of(exact, LibConfig.Precision.DOUBLE);
+        KernelModel b = KernelModel.of(single, LibConfig.Precision.SINGLE);
+        SampleMatrix x = test.getMatrix("original");
+        double[] sample = new double[x.cols()];
+        double errorA = 0.0d, errorB = 0.0d, maxDiff = 0.0d;
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, sample);
+            double label = test.getLabels().get(i), predictA = a.predict(sample), predictB = b.predict(sample);
+            errorA += (predictA - label) * (predictA - label);
+            errorB += (predictB - label) * (predictB - label);
+            maxDiff = Math.max(maxDiff, Math.abs(predictA - predictB));
+        }
+        double rmseA = Math.sqrt(errorA / x.rows()), rmseB = Math.sqrt(errorB / x.rows());
+        System.out.println("rmse double " + rmseA + ", single " + rmseB + "; largest prediction difference " + maxDiff
+                + "; nSV " + exact.l + " / " + single.l);
+        assertEquals(rmseA, rmseB, 1e-3);
+        assertTrue(maxDiff < 1e-2);
+    }
+
+    @Test
+    public void compiledModelMatchesLibsvm() {
+        Data data = SMOSolverTest.synthetic(500, 6, 3L);
+        svm_model model = SMOSolverTest.trainLibsvm(data, SMOSolverTest.param(svm_parameter.RBF, 100));
+        KernelModel exact = KernelModel.of(model, LibConfig.Precision.DOUBLE);
+        KernelModel single = KernelModel.of(model, LibConfig.Precision.SINGLE);
+        assertEquals(exact.getSupportVectorBytes(), 2 * single.getSupportVectorBytes());
+
+        SampleMatrix x = SMOSolverTest.synthetic(200, 6, 4L).getMatrix("original");
+        double[] sample = new double[x.cols()];
+        for (int i = 0; i < x.rows(); i++) {
+            x.copyRow(i, sample);
+            double expected = svm.svm_predict(model, x.toNodes(i));
+            assertEquals(expected, exact.predict(sample), 1e-9);
+            assertEquals(expected, single.predict(sample), 1e-5);
+        }
+    }
+}
+
+// End PrecisionTest.java
@@ -0,0 +1,94 @@
+package core;
+
+import libsvm.*;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.Vector;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * compare {@link SMOSolver} against libsvm's svm_train on synthetic data
+ */
+public class SMOSolverTest {
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void sameModelAsLibsvm() {
+        Data data = synthetic(400, 4, 7L);
+        svm_parameter param = param(svm_parameter.RBF, 100);
+
+        svm_model expected = trainLibsvm(data, param);
+        SampleMatrix samples = data.getMatrix("scaled");
+        svm_model actual = new SMOSolver(new KernelMatrix(samples, param), data.getLabelArray(), param)
+                .solve(samples);
+
+        assertEquals(expected.rho[0], actual.rho[0], 1e-2);
+        Data test = synthetic(100, 4, 11L);
+        for (svm_node[] sample : test.getDataSet("original")) {
+            assertEquals(svm.svm_predict(expected, sample), svm.svm_predict(actual, sample), 1e-2);
+        }
+    }
+
+    @Test
+    public void tinyCacheGivesSameModel() {
+        Data data = synthetic(300, 3, 5L);
+        SampleMatrix samples = data.getMatrix("scaled");
+        svm_parameter bigCache = param(svm_parameter.RBF, 100);
+        svm_parameter tinyCache = param(svm_parameter.RBF, 0.001);
+
+        svm_model a = new SMOSolver(new KernelMatrix(samples, bigCache), data.getLabelArray(), bigCache)
+                .solve(samples);
+        svm_model b = new SMOSolver(new KernelMatrix(samples, tinyCache), data.getLabelArray(), tinyCache)
+                .solve(samples);
+
+        assertEquals(a.l, b.l);
+        assertEquals(a.rho[0], b.rho[0], 1e-12);
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    static Data synthetic(int n, int d, long seed) {
+        Random random = new Random(seed);
+        Vector<svm_node[]> samples = new Vector<>();
+        Vector<Double> labels = new Vector<>();
+        for (int i = 0; i < n; i++) {
+            svm_node[] sample = new svm_node[d];
+            double y = 0.0d;
+            for (int j = 0; j < d; j++) {
+                sample[j] = new svm_node();
+                sample[j].index = j + 1;
+                sample[j].value = random.nextDouble() * 2 - 1;
+                y += Math.sin(3 * sample[j].value) / (j + 1);
+            }
+            samples.add(sample);
+            labels.add(y + random.nextGaussian() * 0.05);
+        }
+        return new Data(samples, labels);
+    }
+
+    static svm_parameter param(int kernelType, double cacheSize) {
+        svm_parameter param = new svm_parameter();
+        param.svm_type = svm_parameter.EPSILON_SVR;
+        param.kernel_type = kernelType;
+        param.C = 4;
+        param.gamma = 0.5;
+        param.eps = 0.001;
+        param.p = 0.05;
+        param.cache_size = cacheSize;
+        param.shrinking = 1;
+        return param;
+    }
+
+    static svm_model trainLibsvm(Data data, svm_parameter param) {
+        svm.svm_set_print_string_function(s -> {});
+        svm_problem problem = new svm_problem();
+        problem.l = data.getSampleNum();
+        problem.x = data.getDataSet("scaled").toArray(new svm_node[0][]);
+        problem.y = data.getLabelArray();
+        return svm.svm_train(problem, param);
+    }
+}
+
+// End SMOSolverTest.java
@@ -0,0 +1,88 @@
+package core;
+
+import libsvm.svm_parameter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * grid search checkpoints surviving restarts and torn writes
+ */
+public class SearchCheckpointTest {
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void resumesFinishedFolds() throws IOException {
+        File dir = this.folder.newFolder();
+        try (SearchCheckpoint checkpoint = SearchCheckpoint.open(dir, "abc")) {
+            assertEquals(0, checkpoint.size());
+            checkpoint.record(0.5, 0.125, 0, 1.5);
+            checkpoint.record(0.5, 0.125, 1, 2.25);
+            checkpoint.best(0.5, 0.125, 0.1);
+        }
+        // a crash in the middle of a line
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "abc.ckpt"), true)) {
+            out.write("fold 0.5 0.125 2 3.2".getBytes(StandardCharsets.US_ASCII));
+        }
+        try (SearchCheckpoint checkpoint = SearchCheckpoint.open(dir, "abc")) {
+            assertEquals(2, checkpoint.size());
+            assertEquals(1.5, checkpoint.get(0.5, 0.125, 0), 0);
+            assertEquals(2.25, checkpoint.get(0.5, 0.125, 1), 0);
+            assertNull(checkpoint.get(0.5, 0.125, 2));
+            assertNull(checkpoint.get(1.0, 0.125, 0));
+            checkpoint.record(0.5, 0.125, 2, 1.0 / 3);
+        }
+        try (SearchCheckpoint checkpoint = SearchCheckpoint.open(dir, "abc")) {
+            assertEquals(3, checkpoint.size());
+            assertEquals(1.0 / 3, checkpoint.get(0.5, 0.125, 2), 0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAnotherSearch() throws IOException {
+        File dir = this.folder.newFolder();
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "abc.ckpt"))) {
+            out.write("# grid search xyz\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        SearchCheckpoint.open(dir, "abc").close();
+    }
+
+    @Test
+    public void fingerprintFollowsDataAndSearch() {
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        List<double[]> grid = Arrays.asList(new double[]{1, 0.5}, new double[]{2, 0.5});
+        String expected = SearchCheckpoint.fingerprint(SMOSolverTest.synthetic(100, 3, 7L), param, grid, 10,
+                LibConfig.Solver.SMO, LibConfig.Precision.DOUBLE);
+        assertEquals(expected, SearchCheckpoint.fingerprint(SMOSolverTest.synthetic(100, 3, 7L), param, grid, 10,
+                LibConfig.Solver.SMO, LibConfig.Precision.DOUBLE));
+
+        Data other = SMOSolverTest.synthetic(100, 3, 7L);
+        other.getLabels().set(50, other.getLabels().get(50) + 1e-9);
+        assertNotEquals(expected, SearchCheckpoint.fingerprint(other, param, grid, 10,
+                LibConfig.Solver.SMO, LibConfig.Precision.DOUBLE));
+        svm_parameter wider = (svm_parameter) param.clone();
+        wider.p *= 2;
+        assertNotEquals(expected, SearchCheckpoint.fingerprint(SMOSolverTest.synthetic(100, 3, 7L), wider, grid, 10,
+                LibConfig.Solver.SMO, LibConfig.Precision.DOUBLE));
+        assertNotEquals(expected, SearchCheckpoint.fingerprint(SMOSolverTest.synthetic(100, 3, 7L), param,
+                grid.subList(0, 1), 10, LibConfig.Solver.SMO, LibConfig.Precision.DOUBLE));
+        assertNotEquals(expected, SearchCheckpoint.fingerprint(SMOSolverTest.synthetic(100, 3, 7L), param, grid, 5,
+                LibConfig.Solver.SMO, LibConfig.Precision.DOUBLE));
+    }
+}
+
+// End SearchCheckpointTest.java
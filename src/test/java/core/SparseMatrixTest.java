@@ -0,0 +1,92 @@
+package core;
+
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LIBSVM-format ingest and sparse storage against the dense path
+ */
+public class SparseMatrixTest {
+    //~ Instance fields --------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void sparseMatchesDense() throws IOException {
+        File file = writeOneHot(500, 40, 3L);
+        Data sparse = new Data().readDataFromLibsvmFile(file.getPath());
+        assertTrue(sparse.isSparse());
+        Data dense = new Data(sparse.getDataSet("original"), sparse.getLabels());
+        SampleMatrix s = sparse.getMatrix("original");
+        SampleMatrix d = DenseMatrix.of(dense.getDataSet("original"), sparse.getFeatureNum());
+
+        assertEquals(500, sparse.getSampleNum());
+        assertEquals(40, sparse.getFeatureNum());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(d.squaredNorm(i), s.squaredNorm(i), 1e-12);
+            assertEquals(d.dot(i, i + 1), s.dot(i, i + 1), 1e-12);
+        }
+    }
+
+    @Test
+    public void scalingKeepsZeros() throws IOException {
+        Data data = new Data().readDataFromLibsvmFile(writeOneHot(200, 30, 5L).getPath());
+        SparseMatrix original = (SparseMatrix) data.getMatrix("original");
+        double[][] scaleParam = data.scaleTrainingData();
+        SparseMatrix scaled = (SparseMatrix) data.getMatrix("scaled");
+
+        assertEquals(original.nonZeros(), scaled.nonZeros());
+        for (double value : scaled.values) {
+            assertTrue(Math.abs(value) <= 1.0d);
+        }
+
+        Data test = new Data().readDataFromLibsvmFile(writeOneHot(50, 30, 9L).getPath());
+        test.scaleTestData(scaleParam);
+        assertTrue(test.isSparse());
+    }
+
+    @Test
+    public void sameModelFromSparseSamples() throws IOException {
+        Data data = new Data().readDataFromLibsvmFile(writeOneHot(300, 25, 7L).getPath());
+        svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+        svm_model expected = SMOSolverTest.trainLibsvm(data, param);
+        SampleMatrix samples = data.getMatrix("scaled");
+        svm_model actual = new SMOSolver(new KernelMatrix(samples, param), data.getLabelArray(), param)
+                .solve(samples);
+        assertEquals(expected.rho[0], actual.rho[0], 1e-2);
+    }
+
+    //~ Helper methods ---------------------------------------------------------
+
+    /**
+     * write samples with a few one-hot categories and one numeric feature
+     */
+    private File writeOneHot(int n, int d, long seed) throws IOException {
+        Random random = new Random(seed);
+        File file = folder.newFile();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+            for (int i = 0; i < n; i++) {
+                int a = 1 + random.nextInt(d / 2), b = d / 2 + 1 + random.nextInt(d / 2 - 2);
+                double x = random.nextDouble() * 10;
+                double y = a % 3 + Math.sqrt(x) - (b % 2);
+                bw.write(y + " " + a + ":1 " + b + ":1 " + d + ":" + x + "\n");
+            }
+        }
+        return file;
+    }
+}
+
+// End SparseMatrixTest.java
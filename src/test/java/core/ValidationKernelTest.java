@@ -0,0 +1,65 @@
+package core;
+
+import libsvm.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * candidates scored on a shared validation kernel against one by one svm_predict
+ */
+public class ValidationKernelTest {
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void sharedBlockMatchesPredict() {
+        Data data = SMOSolverTest.synthetic(700, 4, 7L);
+        SampleMatrix x = data.getMatrix("original");
+        double[] y = data.getLabelArray();
+        // validate on rows [100, 400), more than one block
+        int[] validRows = new int[300];
+        int[] trainRows = new int[400];
+        List<svm_node[]> trainSet = new ArrayList<>();
+        List<Double> trainLabels = new ArrayList<>();
+        for (int i = 0, t = 0; i < x.rows(); i++) {
+            if (i >= 100 && i < 400) {
+                validRows[i - 100] = i;
+            } else {
+                trainRows[t++] = i;
+                trainSet.add(data.getDataSet("original").get(i));
+                trainLabels.add(y[i]);
+            }
+        }
+        Data train = new Data(trainSet, trainLabels);
+        SampleMatrix trainX = train.getMatrix("original");
+
+        List<svm_model> models = new ArrayList<>();
+        for (double c : new double[]{0.25, 1, 16}) {
+            svm_parameter param = SMOSolverTest.param(svm_parameter.RBF, 100);
+            param.C = c;
+            models.add(SMOSolverTest.trainLibsvm(train, param));
+            models.add(new SMOSolver(new KernelMatrix(trainX, param), train.getLabelArray(), param).solve(trainX));
+        }
+        svm_model withoutIndices = SMOSolverTest.trainLibsvm(train, SMOSolverTest.param(svm_parameter.RBF, 100));
+        withoutIndices.sv_indices = null;
+        models.add(withoutIndices);
+        models.add(null);
+
+        double[] losses = ValidationKernel.losses(x, y, trainRows, validRows, models);
+        for (int k = 0; k < models.size() - 1; k++) {
+            double expected = 0.0d;
+            for (int v : validRows) {
+                double diff = svm.svm_predict(models.get(k), x.toNodes(v)) - y[v];
+                expected += diff * diff;
+            }
+            assertEquals(expected, losses[k], 1e-9 * expected);
+        }
+        assertTrue(Double.isNaN(losses[models.size() - 1]));
+    }
+}
+
+// End ValidationKernelTest.java
@@ -0,0 +1,71 @@
+package core;
+
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * warm-up rounds on a trained model
+ */
+public class WarmupTest {
+    //~ Test methods -----------------------------------------------------------
+
+    @Test
+    public void settlesWithinBudget() {
+        Data data = SMOSolverTest.synthetic(400, 4, 7L);
+        double[][] scaleParam = data.scaleTrainingData();
+        svm_model model = SMOSolverTest.trainLibsvm(data, SMOSolverTest.param(svm_parameter.RBF, 100));
+
+        Warmup warmup = Warmup.of(model).setScaleParam(scaleParam);
+        assertFalse(warmup.isReady());
+        Warmup.Report report = warmup.run();
+
+        assertTrue(report.toString(), report.isReady());
+        assertTrue(warmup.isReady());
+        assertTrue(report.getRounds() >= 10);
+        assertTrue(report.getWarmP99() > 0);
+    }
+
+    @Test
+    public void warmsScreenedModelsOnFullRows() {
+        Data data = SMOSolverTest.synthetic(400, 4, 7L);
+        double[][] scaleParam = data.scaleTrainingData();
+        int[] columns = {0, 2, 3};
+        svm_model model = new ScreenedModel(columns, 4,
+                SMOSolverTest.trainLibsvm(data.select(columns), SMOSolverTest.param(svm_parameter.RBF, 100)));
+
+        // the samples and lines have every column, as the model is served
+        Warmup.Report report = Warmup.of(model).setScaleParam(scaleParam).run();
+
+        assertTrue(report.toString(), report.isReady());
+    }
+
+    @Test
+    public void notReadyWithoutBudget() {
+        Data data = SMOSolverTest.synthetic(200, 3, 5L);
+        svm_model model = SMOSolverTest.trainLibsvm(data, SMOSolverTest.param(svm_parameter.LINEAR, 100));
+
+        Warmup.Report report = Warmup.of(model).setBudget(0).run();
+
+        assertFalse(report.isReady());
+        assertEquals(1, report.getRounds());
+        assertEquals(report.getColdP99(), report.getWarmP99());
+    }
+
+    @Test
+    public void percentile() {
+        long[] values = new long[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values.length - i;
+        }
+        assertEquals(99, Warmup.percentile(values, 0.99d));
+        assertEquals(100, Warmup.percentile(values, 1.0d));
+        assertEquals(1, Warmup.percentile(new long[]{1}, 0.99d));
+    }
+}
+
+// End WarmupTest.java
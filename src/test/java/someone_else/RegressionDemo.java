@@ -1,6 +1,7 @@
 package someone_else;
 
 import com.google.common.collect.Maps;
+import core.FeatureJoin;
 import core.LibConfig;
 import core.SVMLib;
 import libsvm.svm_model;
@@ -49,6 +50,22 @@ public class RegressionDemo {
         regressionResult(model, prefixPathData+"demo2.test.csv", prefixPathResult+"result2.txt");
     }
 
+    /**
+     * regression of weather data and defect count, joined by day while reading
+     * instead of combining them into a csv first
+     */
+    @Test
+    public void regression3() throws IOException {
+        FeatureJoin join = new FeatureJoin(FeatureJoin.Source.csv(prefixPathData + "svr/defcnt.csv", true,
+                FeatureJoin.Key.date(0), 1))
+                .join(FeatureJoin.Source.csv(prefixPathData + "svr/weather.csv", false,
+                        FeatureJoin.Key.date(0, 1, 2), 3, 4, 5, 6));
+        SVMLib svmLib = SVMLib.getInstance().setType(LibConfig.Type.REGRESSION).initDataFromJoin(join);
+
+        svm_model model = svmLib.train();
+        System.out.println("support vectors: " + model.l);
+    }
+
     //~ Helper methods ---------------------------------------------------------
 
     /**